@@ -0,0 +1,96 @@
+package com.audiocontroller.audio;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Сравнение ParallelScanner с прежним последовательным обходом (Files.walkFileTree)
+ * на синтетическом дереве: исполнитель/альбом/трек, по умолчанию 100 x 50 x 20 = 100000 файлов.
+ * Запуск: ./gradlew scanBenchmark [-PbenchmarkDir=путь] (дерево создаётся, если папки нет).
+ * Измеряется обход с тёплым кэшем файловой системы - именно так работает повторное сканирование
+ */
+public final class ScanBenchmark {
+    private static final int ARTISTS = 100;
+    private static final int ALBUMS = 50;
+    private static final int TRACKS = 20;
+    private static final int WARMUP = 3;
+    private static final int RUNS = 7;
+    private static final Predicate<Path> OGG = path -> path.getFileName().toString().endsWith(".ogg");
+
+    private ScanBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path root = args.length > 0 ? Paths.get(args[0]) : Paths.get("build/scan-benchmark");
+        if (!Files.isDirectory(root)) {
+            createTree(root);
+        }
+
+        report("walkFileTree", () -> walk(root));
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int parallelism : new int[] {1, 2, 4, 8}) {
+            report("ParallelScanner x" + parallelism + (parallelism > cores ? " (ядер: " + cores + ")" : ""),
+                () -> ParallelScanner.scan(root, parallelism, OGG, dir -> { }).size());
+        }
+    }
+
+    private static void createTree(Path root) throws IOException {
+        long start = System.nanoTime();
+        for (int artist = 0; artist < ARTISTS; artist++) {
+            for (int album = 0; album < ALBUMS; album++) {
+                Path dir = Files.createDirectories(root.resolve("artist" + artist).resolve("album" + album));
+                for (int track = 0; track < TRACKS; track++) {
+                    Files.createFile(dir.resolve(String.format("%02d - track.ogg", track)));
+                }
+            }
+        }
+        System.out.printf("Создано %d файлов за %d мс%n", ARTISTS * ALBUMS * TRACKS, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Прежний обход MusicLoader: последовательный walkFileTree с атрибутами из обхода
+     */
+    private static int walk(Path root) {
+        List<ParallelScanner.Entry> found = new ArrayList<>();
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (OGG.test(file)) {
+                        found.add(new ParallelScanner.Entry(file, attrs.size(), attrs.lastModifiedTime().toMillis()));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return found.size();
+    }
+
+    private static void report(String name, Supplier<Integer> scan) {
+        int files = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            files = scan.get();
+        }
+        long[] times = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            scan.get();
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        System.out.printf("%-32s %7d файлов  медиана %6d мс  мин %6d мс%n",
+            name, files, times[RUNS / 2] / 1_000_000, times[0] / 1_000_000);
+    }
+}
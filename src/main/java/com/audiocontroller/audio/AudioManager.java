@@ -5,10 +5,10 @@ import net.minecraft.client.Minecraft;
 import org.slf4j.Logger;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.Random;
@@ -19,21 +19,33 @@ public class AudioManager {
     
     private final MusicLoader musicLoader;
     private final PlaylistManager playlistManager;
+    private final AudioSettings settings;
     private final Random random = new Random();
     
-    private Playlist activePlaylist;
+    private Playlist activePlaylist; // Собственная копия: воспроизведение двигает по ней позицию
+    private Playlist activeSource; // Опубликованная версия, с которой снята копия activePlaylist
     private CustomMusicTrack currentTrack;
+    private CustomMusicTrack nextTrack; // Предзагруженный трек, который зазвучит сразу после текущего
+    private WeightedShuffle weightedShuffle; // Веса треков активного плейлиста, если включено взвешенное перемешивание
     private LWJGLDirectAudioPlayer audioPlayer;
     private int ticksSinceLastMusic = 0;
-    private int ticksSinceTrackStart = 0;
+    private int failedTracks = 0; // Подряд не открывшиеся треки, чтобы не перебирать плейлист бесконечно
     private static final int MIN_TICKS_BETWEEN_MUSIC = 12000; // ~10 минут
-    private static final int MIN_TICKS_BEFORE_CHECK = 60; // ~3 секунды - минимальное время перед проверкой окончания
     private static final String ACTIVE_PLAYLIST_FILE = "config/audiocontroller/active_playlist.txt";
     
     private AudioManager() {
         this.musicLoader = new MusicLoader();
-        this.playlistManager = new PlaylistManager(musicLoader);
+        this.settings = AudioSettings.load();
+        this.playlistManager = new PlaylistManager(musicLoader, settings.isPlaylistLog());
+        this.playlistManager.setLazyLoading(settings.isLazyPlaylists());
+        // Изменения активного плейлиста (например, в редакторе) сразу применяются к воспроизведению
+        this.playlistManager.addListener(state -> Minecraft.getInstance().execute(() -> onPlaylistsChanged(state)));
+        this.musicLoader.setScanParallelism(settings.getEffectiveScanParallelism());
         this.audioPlayer = new LWJGLDirectAudioPlayer();
+        this.audioPlayer.setCrossfadeSeconds(settings.getCrossfadeSeconds());
+        this.audioPlayer.getPcmCache().setBudgetBytes(settings.getPcmCacheMegabytes() * 1024L * 1024L);
+        // События приходят из аудиопотока, обрабатываем их в клиентском потоке
+        this.audioPlayer.setPlaybackListener(event -> Minecraft.getInstance().execute(() -> onPlaybackEvent(event)));
     }
 
     public static AudioManager getInstance() {
@@ -51,29 +63,56 @@ public class AudioManager {
         return playlistManager;
     }
 
+    public AudioSettings getSettings() {
+        return settings;
+    }
+    
+    /**
+     * Задаёт длительность кроссфейда между треками плейлиста (0 - 12 сек) и сохраняет настройку
+     */
+    public void setCrossfadeSeconds(float seconds) {
+        settings.setCrossfadeSeconds(seconds);
+        settings.save();
+        if (audioPlayer != null) {
+            audioPlayer.setCrossfadeSeconds(settings.getCrossfadeSeconds());
+        }
+    }
+
+    /**
+     * Кэш декодированных треков (статистика попаданий, промахов и вытеснений)
+     */
+    public PcmCache getPcmCache() {
+        return audioPlayer.getPcmCache();
+    }
+
+    /**
+     * Пул источников и буферов OpenAL (статистика использования)
+     */
+    public OpenAlPool getOpenAlPool() {
+        return audioPlayer.getOpenAlPool();
+    }
+
     public void setActivePlaylist(Playlist playlist) {
         if (playlist == null) {
+            recordSkip();
             stop();
             activePlaylist = null;
+            activeSource = null;
             // Удаляем файл активного плейлиста
-            try {
-                Files.deleteIfExists(Paths.get(ACTIVE_PLAYLIST_FILE));
-            } catch (IOException e) {
-                LOGGER.error("Ошибка при удалении файла активного плейлиста", e);
-            }
+            playlistManager.getPersistence().delete(Paths.get(ACTIVE_PLAYLIST_FILE));
             LOGGER.info("Активный плейлист сброшен");
             return;
         }
         
+        // Опубликованные версии не изменяются, воспроизведение идёт по копии
+        Playlist source = playlistManager.getPlaylist(playlist.getName()).orElse(null);
+        playlist = playlist.copy();
+        
         // Загружаем треки в плейлист, если они еще не загружены
         if (playlist.getTracks().isEmpty() && !playlist.getTrackNames().isEmpty()) {
             LOGGER.info("Загружаем треки в плейлист: {}", playlist.getName());
-            List<CustomMusicTrack> tracks = new ArrayList<>();
-            for (String trackName : playlist.getTrackNames()) {
-                musicLoader.getTrackByName(trackName).ifPresent(tracks::add);
-            }
-            playlist.setTracks(tracks);
-            LOGGER.info("Загружено треков в плейлист: {}", tracks.size());
+            playlist.resolveTracks(musicLoader.getSnapshot());
+            LOGGER.info("Загружено треков в плейлист: {}", playlist.getTracks().size());
         }
         
         if (playlist.getTracks().isEmpty()) {
@@ -82,7 +121,9 @@ public class AudioManager {
         }
         
         activePlaylist = playlist;
+        activeSource = source;
         playlistManager.setCurrentPlaylist(playlist);
+        recordSkip();
         stop();
         
         // Сохраняем имя активного плейлиста
@@ -90,6 +131,7 @@ public class AudioManager {
         
         // Сбрасываем счетчик тиков, чтобы музыка запустилась сразу
         ticksSinceLastMusic = MIN_TICKS_BETWEEN_MUSIC;
+        failedTracks = 0;
         
         // Автоматически запускаем случайный трек из плейлиста
         playRandomTrackFromPlaylist();
@@ -97,14 +139,11 @@ public class AudioManager {
     }
     
     private void saveActivePlaylistName(String playlistName) {
-        try {
-            Path file = Paths.get(ACTIVE_PLAYLIST_FILE);
-            Files.createDirectories(file.getParent());
-            Files.writeString(file, playlistName);
+        Path file = Paths.get(ACTIVE_PLAYLIST_FILE);
+        playlistManager.getPersistence().write(file, () -> {
             LOGGER.info("Сохранено имя активного плейлиста: {} в файл: {}", playlistName, file.toAbsolutePath());
-        } catch (IOException e) {
-            LOGGER.error("Ошибка при сохранении активного плейлиста", e);
-        }
+            return StandardCharsets.UTF_8.encode(playlistName);
+        });
     }
     
     public void loadActivePlaylist() {
@@ -120,34 +159,69 @@ public class AudioManager {
             }
             
             // Загружаем плейлисты, если они еще не загружены
-            try {
-                playlistManager.loadPlaylists().get();
-            } catch (Exception e) {
-                LOGGER.error("Ошибка при загрузке плейлистов", e);
-                return;
+            if (!playlistManager.isLoaded()) {
+                try {
+                    playlistManager.loadPlaylists().get();
+                } catch (Exception e) {
+                    LOGGER.error("Ошибка при загрузке плейлистов", e);
+                    return;
+                }
             }
             
             // Ищем плейлист по имени
             Optional<Playlist> playlistOpt = playlistManager.getPlaylist(playlistName);
             if (playlistOpt.isPresent()) {
-                Playlist playlist = playlistOpt.get();
+                Playlist playlist = playlistOpt.get().copy();
+                if (playlist.getTracks().isEmpty()) {
+                    // Плейлист мог быть загружен только с заголовком
+                    playlist.resolveTracks(musicLoader.getSnapshot());
+                }
                 LOGGER.info("Загружен активный плейлист: {}", playlistName);
                 // Устанавливаем плейлист, но не запускаем воспроизведение сразу
                 // Воспроизведение запустится автоматически при входе в мир
                 activePlaylist = playlist;
+                activeSource = playlistOpt.get();
                 playlistManager.setCurrentPlaylist(playlist);
                 // Сбрасываем счетчик, чтобы музыка запустилась сразу при входе в мир
                 ticksSinceLastMusic = MIN_TICKS_BETWEEN_MUSIC;
             } else {
                 LOGGER.warn("Активный плейлист {} не найден", playlistName);
                 // Удаляем файл, если плейлист не найден
-                Files.deleteIfExists(file);
+                playlistManager.getPersistence().delete(file);
             }
         } catch (IOException e) {
             LOGGER.error("Ошибка при загрузке активного плейлиста", e);
         }
     }
 
+    /**
+     * Новая версия списка плейлистов: если активный плейлист изменился, воспроизведение переходит
+     * на новую версию, сохраняя текущий трек. Вызывается в клиентском потоке
+     */
+    private void onPlaylistsChanged(PlaylistState state) {
+        if (activePlaylist == null) {
+            return;
+        }
+        Optional<Playlist> published = state.getPlaylist(activePlaylist.getName());
+        if (published.isEmpty() || published.get() == activeSource) {
+            return; // Удалённый плейлист доигрывает текущую копию
+        }
+        
+        Playlist updated = published.get().copy();
+        updated.resolveTracks(musicLoader.getSnapshot());
+        int index = currentTrack != null ? updated.getTracks().indexOf(currentTrack) : -1;
+        if (index >= 0) {
+            updated.setCurrentIndex(index);
+            updated.continueShuffleFrom(index); // Новый круг перемешивания не повторит играющий трек
+        } else {
+            updated.setCurrentIndex(Math.min(activePlaylist.getCurrentIndex(), Math.max(0, updated.getTracks().size() - 1)));
+        }
+        activePlaylist = updated;
+        activeSource = published.get();
+        playlistManager.setCurrentPlaylist(updated);
+        LOGGER.debug("Активный плейлист обновлён: {} (треков: {})", updated.getName(), updated.getTracks().size());
+    }
+
     public Optional<Playlist> getActivePlaylist() {
         return Optional.ofNullable(activePlaylist);
     }
@@ -161,7 +235,13 @@ public class AudioManager {
         CustomMusicTrack randomTrack;
         
         if (activePlaylist.isShuffle()) {
-            randomTrack = tracks.get(random.nextInt(tracks.size()));
+            // Перемешанный порядок без повторов (первый трек - первый шаг перестановки)
+            // или взвешенный выбор по истории прослушивания
+            randomTrack = pickNextTrack();
+            if (randomTrack == null) {
+                LOGGER.warn("В плейлисте {} нет исправных треков", activePlaylist.getName());
+                return;
+            }
         } else {
             // Используем текущий индекс или случайный, если индекс невалиден
             int index = activePlaylist.getCurrentIndex();
@@ -171,16 +251,61 @@ public class AudioManager {
             }
             randomTrack = tracks.get(index);
         }
+        if (randomTrack.isCorrupt()) {
+            // Повреждённый файл известен заранее - сразу берём следующий исправный трек
+            randomTrack = pickNextTrack();
+            if (randomTrack == null) {
+                LOGGER.warn("В плейлисте {} нет исправных треков", activePlaylist.getName());
+                return;
+            }
+        }
         
         playTrack(randomTrack);
     }
 
+    /**
+     * Следующий трек плейлиста. Во взвешенном режиме перемешивания реже игравшие и давно
+     * не звучавшие треки выпадают чаще, такой выбор не заканчивается после круга
+     */
+    private CustomMusicTrack pickNextTrack() {
+        if (!activePlaylist.isShuffle() || !settings.isWeightedShuffle()) {
+            return activePlaylist.getNextTrack();
+        }
+        List<CustomMusicTrack> tracks = activePlaylist.getTracks();
+        long now = System.currentTimeMillis();
+        if (weightedShuffle == null || !weightedShuffle.isValidFor(tracks, now)) {
+            weightedShuffle = new WeightedShuffle(tracks, playlistManager.getPlayHistory(), now);
+        }
+        return weightedShuffle.pick(random, currentTrack);
+    }
+
+    /**
+     * Трек начал играть: запись в историю и новый вес для взвешенного перемешивания
+     */
+    private void onTrackStarted(CustomMusicTrack track) {
+        playlistManager.recordPlayed(track);
+        if (weightedShuffle != null) {
+            weightedShuffle.onPlayed(track, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Играющий трек прерывается другим треком или плейлистом - это пропуск.
+     * Остановка при выходе из мира пропуском не считается
+     */
+    private void recordSkip() {
+        if (currentTrack != null && isPlaying()) {
+            playlistManager.getPlayHistory().record(currentTrack, PlayHistory.Event.SKIP);
+        }
+    }
+
     public void playTrack(CustomMusicTrack track) {
         if (track == null) {
             LOGGER.warn("Попытка воспроизвести null трек");
             return;
         }
 
+        recordSkip();
         stop();
         currentTrack = track;
         
@@ -207,20 +332,38 @@ public class AudioManager {
         try {
             audioPlayer.loadOGGFile(filePath);
             updateVolumeFromMinecraftSettings(); // Устанавливаем громкость перед воспроизведением
-            audioPlayer.play();
+            audioPlayer.play(); // Прослушивание записывается по событию TRACK_STARTED, когда файл открыт
             LOGGER.info("Запуск воспроизведения трека: {} (файл: {}) через LWJGL OpenAL", currentTrack.getName(), filePath);
+            prefetchNextTrack();
         } catch (Exception e) {
             LOGGER.error("Ошибка при воспроизведении OGG файла через LWJGL OpenAL", e);
         }
     }
 
+    /**
+     * Выбирает следующий трек плейлиста и заранее открывает его в аудиопотоке,
+     * чтобы он зазвучал сразу после текущего без паузы
+     */
+    private void prefetchNextTrack() {
+        nextTrack = null;
+        if (activePlaylist == null || activePlaylist.getTracks().isEmpty() || audioPlayer == null) {
+            return;
+        }
+        
+        nextTrack = pickNextTrack();
+        audioPlayer.prefetch(nextTrack != null ? nextTrack.getFilePath() : null);
+        if (nextTrack != null) {
+            LOGGER.debug("Предзагрузка следующего трека: {}", nextTrack.getName());
+        }
+    }
+
     public void stop() {
         if (audioPlayer != null) {
             audioPlayer.stop();
         }
         currentTrack = null;
+        nextTrack = null;
         ticksSinceLastMusic = 0;
-        ticksSinceTrackStart = 0;
         LOGGER.debug("Воспроизведение остановлено");
     }
     
@@ -307,12 +450,34 @@ public class AudioManager {
     }
     
     /**
-     * Обновляет громкость аудиоплеера из настроек Minecraft
+     * Множитель громкости текущего трека для выравнивания громкости (как ReplayGain).
+     * Громкие треки приглушаются полностью. Тихие усиливаются только в пределах запаса:
+     * не выше пика трека (без перегрузки) и не выше 1 / volume, потому что итоговая
+     * громкость источника OpenAL не больше 1.0. При громкости музыки 100% запаса нет,
+     * и выравнивание только приглушает громкие треки
+     * @param volume громкость музыки в настройках Minecraft
+     */
+    private float getTrackGain(CustomMusicTrack track, float volume) {
+        if (track == null || !settings.isNormalizeLoudness() || !track.hasLoudness()) {
+            return 1.0f;
+        }
+        float gain = (float) Math.pow(10.0, (settings.getLoudnessTargetLufs() - track.getLoudness()) / 20.0);
+        if (track.getPeak() > 0.0f) {
+            gain = Math.min(gain, 1.0f / track.getPeak());
+        }
+        if (gain > 1.0f && volume > 0.0f) {
+            gain = Math.min(gain, 1.0f / volume);
+        }
+        return gain;
+    }
+    
+    /**
+     * Обновляет громкость аудиоплеера из настроек Minecraft с учётом громкости текущего трека
      */
     private void updateVolumeFromMinecraftSettings() {
         float minecraftVolume = getMinecraftMusicVolume();
         if (audioPlayer != null) {
-            audioPlayer.setVolume(minecraftVolume);
+            audioPlayer.setVolume(minecraftVolume * getTrackGain(currentTrack, minecraftVolume));
         }
     }
 
@@ -336,26 +501,11 @@ public class AudioManager {
         }
         
         // Обновляем громкость из настроек Minecraft каждый тик
-        // (на случай, если пользователь изменил настройки)
+        // (на случай, если пользователь изменил настройки).
+        // В аудиопоток уходит команда только при реальном изменении громкости
         updateVolumeFromMinecraftSettings();
         
-        // Проверяем, закончился ли текущий трек
-        if (audioPlayer != null && currentTrack != null) {
-            ticksSinceTrackStart++;
-            
-            // Проверяем окончание трека после минимальной задержки
-            if (ticksSinceTrackStart >= MIN_TICKS_BEFORE_CHECK) {
-                // Проверяем, играет ли ещё звук через OpenAL
-                if (!audioPlayer.isPlaying()) {
-                    // Трек закончился, переходим к следующему
-                    LOGGER.info("Трек {} закончился, переходим к следующему", currentTrack.getName());
-                    ticksSinceTrackStart = 0;
-                    playNextTrackFromPlaylist();
-                    return; // Выходим, чтобы не запускать новую музыку сразу
-                }
-            }
-        }
-        
+        // Окончание трека обрабатывается в onPlaybackEvent.
         // Если музыка не играет и прошло достаточно времени, запускаем новую
         if (!isPlaying()) {
             ticksSinceLastMusic++;
@@ -369,14 +519,60 @@ public class AudioManager {
         }
     }
 
+    /**
+     * Обрабатывает событие аудиопотока в клиентском потоке
+     */
+    private void onPlaybackEvent(PlaybackEvent event) {
+        if (audioPlayer == null || !audioPlayer.acceptEvent(event) || activePlaylist == null) {
+            return;
+        }
+        
+        switch (event.getType()) {
+            case TRACK_STARTED -> {
+                if (event.isInitial()) {
+                    // Аудиопоток открыл загруженный файл и начал его воспроизведение
+                    onTrackStarted(currentTrack);
+                } else if (nextTrack != null) {
+                    // Аудиопоток без паузы перешёл к предзагруженному треку
+                    LOGGER.info("Трек {} закончился, без паузы начат следующий: {}",
+                        currentTrack != null ? currentTrack.getName() : "?", nextTrack.getName());
+                    playlistManager.getPlayHistory().record(currentTrack, PlayHistory.Event.COMPLETE);
+                    currentTrack = nextTrack;
+                    onTrackStarted(currentTrack);
+                    failedTracks = 0;
+                    updateVolumeFromMinecraftSettings();
+                    prefetchNextTrack();
+                }
+            }
+            case TRACK_ENDED -> {
+                LOGGER.info("Трек {} закончился, переходим к следующему",
+                    currentTrack != null ? currentTrack.getName() : event.getFile());
+                playlistManager.getPlayHistory().record(currentTrack, PlayHistory.Event.COMPLETE);
+                failedTracks = 0;
+                playNextTrackFromPlaylist();
+            }
+            case TRACK_FAILED -> {
+                failedTracks++;
+                if (failedTracks < activePlaylist.getTracks().size()) {
+                    LOGGER.warn("Не удалось воспроизвести трек {}, переходим к следующему",
+                        currentTrack != null ? currentTrack.getName() : "?");
+                    playNextTrackFromPlaylist();
+                } else {
+                    LOGGER.error("Не удалось воспроизвести ни один трек плейлиста {}", activePlaylist.getName());
+                }
+            }
+        }
+    }
+
     private void playNextTrackFromPlaylist() {
         if (activePlaylist == null || activePlaylist.getTracks().isEmpty()) {
             return;
         }
         
-        CustomMusicTrack nextTrack = activePlaylist.getNextTrack(random);
-        if (nextTrack != null) {
-            playTrack(nextTrack);
+        // Если следующий трек уже был выбран для предзагрузки, не выбираем его повторно
+        CustomMusicTrack track = nextTrack != null && !nextTrack.isCorrupt() ? nextTrack : pickNextTrack();
+        if (track != null) {
+            playTrack(track);
         } else {
             // Плейлист закончился и repeat выключен
             LOGGER.info("Плейлист {} закончился", activePlaylist.getName());
@@ -386,8 +582,9 @@ public class AudioManager {
     public void shutdown() {
         stop();
         if (audioPlayer != null) {
-            audioPlayer.cleanup();
+            audioPlayer.release();
         }
         musicLoader.shutdown();
+        playlistManager.shutdown();
     }
 }
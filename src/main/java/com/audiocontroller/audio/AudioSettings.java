@@ -0,0 +1,234 @@
+package com.audiocontroller.audio;
+
+import com.mojang.logging.LogUtils;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+/**
+ * Настройки аудиодвижка, которых нет в стандартной конфигурации мода.
+ * Хранятся в config/audiocontroller/audio.properties
+ */
+public class AudioSettings {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final String SETTINGS_FILE = "config/audiocontroller/audio.properties";
+
+    public static final float MAX_CROSSFADE_SECONDS = 12.0f;
+    public static final int DEFAULT_PCM_CACHE_MEGABYTES = 64;
+    public static final float DEFAULT_LOUDNESS_TARGET_LUFS = -18.0f; // Опорный уровень ReplayGain 2.0
+
+    private static final String KEY_CROSSFADE_SECONDS = "crossfadeSeconds";
+    private static final String KEY_PCM_CACHE_MEGABYTES = "pcmCacheMegabytes";
+    private static final String KEY_NORMALIZE_LOUDNESS = "normalizeLoudness";
+    private static final String KEY_LOUDNESS_TARGET_LUFS = "loudnessTargetLufs";
+    private static final String KEY_SCAN_PARALLELISM = "scanParallelism";
+    private static final String KEY_PLAYLIST_LOG = "playlistLog";
+    private static final String KEY_LAZY_PLAYLISTS = "lazyPlaylists";
+    private static final String KEY_WEIGHTED_SHUFFLE = "weightedShuffle";
+
+    private float crossfadeSeconds = 0.0f;
+    private int pcmCacheMegabytes = DEFAULT_PCM_CACHE_MEGABYTES;
+    private boolean normalizeLoudness = true;
+    private float loudnessTargetLufs = DEFAULT_LOUDNESS_TARGET_LUFS;
+    private int scanParallelism = 0;
+    private boolean playlistLog = false;
+    private boolean lazyPlaylists = false;
+    private boolean weightedShuffle = false;
+
+    /**
+     * Загружает настройки из файла. Отсутствующие значения остаются по умолчанию
+     */
+    public static AudioSettings load() {
+        AudioSettings settings = new AudioSettings();
+        Path file = Paths.get(SETTINGS_FILE);
+        if (!Files.exists(file)) {
+            settings.save();
+            return settings;
+        }
+
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file)) {
+            properties.load(reader);
+        } catch (IOException e) {
+            LOGGER.error("Ошибка при загрузке настроек аудио: {}", file, e);
+            return settings;
+        }
+
+        settings.crossfadeSeconds = clampCrossfade(parseFloat(properties, KEY_CROSSFADE_SECONDS, settings.crossfadeSeconds));
+        settings.pcmCacheMegabytes = Math.max(0, parseInt(properties, KEY_PCM_CACHE_MEGABYTES, settings.pcmCacheMegabytes));
+        settings.normalizeLoudness = Boolean.parseBoolean(properties.getProperty(KEY_NORMALIZE_LOUDNESS,
+            Boolean.toString(settings.normalizeLoudness)).trim());
+        settings.loudnessTargetLufs = parseFloat(properties, KEY_LOUDNESS_TARGET_LUFS, settings.loudnessTargetLufs);
+        settings.scanParallelism = Math.max(0, parseInt(properties, KEY_SCAN_PARALLELISM, settings.scanParallelism));
+        settings.playlistLog = Boolean.parseBoolean(properties.getProperty(KEY_PLAYLIST_LOG,
+            Boolean.toString(settings.playlistLog)).trim());
+        settings.lazyPlaylists = Boolean.parseBoolean(properties.getProperty(KEY_LAZY_PLAYLISTS,
+            Boolean.toString(settings.lazyPlaylists)).trim());
+        settings.weightedShuffle = Boolean.parseBoolean(properties.getProperty(KEY_WEIGHTED_SHUFFLE,
+            Boolean.toString(settings.weightedShuffle)).trim());
+        return settings;
+    }
+
+    /**
+     * Сохраняет настройки в файл
+     */
+    public void save() {
+        Properties properties = new Properties();
+        properties.setProperty(KEY_CROSSFADE_SECONDS, Float.toString(crossfadeSeconds));
+        properties.setProperty(KEY_PCM_CACHE_MEGABYTES, Integer.toString(pcmCacheMegabytes));
+        properties.setProperty(KEY_NORMALIZE_LOUDNESS, Boolean.toString(normalizeLoudness));
+        properties.setProperty(KEY_LOUDNESS_TARGET_LUFS, Float.toString(loudnessTargetLufs));
+        properties.setProperty(KEY_SCAN_PARALLELISM, Integer.toString(scanParallelism));
+        properties.setProperty(KEY_PLAYLIST_LOG, Boolean.toString(playlistLog));
+        properties.setProperty(KEY_LAZY_PLAYLISTS, Boolean.toString(lazyPlaylists));
+        properties.setProperty(KEY_WEIGHTED_SHUFFLE, Boolean.toString(weightedShuffle));
+
+        Path file = Paths.get(SETTINGS_FILE);
+        try {
+            Files.createDirectories(file.getParent());
+            try (Writer writer = Files.newBufferedWriter(file)) {
+                properties.store(writer, "Audio Controller - audio engine settings");
+            }
+        } catch (IOException e) {
+            LOGGER.error("Ошибка при сохранении настроек аудио: {}", file, e);
+        }
+    }
+
+    private static float parseFloat(Properties properties, String key, float defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Float.parseFloat(value.trim());
+        } catch (NumberFormatException e) {
+            LOGGER.warn("Некорректное значение {} = {} в настройках аудио", key, value);
+            return defaultValue;
+        }
+    }
+
+    private static int parseInt(Properties properties, String key, int defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            LOGGER.warn("Некорректное значение {} = {} в настройках аудио", key, value);
+            return defaultValue;
+        }
+    }
+
+    private static float clampCrossfade(float seconds) {
+        return Math.max(0.0f, Math.min(MAX_CROSSFADE_SECONDS, seconds));
+    }
+
+    /**
+     * Длительность плавного перехода между треками плейлиста, 0 - переход без паузы и без наложения
+     */
+    public float getCrossfadeSeconds() {
+        return crossfadeSeconds;
+    }
+
+    public void setCrossfadeSeconds(float crossfadeSeconds) {
+        this.crossfadeSeconds = clampCrossfade(crossfadeSeconds);
+    }
+
+    /**
+     * Бюджет нативной памяти для кэша декодированных треков в мегабайтах, 0 - кэш отключен
+     */
+    public int getPcmCacheMegabytes() {
+        return pcmCacheMegabytes;
+    }
+
+    public void setPcmCacheMegabytes(int pcmCacheMegabytes) {
+        this.pcmCacheMegabytes = Math.max(0, pcmCacheMegabytes);
+    }
+
+    /**
+     * Выравнивать ли громкость треков по результатам анализа громкости
+     */
+    public boolean isNormalizeLoudness() {
+        return normalizeLoudness;
+    }
+
+    public void setNormalizeLoudness(boolean normalizeLoudness) {
+        this.normalizeLoudness = normalizeLoudness;
+    }
+
+    /**
+     * Целевая громкость трека в LUFS, к которой приводится каждый проанализированный трек.
+     * Треки тише цели усиливаются только в пределах запаса громкости музыки (см. AudioManager.getTrackGain)
+     */
+    public float getLoudnessTargetLufs() {
+        return loudnessTargetLufs;
+    }
+
+    public void setLoudnessTargetLufs(float loudnessTargetLufs) {
+        this.loudnessTargetLufs = loudnessTargetLufs;
+    }
+
+    /**
+     * Количество потоков для сканирования папки с музыкой, 0 - по числу ядер процессора
+     */
+    public int getScanParallelism() {
+        return scanParallelism;
+    }
+
+    public void setScanParallelism(int scanParallelism) {
+        this.scanParallelism = Math.max(0, scanParallelism);
+    }
+
+    /**
+     * Количество потоков сканирования с учётом значения 0 (автоматически)
+     */
+    public int getEffectiveScanParallelism() {
+        return scanParallelism > 0 ? scanParallelism : defaultScanParallelism();
+    }
+
+    /**
+     * Хранить все плейлисты в одном журнале playlists.log вместо отдельных JSON файлов.
+     * Вступает в силу после перезапуска
+     */
+    public boolean isPlaylistLog() {
+        return playlistLog;
+    }
+
+    public void setPlaylistLog(boolean playlistLog) {
+        this.playlistLog = playlistLog;
+    }
+
+    /**
+     * Загружать при старте только заголовки плейлистов, а треки - при открытии или выборе плейлиста
+     */
+    public boolean isLazyPlaylists() {
+        return lazyPlaylists;
+    }
+
+    public void setLazyPlaylists(boolean lazyPlaylists) {
+        this.lazyPlaylists = lazyPlaylists;
+    }
+
+    /**
+     * Перемешивание по истории прослушивания: реже игравшие треки выбираются чаще,
+     * недавно звучавшие - реже. Без этой настройки перемешивание проходит все треки без повторов
+     */
+    public boolean isWeightedShuffle() {
+        return weightedShuffle;
+    }
+
+    public void setWeightedShuffle(boolean weightedShuffle) {
+        this.weightedShuffle = weightedShuffle;
+    }
+
+    static int defaultScanParallelism() {
+        return Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+    }
+}
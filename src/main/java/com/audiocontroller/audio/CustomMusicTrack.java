@@ -6,14 +6,25 @@ import java.time.Duration;
 public class CustomMusicTrack {
     private final String name;
     private final Path filePath;
-    private final long fileSize;
-    private Duration duration;
-    private boolean loaded;
+    private volatile long fileSize;
+    private volatile long lastModified;
+    private volatile Duration duration; // Заполняется в фоне (DurationProber)
+    private volatile boolean loaded;
+    private volatile float loudness = Float.NaN; // Интегральная громкость, LUFS (LoudnessAnalyzer)
+    private volatile float peak = Float.NaN;
+    private volatile long fingerprint; // Отпечаток содержимого (OggProbe), 0 - ещё не определён
+    private volatile TrackTags tags = TrackTags.EMPTY; // Комментарии Vorbis (OggProbe)
+    private volatile TrackIntegrity integrity = TrackIntegrity.UNKNOWN; // IntegrityValidator
 
     public CustomMusicTrack(String name, Path filePath, long fileSize) {
+        this(name, filePath, fileSize, 0L);
+    }
+
+    public CustomMusicTrack(String name, Path filePath, long fileSize, long lastModified) {
         this.name = name;
         this.filePath = filePath;
         this.fileSize = fileSize;
+        this.lastModified = lastModified;
         this.loaded = false;
     }
 
@@ -29,6 +40,36 @@ public class CustomMusicTrack {
         return fileSize;
     }
 
+    /**
+     * Время изменения файла в миллисекундах на момент сканирования
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Проверяет, совпадают ли размер и время изменения файла с сохранёнными
+     */
+    boolean isSameFile(long fileSize, long lastModified) {
+        return this.fileSize == fileSize && this.lastModified == lastModified;
+    }
+
+    /**
+     * Обновляет сведения об изменившемся файле на месте, чтобы ссылки на трек
+     * из плейлистов оставались действительными. Длительность и громкость определяются заново
+     */
+    void updateFile(long fileSize, long lastModified) {
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+        this.duration = null;
+        this.loaded = false;
+        this.loudness = Float.NaN;
+        this.peak = Float.NaN;
+        this.fingerprint = 0L;
+        this.tags = TrackTags.EMPTY;
+        this.integrity = TrackIntegrity.UNKNOWN;
+    }
+
     public Duration getDuration() {
         return duration;
     }
@@ -45,6 +86,115 @@ public class CustomMusicTrack {
         this.loaded = loaded;
     }
 
+    /**
+     * Проанализирована ли громкость трека
+     */
+    public boolean hasLoudness() {
+        return !Float.isNaN(loudness);
+    }
+
+    public float getLoudness() {
+        return loudness;
+    }
+
+    /**
+     * Пиковое значение сэмпла (0.0 - 1.0)
+     */
+    public float getPeak() {
+        return peak;
+    }
+
+    public void setLoudness(float loudness, float peak) {
+        this.peak = peak;
+        this.loudness = loudness;
+    }
+
+    /**
+     * Отпечаток содержимого файла. Не меняется при переименовании или перемещении файла
+     * @return отпечаток или 0, если он ещё не определён
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    public void setFingerprint(long fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    public TrackTags getTags() {
+        return tags;
+    }
+
+    public void setTags(TrackTags tags) {
+        this.tags = tags != null ? tags : TrackTags.EMPTY;
+    }
+
+    public TrackIntegrity getIntegrity() {
+        return integrity;
+    }
+
+    public void setIntegrity(TrackIntegrity integrity) {
+        this.integrity = integrity;
+    }
+
+    /**
+     * Известно ли, что файл повреждён. Такие треки пропускаются при воспроизведении плейлиста
+     */
+    public boolean isCorrupt() {
+        return integrity == TrackIntegrity.CORRUPT;
+    }
+
+    /**
+     * Название из тегов или имя файла, если тег TITLE отсутствует
+     */
+    public String getTitle() {
+        String title = tags.getTitle();
+        return title != null ? title : name;
+    }
+
+    public String getArtist() {
+        return tags.getArtist();
+    }
+
+    public String getAlbum() {
+        return tags.getAlbum();
+    }
+
+    /**
+     * @return номер трека в альбоме или 0, если неизвестен
+     */
+    public int getTrackNumber() {
+        return tags.getTrackNumber();
+    }
+
+    public String getGenre() {
+        return tags.getGenre();
+    }
+
+    /**
+     * Идентификатор трека для ссылок из плейлистов (отпечаток в шестнадцатеричном виде)
+     * @return идентификатор или null, если отпечаток ещё не определён
+     */
+    public String getId() {
+        long value = fingerprint;
+        return value != 0L ? formatId(value) : null;
+    }
+
+    static String formatId(long fingerprint) {
+        return String.format("%016x", fingerprint);
+    }
+
+    /**
+     * @return отпечаток или 0, если строка не является идентификатором трека
+     */
+    static long parseId(String id) {
+        try {
+            return Long.parseUnsignedLong(id, 16);
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+
     @Override
     public String toString() {
         return name;
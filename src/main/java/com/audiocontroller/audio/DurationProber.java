@@ -0,0 +1,73 @@
+package com.audiocontroller.audio;
+
+import com.mojang.logging.LogUtils;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Фоновое определение длительности и отпечатка содержимого треков без декодирования звука (см. OggProbe).
+ * Файлы обрабатываются параллельно на ограниченном пуле потоков
+ */
+public class DurationProber {
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    private final ExecutorService executorService;
+
+    public DurationProber() {
+        int threads = Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors() - 1));
+        AtomicInteger counter = new AtomicInteger();
+        this.executorService = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "AudioController-Probe-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+    }
+
+    /**
+     * Определяет длительность треков, у которых она ещё не известна
+     * @return future, который завершается после обработки всех треков
+     */
+    public CompletableFuture<Void> probe(List<CustomMusicTrack> tracks) {
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        for (CustomMusicTrack track : tracks) {
+            if (!track.isLoaded()) {
+                tasks.add(CompletableFuture.runAsync(() -> probe(track), executorService));
+            }
+        }
+        if (tasks.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        long start = System.nanoTime();
+        return CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0])).thenRun(() ->
+            LOGGER.info("Определена длительность треков: {} за {} мс", tasks.size(), (System.nanoTime() - start) / 1_000_000));
+    }
+
+    private void probe(CustomMusicTrack track) {
+        try {
+            OggProbe.Info info = OggProbe.probe(track.getFilePath());
+            long millis = info.getDurationMillis();
+            if (millis >= 0) {
+                track.setDuration(Duration.ofMillis(millis));
+            }
+            track.setFingerprint(info.fingerprint);
+            track.setTags(info.tags);
+            track.setLoaded(true);
+        } catch (IOException e) {
+            LOGGER.warn("Не удалось определить длительность трека: {}", track.getFilePath(), e);
+        }
+    }
+
+    public void shutdown() {
+        executorService.shutdownNow();
+    }
+}
@@ -0,0 +1,91 @@
+package com.audiocontroller.audio;
+
+/**
+ * Дерево Фенвика над целыми весами элементов: изменение веса и поиск элемента по накопленной
+ * сумме за O(log n). Используется для взвешенного случайного выбора без просмотра всего списка.
+ * Веса целые, поэтому суммы точные: элемент с нулевым весом никогда не выбирается из-за
+ * погрешности округления, а после set() в дереве не остаётся "хвостов" от старых весов
+ */
+final class FenwickTree {
+    private final long[] tree; // Индексация с 1
+    private final long[] weights;
+
+    /**
+     * Строит дерево за O(n)
+     */
+    FenwickTree(long[] weights) {
+        int n = weights.length;
+        this.weights = weights.clone();
+        this.tree = new long[n + 1];
+        for (int i = 1; i <= n; i++) {
+            tree[i] += weights[i - 1];
+            int parent = i + (i & -i);
+            if (parent <= n) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+
+    int size() {
+        return weights.length;
+    }
+
+    long get(int index) {
+        return weights[index];
+    }
+
+    void set(int index, long weight) {
+        long delta = weight - weights[index];
+        weights[index] = weight;
+        for (int i = index + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * Сумма весов элементов [0, count)
+     */
+    long prefixSum(int count) {
+        long sum = 0;
+        for (int i = count; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    long total() {
+        return prefixSum(weights.length);
+    }
+
+    /**
+     * Элемент, в отрезок накопленной суммы которого попадает target:
+     * наименьший index, для которого prefixSum(index + 1) > target.
+     * Для target из [0, total()) вес найденного элемента всегда больше нуля
+     */
+    int find(long target) {
+        int position = 0;
+        for (int step = Integer.highestOneBit(Math.max(1, weights.length)); step > 0; step >>= 1) {
+            int next = position + step;
+            if (next < tree.length && tree[next] <= target) {
+                position = next;
+                target -= tree[next];
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Ближайший к index элемент с ненулевым весом: сначала справа, затем слева, за O(log n)
+     * @return индекс или -1, если все веса нулевые
+     */
+    int nearestNonZero(int index) {
+        if (weights[index] > 0) {
+            return index;
+        }
+        long before = prefixSum(index);
+        if (before < total()) {
+            return find(before); // Первый ненулевой правее index
+        }
+        return before > 0 ? find(before - 1) : -1; // Последний ненулевой левее index
+    }
+}
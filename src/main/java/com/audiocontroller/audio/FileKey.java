@@ -0,0 +1,69 @@
+package com.audiocontroller.audio;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+
+/**
+ * Идентичность файла на диске: путь, размер и время изменения.
+ * Если файл перезаписан, ключ меняется, поэтому производные данные (кэш, анализ) становятся неактуальными
+ */
+public final class FileKey {
+    private final Path path;
+    private final long size;
+    private final long lastModified;
+
+    public FileKey(Path path, long size, long lastModified) {
+        this.path = path.toAbsolutePath().normalize();
+        this.size = size;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Читает атрибуты файла и создаёт ключ
+     * @return ключ или null, если файл недоступен
+     */
+    public static FileKey of(Path path) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return new FileKey(path, attributes.size(), attributes.lastModifiedTime().toMillis());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof FileKey other)) {
+            return false;
+        }
+        return size == other.size && lastModified == other.lastModified && path.equals(other.path);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(path, size, lastModified);
+    }
+
+    @Override
+    public String toString() {
+        return path + " (" + size + " байт, " + lastModified + ")";
+    }
+}
@@ -0,0 +1,176 @@
+package com.audiocontroller.audio;
+
+import com.mojang.logging.LogUtils;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Фоновая проверка целостности OGG файлов, чтобы повреждённые треки находились до воспроизведения.
+ * Проверяются контрольные суммы (CRC-32) и порядок всех страниц Ogg, затем файл открывается
+ * через STB Vorbis, который разбирает заголовки идентификации, комментариев и настройки декодера.
+ * Файл читается через отображение в память, звук не декодируется
+ */
+public class IntegrityValidator {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final int PAGE_HEADER_SIZE = 27;
+    private static final int[] CRC_TABLE = createCrcTable();
+
+    private final ExecutorService executorService;
+
+    public IntegrityValidator() {
+        int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+        AtomicInteger counter = new AtomicInteger();
+        this.executorService = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "AudioController-Validator-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+    }
+
+    /**
+     * Проверяет треки, для которых результат ещё не известен
+     * @return future, который завершается после проверки всех треков
+     */
+    public CompletableFuture<Void> validate(List<CustomMusicTrack> tracks) {
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        for (CustomMusicTrack track : tracks) {
+            if (track.getIntegrity() == TrackIntegrity.UNKNOWN) {
+                tasks.add(CompletableFuture.runAsync(() -> validate(track), executorService));
+            }
+        }
+        if (tasks.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0]));
+    }
+
+    private void validate(CustomMusicTrack track) {
+        Path file = track.getFilePath();
+        String problem;
+        try {
+            problem = checkPages(file);
+        } catch (IOException e) {
+            // Файл недоступен (например, удалён) - это не повреждение, проверим при следующем изменении
+            LOGGER.debug("Не удалось проверить файл: {}", file, e);
+            return;
+        }
+        if (problem == null) {
+            VorbisStream stream = VorbisStream.open(file);
+            if (stream == null) {
+                problem = "STB Vorbis не смог разобрать заголовки";
+            } else {
+                stream.close();
+            }
+        }
+
+        if (problem != null) {
+            LOGGER.warn("Повреждённый трек {} будет пропускаться: {}", file, problem);
+            track.setIntegrity(TrackIntegrity.CORRUPT);
+        } else {
+            track.setIntegrity(TrackIntegrity.OK);
+        }
+    }
+
+    /**
+     * Проходит по всем страницам файла
+     * @return описание первой найденной ошибки или null, если страницы в порядке
+     */
+    static String checkPages(Path file) throws IOException {
+        MappedFile mapped = MappedFile.acquire(file);
+        try {
+            ByteBuffer data = mapped.getBuffer().duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            return checkPages(data);
+        } finally {
+            mapped.release();
+        }
+    }
+
+    static String checkPages(ByteBuffer data) {
+        int limit = data.limit();
+        Map<Integer, Integer> sequences = new HashMap<>(); // Номер следующей страницы каждого потока
+        int position = 0;
+        int pages = 0;
+        boolean endOfStream = false;
+        while (position < limit) {
+            if (!OggProbe.isCapturePattern(data, position)) {
+                // После последней страницы потока допускаются посторонние данные (например, теги)
+                return endOfStream ? null : "потеряна синхронизация на смещении " + position;
+            }
+            if (position + PAGE_HEADER_SIZE > limit) {
+                return "файл обрезан";
+            }
+            if (data.get(position + 4) != 0) {
+                return "неизвестная версия страницы на смещении " + position;
+            }
+            int segments = data.get(position + 26) & 0xFF;
+            int headerSize = PAGE_HEADER_SIZE + segments;
+            if (position + headerSize > limit) {
+                return "файл обрезан";
+            }
+            int bodySize = 0;
+            for (int i = 0; i < segments; i++) {
+                bodySize += data.get(position + PAGE_HEADER_SIZE + i) & 0xFF;
+            }
+            int pageSize = headerSize + bodySize;
+            if (position + pageSize > limit) {
+                return "файл обрезан";
+            }
+            if (crc(data, position, pageSize) != data.getInt(position + 22)) {
+                return "неверная контрольная сумма страницы " + data.getInt(position + 18);
+            }
+
+            int serial = data.getInt(position + 14);
+            int sequence = data.getInt(position + 18);
+            Integer expected = sequences.put(serial, sequence + 1);
+            if (expected != null && expected != sequence) {
+                return "пропущена страница " + expected;
+            }
+            endOfStream = (data.get(position + 5) & 0x04) != 0;
+            position += pageSize;
+            pages++;
+        }
+        return pages == 0 ? "нет ни одной страницы" : null;
+    }
+
+    /**
+     * CRC-32 страницы Ogg (полином 0x04c11db7, без отражения, начальное значение 0).
+     * Поле контрольной суммы (байты 22-25) считается нулевым
+     */
+    private static int crc(ByteBuffer data, int offset, int length) {
+        int crc = 0;
+        for (int i = 0; i < length; i++) {
+            int value = i >= 22 && i < 26 ? 0 : data.get(offset + i) & 0xFF;
+            crc = (crc << 8) ^ CRC_TABLE[((crc >>> 24) ^ value) & 0xFF];
+        }
+        return crc;
+    }
+
+    private static int[] createCrcTable() {
+        int[] table = new int[256];
+        for (int i = 0; i < 256; i++) {
+            int r = i << 24;
+            for (int bit = 0; bit < 8; bit++) {
+                r = (r & 0x80000000) != 0 ? (r << 1) ^ 0x04C11DB7 : r << 1;
+            }
+            table[i] = r;
+        }
+        return table;
+    }
+
+    public void shutdown() {
+        executorService.shutdownNow();
+    }
+}
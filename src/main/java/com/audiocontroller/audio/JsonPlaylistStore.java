@@ -0,0 +1,137 @@
+package com.audiocontroller.audio;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.mojang.logging.LogUtils;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Хранилище по умолчанию: отдельный JSON файл на каждый плейлист в config/audiocontroller/playlists.
+ * Файлы удобно править руками. При загрузке файлы разбираются параллельно и потоково
+ */
+final class JsonPlaylistStore implements PlaylistStore {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    private final Path directory;
+    private final Path logFile;
+    private final PersistenceWorker persistence;
+
+    /**
+     * @param logFile журнал LogPlaylistStore; если он остался от прошлого запуска, плейлисты из него
+     *                переносятся в JSON файлы
+     */
+    JsonPlaylistStore(Path directory, Path logFile, PersistenceWorker persistence) {
+        this.directory = directory;
+        this.logFile = logFile;
+        this.persistence = persistence;
+    }
+
+    @Override
+    public List<Playlist> loadAll(boolean headerOnly) throws IOException {
+        if (Files.exists(logFile)) {
+            migrateFromLog();
+        }
+        return readDirectory(directory, headerOnly);
+    }
+
+    /**
+     * Читает все JSON файлы плейлистов из папки в несколько потоков. Повреждённые файлы пропускаются
+     */
+    static List<Playlist> readDirectory(Path directory, boolean headerOnly) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(directory)) {
+            files = stream.filter(path -> path.toString().endsWith(".json")).collect(Collectors.toList());
+        }
+        return files.parallelStream()
+            .map(path -> {
+                try {
+                    Playlist playlist = readFile(path, headerOnly);
+                    if (headerOnly) {
+                        playlist.setPendingBody(() -> readFile(path, false));
+                    }
+                    return playlist;
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.error("Ошибка при загрузке плейлиста: {}", path, e);
+                    return null;
+                }
+            })
+            .filter(Objects::nonNull)
+            .collect(Collectors.toList());
+    }
+
+    private static Playlist readFile(Path path, boolean headerOnly) throws IOException {
+        try (JsonReader reader = new JsonReader(Channels.newReader(FileChannel.open(path), StandardCharsets.UTF_8))) {
+            return Playlist.read(reader, headerOnly);
+        }
+    }
+
+    /**
+     * Записывает плейлисты в папку в виде JSON файлов (синхронно)
+     */
+    static void writeDirectory(Path directory, Map<String, JsonObject> playlists) throws IOException {
+        Files.createDirectories(directory);
+        for (Map.Entry<String, JsonObject> entry : playlists.entrySet()) {
+            PersistenceWorker.writeAtomically(fileFor(directory, entry.getKey()),
+                StandardCharsets.UTF_8.encode(GSON.toJson(entry.getValue())));
+        }
+    }
+
+    static Path fileFor(Path directory, String name) {
+        String fileName = name.replaceAll("[^a-zA-Z0-9_]", "_") + ".json";
+        return directory.resolve(fileName);
+    }
+
+    /**
+     * Журнал новее JSON файлов: выгружаем его в папку и переименовываем, чтобы не выгружать повторно
+     */
+    private void migrateFromLog() throws IOException {
+        LogPlaylistStore log = new LogPlaylistStore(logFile, directory, persistence);
+        try {
+            Map<String, JsonObject> playlists = new HashMap<>();
+            for (Playlist playlist : log.loadAll(false)) {
+                playlists.put(playlist.getName(), playlist.toJson());
+            }
+            writeDirectory(directory, playlists);
+            LOGGER.info("Плейлисты перенесены из журнала в JSON файлы: {}", playlists.size());
+        } finally {
+            log.close();
+        }
+        Files.move(logFile, logFile.resolveSibling(logFile.getFileName() + ".bak"), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Override
+    public CompletableFuture<Void> put(String name, JsonObject json) {
+        // Форматирование и запись - в потоке записи
+        return persistence.write(fileFor(directory, name), () -> StandardCharsets.UTF_8.encode(GSON.toJson(json)));
+    }
+
+    @Override
+    public CompletableFuture<Void> remove(String name) {
+        return persistence.delete(fileFor(directory, name));
+    }
+
+    @Override
+    public void close() {
+    }
+}
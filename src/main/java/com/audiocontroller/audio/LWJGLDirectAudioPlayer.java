@@ -1,231 +1,602 @@
 package com.audiocontroller.audio;
 
 import com.mojang.logging.LogUtils;
-import org.lwjgl.openal.AL10;
-import org.lwjgl.stb.STBVorbis;
-import org.lwjgl.system.MemoryStack;
-import org.lwjgl.system.MemoryUtil;
 import org.slf4j.Logger;
 
-import java.nio.IntBuffer;
-import java.nio.ShortBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Класс для прямого воспроизведения OGG файлов через LWJGL OpenAL
- * Обходит SoundManager Minecraft и использует OpenAL напрямую
+ * Обходит SoundManager Minecraft и использует OpenAL напрямую.
+ * Файл декодируется потоково через небольшую очередь буферов (см. StreamingSource)
+ *
+ * Все вызовы OpenAL и декодирование выполняются в отдельном аудиопотоке.
+ * Публичные методы вызываются из клиентского потока: они только кладут команду
+ * в неблокирующую очередь, а состояние читают из снимка PlaybackState.
+ * Контекст OpenAL Minecraft общий для процесса, поэтому доступен из аудиопотока
+ *
+ * Следующий трек можно заранее открыть через prefetch(): он будет дописан в ту же
+ * очередь буферов, и переход между треками произойдёт без паузы.
+ * Если задан кроссфейд, следующий трек запускается на втором источнике, а громкости
+ * обоих источников плавно меняются в аудиопотоке без выделения памяти
+ *
+ * О смене и окончании трека аудиопоток сообщает через PlaybackListener в тот момент,
+ * когда потоковая подача дочитала файл и источник доиграл очередь, поэтому клиенту
+ * не нужно опрашивать состояние источника каждый тик
  */
 public class LWJGLDirectAudioPlayer {
     private static final Logger LOGGER = LogUtils.getLogger();
-    
-    int buffer = -1; // Package-private для доступа из AudioManager
-    int source = -1; // Package-private для доступа из AudioManager
+    private static final long UPDATE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final int COMMAND_QUEUE_CAPACITY = 64;
+    private static final int SOURCE_COUNT = 2; // Текущий трек и трек, к которому идёт кроссфейд
+
+    private enum CommandType { LOAD, PREFETCH, PLAY, STOP, PAUSE, RESUME, VOLUME, CROSSFADE, UNLOAD, SHUTDOWN }
+
+    private static final class Command {
+        final CommandType type;
+        final long sequence;
+        final Path file;
+        final float value;
+
+        Command(CommandType type, long sequence, Path file, float value) {
+            this.type = type;
+            this.sequence = sequence;
+            this.file = file;
+            this.value = value;
+        }
+    }
+
+    private final SpscQueue<Command> commands = new SpscQueue<>(COMMAND_QUEUE_CAPACITY);
+    private final AtomicReference<PlaybackState> state = new AtomicReference<>(PlaybackState.IDLE);
+    private final Thread audioThread;
+    private final PcmCache pcmCache = new PcmCache(AudioSettings.DEFAULT_PCM_CACHE_MEGABYTES * 1024L * 1024L);
+
+    // Состояние клиентского потока: последние отправленные команды
+    private long postedSequence = 0;
+    private boolean expectedPlaying = false;
+    private boolean expectedPaused = false;
     private float volume = 1.0f;
+    private float crossfade = 0.0f;
     private Path currentFile = null;
-    
+    private long loadSequence = 0;
+    private volatile PlaybackListener listener;
+
+    // Состояние аудиопотока
+    private final OpenAlPool pool = new OpenAlPool(SOURCE_COUNT, SOURCE_COUNT * StreamingSource.BUFFER_COUNT);
+    private final StreamingSource[] sources = { new StreamingSource(pool), new StreamingSource(pool) };
+    private int active = 0; // Источник текущего трека
+    private int fading = -1; // Источник, затухающий во время кроссфейда, или -1
+    private PcmStream pendingNext; // Следующий трек для кроссфейда
+    private boolean userPlaying = false;
+    private int transitionBase = 0;
+    private long fadeElapsedNanos = 0;
+    private long fadeDurationNanos = 0;
+    private long lastUpdateNanos = 0;
+    private float crossfadeSeconds = 0.0f;
+    private Path loadedFile = null;
+    private float gain = 1.0f;
+    private long processedSequence = 0;
+    private long loadedSequence = 0; // Номер команды LOAD, к которой относятся события
+    private int announcedTransitions = 0;
+    private boolean announcedLoad = false; // TRACK_STARTED загруженного файла уже отправлен
+    private volatile boolean running = true;
+
+    public LWJGLDirectAudioPlayer() {
+        this.audioThread = new Thread(this::runAudioLoop, "AudioController-Audio");
+        this.audioThread.setDaemon(true);
+        this.audioThread.start();
+    }
+
     /**
-     * Загружает и декодирует OGG файл
+     * Открывает OGG файл для потокового воспроизведения.
+     * Файл открывается в аудиопотоке, ошибки декодирования попадают в лог оттуда
      * @param filePath путь к OGG файлу
-     * @return true если файл успешно загружен
+     * @return true если файл существует и команда загрузки отправлена
      */
     public boolean loadOGGFile(Path filePath) {
         if (!Files.exists(filePath)) {
             LOGGER.error("Файл не найден: {}", filePath);
             return false;
         }
-        
-        // Освобождаем предыдущие ресурсы
-        cleanup();
-        
-        try (MemoryStack stack = MemoryStack.stackPush()) {
-            IntBuffer channelsBuffer = stack.mallocInt(1);
-            IntBuffer sampleRateBuffer = stack.mallocInt(1);
-            
-            String filePathStr = filePath.toAbsolutePath().toString();
-            ShortBuffer rawAudioBuffer = STBVorbis.stb_vorbis_decode_filename(filePathStr, channelsBuffer, sampleRateBuffer);
-            
-            if (rawAudioBuffer == null) {
-                LOGGER.error("Не удалось декодировать OGG файл: {}", filePath);
-                return false;
-            }
-            
-            int channels = channelsBuffer.get();
-            int sampleRate = sampleRateBuffer.get();
-            
-            // Определяем формат на основе количества каналов
-            int format = channels == 1 ? AL10.AL_FORMAT_MONO16 : AL10.AL_FORMAT_STEREO16;
-            
-            // Создаем буфер OpenAL
-            IntBuffer bufferBuffer = stack.mallocInt(1);
-            AL10.alGenBuffers(bufferBuffer);
-            buffer = bufferBuffer.get();
-            
-            if (buffer == 0) {
-                LOGGER.error("Не удалось создать буфер OpenAL");
-                MemoryUtil.memFree(rawAudioBuffer);
-                return false;
-            }
-            
-            // Загружаем аудиоданные в буфер
-            AL10.alBufferData(buffer, format, rawAudioBuffer, sampleRate);
-            
-            // Освобождаем память, выделенную STB
-            MemoryUtil.memFree(rawAudioBuffer);
-            
-            // Создаем источник OpenAL
-            IntBuffer sourceBuffer = stack.mallocInt(1);
-            AL10.alGenSources(sourceBuffer);
-            source = sourceBuffer.get();
-            
-            if (source == 0) {
-                LOGGER.error("Не удалось создать источник OpenAL");
-                AL10.alDeleteBuffers(buffer);
-                buffer = -1;
-                return false;
-            }
-            
-            // Привязываем буфер к источнику
-            AL10.alSourcei(source, AL10.AL_BUFFER, buffer);
-            
-            // Устанавливаем громкость
-            AL10.alSourcef(source, AL10.AL_GAIN, volume);
-            
-            // Устанавливаем источник как музыку (не 3D позиционирование)
-            AL10.alSourcei(source, AL10.AL_SOURCE_RELATIVE, AL10.AL_TRUE);
-            AL10.alSource3f(source, AL10.AL_POSITION, 0.0f, 0.0f, 0.0f);
-            
-            currentFile = filePath;
-            LOGGER.info("Успешно загружен OGG файл: {} (каналы: {}, частота: {} Hz)", filePath, channels, sampleRate);
-            return true;
-            
-        } catch (Exception e) {
-            LOGGER.error("Ошибка при загрузке OGG файла: {}", filePath, e);
-            cleanup();
+
+        post(CommandType.LOAD, filePath, 0.0f);
+        currentFile = filePath;
+        loadSequence = postedSequence;
+        expectedPlaying = false;
+        expectedPaused = false;
+        return true;
+    }
+
+    /**
+     * Заранее открывает файл, который должен зазвучать сразу после текущего.
+     * Повторный вызов заменяет ранее предзагруженный файл
+     * @param filePath путь к OGG файлу или null, чтобы отменить предзагрузку
+     */
+    public void prefetch(Path filePath) {
+        if (currentFile != null) {
+            post(CommandType.PREFETCH, filePath, 0.0f);
+        }
+    }
+
+    /**
+     * Задаёт получателя событий воспроизведения. Он вызывается в аудиопотоке
+     * @param listener получатель или null
+     */
+    public void setPlaybackListener(PlaybackListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Принимает событие в клиентском потоке и обновляет ожидаемое состояние.
+     * Событие, которое относится к уже заменённому файлу, отбрасывается
+     * @return false если событие устарело и его нужно проигнорировать
+     */
+    public boolean acceptEvent(PlaybackEvent event) {
+        if (event.getLoadSequence() != loadSequence || currentFile == null) {
             return false;
         }
+        switch (event.getType()) {
+            case TRACK_STARTED -> currentFile = event.getFile();
+            case TRACK_ENDED, TRACK_FAILED -> {
+                expectedPlaying = false;
+                expectedPaused = false;
+            }
+        }
+        return true;
     }
-    
+
     /**
      * Начинает воспроизведение загруженного файла
      */
     public void play() {
-        if (source == -1) {
+        if (currentFile == null) {
             LOGGER.warn("Попытка воспроизведения без загруженного файла");
             return;
         }
-        
-        int state = AL10.alGetSourcei(source, AL10.AL_SOURCE_STATE);
-        if (state == AL10.AL_PLAYING) {
-            // Уже играет
-            return;
-        }
-        
-        if (state == AL10.AL_PAUSED) {
-            // Возобновляем с паузы
-            AL10.alSourcePlay(source);
-        } else {
-            // Начинаем воспроизведение с начала
-            AL10.alSourcePlay(source);
-        }
-        LOGGER.debug("Начато воспроизведение через OpenAL");
+
+        post(CommandType.PLAY, null, 0.0f);
+        expectedPlaying = true;
+        expectedPaused = false;
     }
-    
+
     /**
      * Останавливает воспроизведение
      */
     public void stop() {
-        if (source != -1) {
-            AL10.alSourceStop(source);
-            LOGGER.debug("Остановлено воспроизведение через OpenAL");
+        if (currentFile != null && (expectedPlaying || expectedPaused || isPlaying())) {
+            post(CommandType.STOP, null, 0.0f);
         }
+        expectedPlaying = false;
+        expectedPaused = false;
     }
-    
+
     /**
      * Ставит воспроизведение на паузу
      */
     public void pause() {
-        if (source != -1 && isPlaying()) {
-            AL10.alSourcePause(source);
-            LOGGER.debug("Поставлено на паузу через OpenAL");
+        if (currentFile != null && isPlaying()) {
+            post(CommandType.PAUSE, null, 0.0f);
+            expectedPlaying = false;
+            expectedPaused = true;
         }
     }
-    
+
     /**
-     * Возобновляет воспроизведение с паузы
+     * Возобновляет воспроизведение с паузы.
+     * Если воспроизведение не на паузе, ничего не отправляет в аудиопоток
      */
     public void resume() {
-        if (source != -1) {
-            try {
-                int state = AL10.alGetSourcei(source, AL10.AL_SOURCE_STATE);
-                if (state == AL10.AL_PAUSED) {
-                    AL10.alSourcePlay(source);
-                    LOGGER.debug("Возобновлено воспроизведение через OpenAL");
-                }
-            } catch (Exception e) {
-                LOGGER.warn("Ошибка при возобновлении воспроизведения", e);
-            }
+        if (currentFile != null && expectedPaused) {
+            post(CommandType.RESUME, null, 0.0f);
+            expectedPlaying = true;
+            expectedPaused = false;
         }
     }
-    
+
     /**
-     * Проверяет, играет ли звук в данный момент
+     * Проверяет, играет ли звук в данный момент.
+     * Пока аудиопоток не обработал последние команды, возвращает ожидаемое состояние
      */
     public boolean isPlaying() {
-        if (source == -1) {
-            return false;
-        }
-        
-        try {
-            int state = AL10.alGetSourcei(source, AL10.AL_SOURCE_STATE);
-            return (state == AL10.AL_PLAYING);
-        } catch (Exception e) {
-            // Если произошла ошибка при проверке состояния, считаем что не играет
-            LOGGER.warn("Ошибка при проверке состояния воспроизведения OpenAL", e);
-            return false;
+        PlaybackState snapshot = state.get();
+        if (snapshot.getSequence() < postedSequence) {
+            return expectedPlaying;
         }
+        return snapshot.isPlaying();
     }
-    
+
+    /**
+     * Получает последний опубликованный аудиопотоком снимок состояния
+     */
+    public PlaybackState getState() {
+        return state.get();
+    }
+
     /**
      * Устанавливает громкость (0.0 - 1.0)
+     * Команда отправляется только если громкость изменилась
      */
     public void setVolume(float volume) {
-        this.volume = Math.max(0.0f, Math.min(1.0f, volume));
-        if (source != -1) {
-            AL10.alSourcef(source, AL10.AL_GAIN, this.volume);
+        float clamped = Math.max(0.0f, Math.min(1.0f, volume));
+        if (clamped != this.volume) {
+            this.volume = clamped;
+            post(CommandType.VOLUME, null, clamped);
+        }
+    }
+
+    /**
+     * Задаёт длительность кроссфейда между предзагруженными треками, 0 - бесшовный переход.
+     * Применяется к следующему вызову prefetch()
+     */
+    public void setCrossfadeSeconds(float seconds) {
+        float clamped = Math.max(0.0f, Math.min(AudioSettings.MAX_CROSSFADE_SECONDS, seconds));
+        if (clamped != this.crossfade) {
+            this.crossfade = clamped;
+            post(CommandType.CROSSFADE, null, clamped);
         }
     }
-    
+
+    public float getCrossfadeSeconds() {
+        return crossfade;
+    }
+
+    /**
+     * Кэш декодированного PCM. Методы статистики и setBudgetBytes потокобезопасны
+     */
+    public PcmCache getPcmCache() {
+        return pcmCache;
+    }
+
+    /**
+     * Статистика пула источников и буферов OpenAL
+     */
+    public OpenAlPool getOpenAlPool() {
+        return pool;
+    }
+
     /**
      * Получает текущую громкость
      */
     public float getVolume() {
         return volume;
     }
-    
+
     /**
      * Освобождает все ресурсы OpenAL
      */
     public void cleanup() {
-        if (source != -1) {
-            AL10.alSourceStop(source);
-            AL10.alDeleteSources(source);
-            source = -1;
-        }
-        
-        if (buffer != -1) {
-            AL10.alDeleteBuffers(buffer);
-            buffer = -1;
+        if (currentFile != null) {
+            post(CommandType.UNLOAD, null, 0.0f);
         }
-        
         currentFile = null;
+        expectedPlaying = false;
+        expectedPaused = false;
     }
-    
+
+    /**
+     * Освобождает все ресурсы и останавливает аудиопоток. Вызывается при завершении работы
+     */
+    public void release() {
+        post(CommandType.SHUTDOWN, null, 0.0f);
+        currentFile = null;
+        expectedPlaying = false;
+        expectedPaused = false;
+        try {
+            audioThread.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     /**
      * Получает путь к текущему файлу
      */
     public Path getCurrentFile() {
         return currentFile;
     }
-}
 
+    private void post(CommandType type, Path file, float value) {
+        Command command = new Command(type, ++postedSequence, file, value);
+        while (!commands.offer(command)) {
+            // Очередь заполнена - аудиопоток разберёт её за несколько миллисекунд
+            LockSupport.unpark(audioThread);
+            Thread.onSpinWait();
+        }
+        LockSupport.unpark(audioThread);
+    }
+
+    // ---- Аудиопоток ----
+
+    private void runAudioLoop() {
+        LOGGER.debug("Аудиопоток запущен");
+        lastUpdateNanos = System.nanoTime();
+        while (running) {
+            Command command;
+            while ((command = commands.poll()) != null) {
+                try {
+                    execute(command);
+                } catch (Exception e) {
+                    LOGGER.error("Ошибка при выполнении команды {} в аудиопотоке", command.type, e);
+                }
+                processedSequence = command.sequence;
+            }
+
+            long now = System.nanoTime();
+            try {
+                updateSources(now);
+            } catch (Exception e) {
+                LOGGER.error("Ошибка при обновлении потока воспроизведения", e);
+            }
+            lastUpdateNanos = now;
+
+            dispatchEvents();
+            publishState();
+
+            if (running && commands.isEmpty()) {
+                LockSupport.parkNanos(this, UPDATE_INTERVAL_NANOS);
+            }
+        }
+        closeAll();
+        for (StreamingSource source : sources) {
+            source.free();
+        }
+        pool.destroy();
+        pcmCache.clear();
+        publishState();
+        LOGGER.debug("Аудиопоток остановлен");
+    }
+
+    private void execute(Command command) {
+        switch (command.type) {
+            case LOAD -> {
+                loadedSequence = command.sequence;
+                announcedLoad = false;
+                load(command.file);
+            }
+            case PREFETCH -> prefetchNext(command.file);
+            case PLAY -> {
+                if (loadedFile == null) {
+                    fire(PlaybackEvent.Type.TRACK_FAILED, null, false);
+                } else {
+                    userPlaying = true;
+                    sources[active].play();
+                    if (fading != -1) {
+                        sources[fading].play();
+                    }
+                    LOGGER.debug("Начато воспроизведение через OpenAL");
+                    if (!announcedLoad) {
+                        // Файл открыт и декодируется - только теперь трек считается начатым
+                        announcedLoad = true;
+                        fire(PlaybackEvent.Type.TRACK_STARTED, loadedFile, true);
+                    }
+                }
+            }
+            case STOP -> {
+                userPlaying = false;
+                sources[active].stop();
+                finishCrossfade();
+                closePendingNext();
+                LOGGER.debug("Остановлено воспроизведение через OpenAL");
+            }
+            case PAUSE -> {
+                if (sources[active].isPlaying()) {
+                    userPlaying = false;
+                    sources[active].pause();
+                    if (fading != -1) {
+                        sources[fading].pause();
+                    }
+                    LOGGER.debug("Поставлено на паузу через OpenAL");
+                }
+            }
+            case RESUME -> {
+                if (sources[active].isPaused()) {
+                    userPlaying = true;
+                    sources[active].play();
+                    if (fading != -1) {
+                        sources[fading].play();
+                    }
+                    LOGGER.debug("Возобновлено воспроизведение через OpenAL");
+                }
+            }
+            case VOLUME -> {
+                gain = command.value;
+                if (fading != -1) {
+                    applyCrossfadeGains();
+                } else {
+                    sources[active].setGain(gain);
+                }
+            }
+            case CROSSFADE -> crossfadeSeconds = command.value;
+            case UNLOAD -> closeAll();
+            case SHUTDOWN -> running = false;
+        }
+    }
+
+    private void load(Path filePath) {
+        // Освобождаем предыдущие ресурсы
+        closeAll();
+
+        try {
+            PcmStream stream = pcmCache.open(filePath);
+            if (stream == null) {
+                LOGGER.error("Не удалось декодировать OGG файл: {}", filePath);
+                return;
+            }
+
+            if (!sources[active].open(stream, gain)) {
+                stream.close();
+                return;
+            }
+
+            loadedFile = filePath;
+            LOGGER.info("Успешно загружен OGG файл: {} (каналы: {}, частота: {} Hz)", filePath, stream.getChannels(), stream.getSampleRate());
+        } catch (Exception e) {
+            LOGGER.error("Ошибка при загрузке OGG файла: {}", filePath, e);
+            closeAll();
+        }
+    }
+
+    private void prefetchNext(Path filePath) {
+        if (loadedFile == null) {
+            return;
+        }
+        PcmStream stream = filePath != null ? pcmCache.open(filePath) : null;
+        closePendingNext();
+        if (crossfadeSeconds > 0.0f) {
+            // Для кроссфейда следующий трек запускается на втором источнике
+            sources[active].setNext(null);
+            pendingNext = stream;
+        } else {
+            sources[active].setNext(stream);
+        }
+        if (stream != null) {
+            LOGGER.debug("Предзагружен следующий OGG файл: {}", filePath);
+        }
+    }
+
+    /**
+     * Пополняет очереди источников и ведёт кроссфейд. Вызывается на каждой итерации аудиопотока
+     */
+    private void updateSources(long now) {
+        StreamingSource current = sources[active];
+        current.update();
+
+        if (fading != -1) {
+            sources[fading].update();
+            advanceCrossfade(now);
+        } else if (pendingNext != null && userPlaying) {
+            if (current.isPlaying()) {
+                float remaining = current.getRemainingSeconds();
+                if (remaining >= 0.0f && remaining <= crossfadeSeconds) {
+                    startCrossfade(remaining);
+                }
+            } else if (!current.isPaused()) {
+                // Длина трека неизвестна и он уже закончился - запускаем следующий без наложения
+                startCrossfade(0.0f);
+            }
+        }
+    }
+
+    /**
+     * Запускает предзагруженный трек на втором источнике с нулевой громкостью
+     * и начинает плавный переход между источниками
+     */
+    private void startCrossfade(float remainingSeconds) {
+        PcmStream stream = pendingNext;
+        pendingNext = null;
+        int partner = 1 - active;
+        if (!sources[partner].open(stream, 0.0f)) {
+            stream.close();
+            return;
+        }
+        sources[partner].play();
+
+        transitionBase += sources[active].getTransitions() + 1;
+        fading = active;
+        active = partner;
+        fadeElapsedNanos = 0;
+        fadeDurationNanos = (long) (Math.min(crossfadeSeconds, remainingSeconds) * 1_000_000_000L);
+        applyCrossfadeGains();
+        LOGGER.debug("Кроссфейд к следующему файлу: {} ({} сек)", stream.getFile(), fadeDurationNanos / 1.0e9);
+    }
+
+    private void advanceCrossfade(long now) {
+        if (userPlaying) {
+            fadeElapsedNanos += now - lastUpdateNanos;
+        }
+        if (fadeElapsedNanos >= fadeDurationNanos || (!sources[fading].isPlaying() && !sources[fading].isPaused())) {
+            finishCrossfade();
+            sources[active].setGain(gain);
+        } else {
+            applyCrossfadeGains();
+        }
+    }
+
+    /**
+     * Равномощный (equal-power) переход: сумма мощностей двух источников остаётся постоянной
+     */
+    private void applyCrossfadeGains() {
+        float t = fadeDurationNanos <= 0 ? 1.0f : Math.min(1.0f, fadeElapsedNanos / (float) fadeDurationNanos);
+        double angle = t * Math.PI / 2.0;
+        sources[active].setGain(gain * (float) Math.sin(angle));
+        sources[fading].setGain(gain * (float) Math.cos(angle));
+    }
+
+    private void finishCrossfade() {
+        if (fading != -1) {
+            sources[fading].close();
+            fading = -1;
+        }
+    }
+
+    private void closePendingNext() {
+        if (pendingNext != null) {
+            pendingNext.close();
+            pendingNext = null;
+        }
+    }
+
+    private void closeAll() {
+        finishCrossfade();
+        closePendingNext();
+        for (StreamingSource source : sources) {
+            source.close();
+        }
+        active = 0;
+        transitionBase = 0;
+        announcedTransitions = 0;
+        userPlaying = false;
+        loadedFile = null;
+    }
+
+    /**
+     * Сообщает о начале предзагруженного трека и об окончании последнего трека очереди
+     */
+    private void dispatchEvents() {
+        StreamingSource current = sources[active];
+        int transitions = transitionBase + current.getTransitions();
+        if (transitions > announcedTransitions) {
+            announcedTransitions = transitions;
+            fire(PlaybackEvent.Type.TRACK_STARTED, current.getPlayingFile(), false);
+        }
+
+        // Поток дочитан, очередь доиграна и продолжения нет - трек закончился
+        if (userPlaying && loadedFile != null && fading == -1 && pendingNext == null
+                && !current.isPlaying() && !current.isPaused()) {
+            userPlaying = false;
+            fire(PlaybackEvent.Type.TRACK_ENDED, current.getPlayingFile(), false);
+        }
+    }
+
+    private void fire(PlaybackEvent.Type type, Path file, boolean initial) {
+        PlaybackListener target = listener;
+        if (target == null) {
+            return;
+        }
+        try {
+            target.onPlaybackEvent(new PlaybackEvent(type, file, loadedSequence, initial));
+        } catch (Exception e) {
+            LOGGER.error("Ошибка в обработчике события воспроизведения {}", type, e);
+        }
+    }
+
+    /**
+     * Публикует снимок состояния, если оно изменилось с прошлого раза
+     */
+    private void publishState() {
+        StreamingSource current = sources[active];
+        boolean playing = current.isPlaying() || (fading != -1 && sources[fading].isPlaying())
+                || (userPlaying && pendingNext != null);
+        boolean paused = current.isPaused();
+        Path file = loadedFile != null ? current.getPlayingFile() : null;
+        int transitions = transitionBase + current.getTransitions();
+        PlaybackState snapshot = state.get();
+        if (!snapshot.sameAs(processedSequence, file, playing, paused, transitions)) {
+            state.set(new PlaybackState(processedSequence, file, playing, paused, transitions));
+        }
+    }
+}
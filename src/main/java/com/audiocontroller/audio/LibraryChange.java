@@ -0,0 +1,67 @@
+package com.audiocontroller.audio;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Изменение библиотеки музыки: добавленные, удалённые и изменённые треки
+ */
+public final class LibraryChange {
+    private final List<CustomMusicTrack> added;
+    private final List<CustomMusicTrack> removed;
+    private final List<CustomMusicTrack> modified;
+    private final boolean fullRescan;
+    private final LibrarySnapshot snapshot;
+
+    LibraryChange(Collection<CustomMusicTrack> added, Collection<CustomMusicTrack> removed,
+                  Collection<CustomMusicTrack> modified, boolean fullRescan) {
+        this(List.copyOf(added), List.copyOf(removed), List.copyOf(modified), fullRescan, LibrarySnapshot.EMPTY);
+    }
+
+    private LibraryChange(List<CustomMusicTrack> added, List<CustomMusicTrack> removed, List<CustomMusicTrack> modified,
+                          boolean fullRescan, LibrarySnapshot snapshot) {
+        this.added = added;
+        this.removed = removed;
+        this.modified = modified;
+        this.fullRescan = fullRescan;
+        this.snapshot = snapshot;
+    }
+
+    LibraryChange withSnapshot(LibrarySnapshot snapshot) {
+        return new LibraryChange(added, removed, modified, fullRescan, snapshot);
+    }
+
+    public List<CustomMusicTrack> getAdded() {
+        return added;
+    }
+
+    public List<CustomMusicTrack> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * Треки, файл которых изменился, а также треки, для которых фоновая обработка определила
+     * длительность, теги и целостность. Объекты треков те же, что и до изменения
+     */
+    public List<CustomMusicTrack> getModified() {
+        return modified;
+    }
+
+    /**
+     * Изменение получено полным сканированием папки, а не по событиям файловой системы
+     */
+    public boolean isFullRescan() {
+        return fullRescan;
+    }
+
+    /**
+     * Снимок библиотеки после применения изменения
+     */
+    public LibrarySnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && modified.isEmpty();
+    }
+}
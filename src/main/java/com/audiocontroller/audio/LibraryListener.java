@@ -0,0 +1,10 @@
+package com.audiocontroller.audio;
+
+/**
+ * Получатель изменений библиотеки музыки.
+ * Вызывается в потоке MusicLoader после того, как изменение применено
+ */
+@FunctionalInterface
+public interface LibraryListener {
+    void onLibraryChanged(LibraryChange change);
+}
@@ -0,0 +1,302 @@
+package com.audiocontroller.audio;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Неизменяемый снимок библиотеки музыки с индексами по имени, по пути и по отпечатку содержимого.
+ * MusicLoader публикует новый снимок после каждого изменения, поэтому читатели
+ * получают согласованный список без блокировок и копирования.
+ * Список и индексы хранятся в неизменяемых структурах с общими частями между версиями
+ * (PersistentSequence, PersistentHashMap), поэтому снимок после изменения (см. apply())
+ * стоит O(k log n) для k изменившихся треков, а не копию всей библиотеки.
+ * Поисковый индекс тоже строится вместе со снимком (см. TrackSearchIndex.with())
+ */
+public final class LibrarySnapshot {
+    public static final LibrarySnapshot EMPTY = new LibrarySnapshot(0, List.of());
+
+    /**
+     * Запись трека в индексах снимка. Объект трека меняет отпечаток на месте, поэтому запись
+     * хранит отпечаток, под которым трек проиндексирован, - по нему трек убирается из прежней группы
+     */
+    static final class Entry {
+        final CustomMusicTrack track;
+        final long order; // Ключ порядка сканирования в PersistentSequence
+        final long fingerprint;
+
+        Entry(CustomMusicTrack track, long order, long fingerprint) {
+            this.track = track;
+            this.order = order;
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    private final long version;
+    private final long nextOrder;
+    private final PersistentSequence<CustomMusicTrack> ordered;
+    private final PersistentHashMap<Path, Entry> byPath;
+    private final PersistentHashMap<String, List<CustomMusicTrack>> byName; // Треки с этим именем в порядке сканирования
+    private final PersistentHashMap<Long, List<CustomMusicTrack>> byFingerprint;
+    private final TrackSearchIndex searchIndex;
+
+    /**
+     * Строит снимок заново в заданном порядке треков
+     */
+    LibrarySnapshot(long version, Collection<CustomMusicTrack> tracks) {
+        this(version, new Builder().addAll(tracks));
+    }
+
+    private LibrarySnapshot(long version, Builder builder) {
+        this.version = version;
+        this.nextOrder = builder.nextOrder;
+        this.ordered = builder.ordered;
+        this.byPath = builder.byPath;
+        this.byName = builder.byName;
+        this.byFingerprint = builder.byFingerprint;
+        this.searchIndex = builder.searchIndex.with(builder.created, this::isLive, ordered.size());
+    }
+
+    /**
+     * Запись принадлежит этому снимку: трек не удалён и не изменён после её создания
+     */
+    private boolean isLive(Entry entry) {
+        return byPath.get(entry.track.getFilePath()) == entry;
+    }
+
+    /**
+     * Снимок после изменения: удалённые треки убираются, добавленные дописываются в конец,
+     * изменённые переносятся в группу нового отпечатка. Порядок остальных треков не меняется.
+     * Копируются только пути к изменённым узлам структур, этот снимок остаётся прежним
+     */
+    LibrarySnapshot apply(long version, LibraryChange change) {
+        Builder builder = new Builder(this);
+        Set<CustomMusicTrack> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        removed.addAll(change.getRemoved());
+        for (CustomMusicTrack track : removed) {
+            builder.remove(track);
+        }
+        for (CustomMusicTrack track : change.getAdded()) {
+            if (!removed.contains(track)) { // Файл мог появиться и исчезнуть в одной порции событий
+                builder.add(track);
+            }
+        }
+        for (CustomMusicTrack track : change.getModified()) {
+            if (!removed.contains(track)) {
+                builder.modify(track);
+            }
+        }
+        return new LibrarySnapshot(version, builder);
+    }
+
+    /**
+     * Изменяемая копия корней структур снимка. Сами структуры не изменяются: каждая операция
+     * заменяет корень новой версией
+     */
+    private static final class Builder {
+        long nextOrder;
+        PersistentSequence<CustomMusicTrack> ordered = PersistentSequence.empty();
+        PersistentHashMap<Path, Entry> byPath = PersistentHashMap.empty();
+        PersistentHashMap<String, List<CustomMusicTrack>> byName = PersistentHashMap.empty();
+        PersistentHashMap<Long, List<CustomMusicTrack>> byFingerprint = PersistentHashMap.empty();
+        TrackSearchIndex searchIndex = TrackSearchIndex.EMPTY;
+        final List<Entry> created = new ArrayList<>(); // Записи для нового сегмента поискового индекса
+
+        Builder() {
+        }
+
+        Builder(LibrarySnapshot snapshot) {
+            nextOrder = snapshot.nextOrder;
+            ordered = snapshot.ordered;
+            byPath = snapshot.byPath;
+            byName = snapshot.byName;
+            byFingerprint = snapshot.byFingerprint;
+            searchIndex = snapshot.searchIndex;
+        }
+
+        Builder addAll(Collection<CustomMusicTrack> tracks) {
+            for (CustomMusicTrack track : tracks) {
+                add(track);
+            }
+            return this;
+        }
+
+        void add(CustomMusicTrack track) {
+            Entry existing = byPath.get(track.getFilePath());
+            if (existing != null) {
+                if (existing.track == track) {
+                    modify(track);
+                    return;
+                }
+                remove(existing); // Новый объект для того же файла заменяет прежний
+            }
+            Entry entry = new Entry(track, nextOrder++, track.getFingerprint());
+            created.add(entry);
+            ordered = ordered.put(entry.order, track);
+            byPath = byPath.put(track.getFilePath(), entry);
+            byName = byName.put(track.getName(), with(byName.get(track.getName()), track));
+            addToGroup(entry);
+        }
+
+        void remove(CustomMusicTrack track) {
+            Entry entry = byPath.get(track.getFilePath());
+            if (entry != null && entry.track == track) {
+                remove(entry);
+            }
+        }
+
+        private void remove(Entry entry) {
+            CustomMusicTrack track = entry.track;
+            ordered = ordered.remove(entry.order);
+            byPath = byPath.remove(track.getFilePath());
+            // Имя удалённого трека переходит к следующему треку с тем же именем
+            byName = replace(byName, track.getName(), without(byName.get(track.getName()), track));
+            removeFromGroup(entry);
+        }
+
+        void modify(CustomMusicTrack track) {
+            Entry entry = byPath.get(track.getFilePath());
+            if (entry == null || entry.track != track) {
+                return;
+            }
+            Entry updated = new Entry(track, entry.order, track.getFingerprint());
+            created.add(updated); // Теги могли измениться, трек переиндексируется
+            byPath = byPath.put(track.getFilePath(), updated);
+            if (updated.fingerprint != entry.fingerprint) {
+                removeFromGroup(entry); // Прежняя группа не хранит трек с другим отпечатком
+                addToGroup(updated);
+            }
+        }
+
+        private void addToGroup(Entry entry) {
+            if (entry.fingerprint != 0L) {
+                byFingerprint = byFingerprint.put(entry.fingerprint, with(byFingerprint.get(entry.fingerprint), entry.track));
+            }
+        }
+
+        private void removeFromGroup(Entry entry) {
+            if (entry.fingerprint != 0L) {
+                byFingerprint = replace(byFingerprint, entry.fingerprint,
+                    without(byFingerprint.get(entry.fingerprint), entry.track));
+            }
+        }
+
+        /**
+         * Заменяет группу; пустая группа удаляется из индекса
+         */
+        private static <K> PersistentHashMap<K, List<CustomMusicTrack>> replace(
+                PersistentHashMap<K, List<CustomMusicTrack>> map, K key, List<CustomMusicTrack> group) {
+            return group.isEmpty() ? map.remove(key) : map.put(key, group);
+        }
+
+        private static List<CustomMusicTrack> with(List<CustomMusicTrack> group, CustomMusicTrack track) {
+            if (group == null) {
+                return List.of(track);
+            }
+            CustomMusicTrack[] next = group.toArray(new CustomMusicTrack[group.size() + 1]);
+            next[group.size()] = track;
+            return List.of(next);
+        }
+
+        private static List<CustomMusicTrack> without(List<CustomMusicTrack> group, CustomMusicTrack track) {
+            List<CustomMusicTrack> next = new ArrayList<>(group.size());
+            for (CustomMusicTrack other : group) {
+                if (other != track) {
+                    next.add(other);
+                }
+            }
+            return next.size() == group.size() ? group : List.copyOf(next);
+        }
+    }
+
+    /**
+     * Номер снимка, увеличивается с каждым изменением библиотеки
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Все треки в порядке сканирования. Список неизменяемый и не копируется
+     */
+    public List<CustomMusicTrack> getTracks() {
+        return ordered.asList();
+    }
+
+    /**
+     * Первый в порядке сканирования трек с таким именем файла
+     */
+    public Optional<CustomMusicTrack> getTrackByName(String name) {
+        List<CustomMusicTrack> group = byName.get(name);
+        return group != null ? Optional.of(group.get(0)) : Optional.empty();
+    }
+
+    public Optional<CustomMusicTrack> getTrackByPath(Path path) {
+        Entry entry = byPath.get(path);
+        return entry != null ? Optional.of(entry.track) : Optional.empty();
+    }
+
+    /**
+     * Ищет трек по идентификатору содержимого (см. CustomMusicTrack.getId()).
+     * Если в библиотеке несколько копий файла, возвращается любая из них
+     */
+    public Optional<CustomMusicTrack> getTrackById(String id) {
+        if (id == null) {
+            return Optional.empty();
+        }
+        List<CustomMusicTrack> matches = byFingerprint.get(CustomMusicTrack.parseId(id));
+        return matches != null ? Optional.of(matches.get(0)) : Optional.empty();
+    }
+
+    /**
+     * Группы файлов с одинаковым содержимым (по две и больше копий)
+     */
+    public List<List<CustomMusicTrack>> getDuplicates() {
+        List<List<CustomMusicTrack>> duplicates = new ArrayList<>();
+        byFingerprint.forEach((fingerprint, group) -> {
+            if (group.size() > 1) {
+                duplicates.add(group);
+            }
+        });
+        return duplicates;
+    }
+
+    /**
+     * Поиск по началу слов в имени файла, названии, исполнителе, альбоме и жанре.
+     * Все слова запроса должны найтись; пустой запрос подходит ко всем трекам.
+     * @param filter треки, не прошедшие проверку, пропускаются
+     * @param limit сколько треков найти; поиск останавливается, как только они найдены
+     * @return найденные треки в порядке сканирования
+     */
+    public List<CustomMusicTrack> search(String query, Predicate<CustomMusicTrack> filter, int limit) {
+        List<String> queryWords = new ArrayList<>();
+        TrackSearchIndex.tokenize(query, queryWords);
+        if (!queryWords.isEmpty()) {
+            return searchIndex.search(queryWords, entry -> isLive(entry) && filter.test(entry.track), limit);
+        }
+        List<CustomMusicTrack> found = new ArrayList<>();
+        for (CustomMusicTrack track : getTracks()) {
+            if (found.size() >= limit) {
+                break;
+            }
+            if (filter.test(track)) {
+                found.add(track);
+            }
+        }
+        return found;
+    }
+
+    public int size() {
+        return ordered.size();
+    }
+
+    public boolean isEmpty() {
+        return ordered.isEmpty();
+    }
+}
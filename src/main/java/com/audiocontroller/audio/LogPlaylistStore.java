@@ -0,0 +1,283 @@
+package com.audiocontroller.audio;
+
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.mojang.logging.LogUtils;
+import org.slf4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.CRC32;
+
+/**
+ * Все плейлисты в одном файле-журнале config/audiocontroller/playlists.log.
+ * Каждое изменение дописывается в конец маленькой записью, поэтому сохранение не переписывает
+ * остальные плейлисты. Когда устаревшие записи занимают больше половины журнала, он переписывается
+ * заново только с актуальными версиями (в потоке записи, атомарно).
+ *
+ * Формат (little-endian): заголовок MAGIC, VERSION; каждая запись - длина тела, CRC-32 тела,
+ * тело: тип (PUT/REMOVE), длина имени (short), имя в UTF-8, для PUT - компактный JSON плейлиста.
+ * Запись, оборванная сбоем на середине, отбрасывается при следующем открытии
+ */
+final class LogPlaylistStore implements PlaylistStore {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final int MAGIC = 0x474C5041; // "APLG"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final long MIN_COMPACT_BYTES = 64 * 1024;
+
+    private final Path file;
+    private final Path importDirectory;
+    private final PersistenceWorker persistence;
+
+    // Под блокировкой this: актуальные версии плейлистов в том виде, в каком они лежат в журнале
+    private final Map<String, byte[]> live = new LinkedHashMap<>();
+    private long liveBytes;
+    private long logBytes;
+    private FileChannel channel;
+
+    /**
+     * @param importDirectory папка с JSON плейлистами, которые импортируются, если журнала ещё нет
+     */
+    LogPlaylistStore(Path file, Path importDirectory, PersistenceWorker persistence) {
+        this.file = file;
+        this.importDirectory = importDirectory;
+        this.persistence = persistence;
+    }
+
+    @Override
+    public List<Playlist> loadAll(boolean headerOnly) throws IOException {
+        List<Map.Entry<String, byte[]>> entries;
+        synchronized (this) {
+            closeChannel();
+            live.clear();
+            liveBytes = 0;
+            if (!Files.exists(file)) {
+                importJson();
+            } else {
+                replay();
+            }
+            entries = new ArrayList<>(live.entrySet());
+        }
+
+        // Содержимое записей неизменяемо, поэтому разбирать его можно без блокировки
+        return entries.parallelStream()
+            .map(entry -> {
+                byte[] payload = entry.getValue();
+                try {
+                    Playlist playlist = parse(payload, headerOnly);
+                    if (headerOnly) {
+                        playlist.setPendingBody(() -> parse(payload, false));
+                    }
+                    return playlist;
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.error("Повреждённый плейлист в журнале: {}", entry.getKey(), e);
+                    return null;
+                }
+            })
+            .filter(Objects::nonNull)
+            .collect(Collectors.toList());
+    }
+
+    private static Playlist parse(byte[] payload, boolean headerOnly) throws IOException {
+        try (JsonReader reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(payload), StandardCharsets.UTF_8))) {
+            return Playlist.read(reader, headerOnly);
+        }
+    }
+
+    private void importJson() throws IOException {
+        List<Playlist> playlists = JsonPlaylistStore.readDirectory(importDirectory, false);
+        for (Playlist playlist : playlists) {
+            apply(PUT, playlist.getName(), playlist.toJson().toString().getBytes(StandardCharsets.UTF_8));
+        }
+        compact();
+        if (!playlists.isEmpty()) {
+            LOGGER.info("Плейлисты импортированы в журнал: {}", playlists.size());
+        }
+    }
+
+    private void replay() throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            LOGGER.warn("Журнал плейлистов повреждён или устарел, создаётся новый: {}", file);
+            Files.move(file, file.resolveSibling(file.getFileName() + ".bad"), StandardCopyOption.REPLACE_EXISTING);
+            importJson();
+            return;
+        }
+
+        CRC32 crc = new CRC32();
+        int records = 0;
+        while (buffer.hasRemaining()) {
+            int start = buffer.position();
+            if (buffer.remaining() < RECORD_HEADER_SIZE) {
+                truncate(start);
+                break;
+            }
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length < 3 || length > buffer.remaining()) {
+                truncate(start);
+                break;
+            }
+            ByteBuffer body = buffer.slice(buffer.position(), length).order(ByteOrder.LITTLE_ENDIAN);
+            crc.reset();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                truncate(start);
+                break;
+            }
+            buffer.position(buffer.position() + length);
+
+            byte type = body.get();
+            int nameLength = body.getShort() & 0xFFFF;
+            if (nameLength > body.remaining() || (type != PUT && type != REMOVE)) {
+                truncate(start);
+                break;
+            }
+            byte[] name = new byte[nameLength];
+            body.get(name);
+            byte[] payload = new byte[body.remaining()];
+            body.get(payload);
+            apply(type, new String(name, StandardCharsets.UTF_8), payload);
+            records++;
+        }
+        logBytes = Files.size(file);
+        LOGGER.debug("Журнал плейлистов прочитан: {} записей, {} плейлистов", records, live.size());
+    }
+
+    /**
+     * Отрезает оборванную или повреждённую запись и всё, что после неё
+     */
+    private void truncate(long position) throws IOException {
+        LOGGER.warn("Журнал плейлистов обрезан после сбоя: {} байт отброшено", Files.size(file) - position);
+        try (FileChannel truncating = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            truncating.truncate(position);
+            truncating.force(false);
+        }
+    }
+
+    private void apply(byte type, String name, byte[] payload) {
+        byte[] previous = type == PUT ? live.put(name, payload) : live.remove(name);
+        if (previous != null) {
+            liveBytes -= recordSize(name, previous);
+        }
+        if (type == PUT) {
+            liveBytes += recordSize(name, payload);
+        }
+    }
+
+    private static int recordSize(String name, byte[] payload) {
+        return RECORD_HEADER_SIZE + 3 + name.getBytes(StandardCharsets.UTF_8).length + payload.length;
+    }
+
+    @Override
+    public CompletableFuture<Void> put(String name, JsonObject json) {
+        // Сериализуем сразу: json - снимок, а запись пройдёт в потоке записи
+        byte[] payload = json.toString().getBytes(StandardCharsets.UTF_8);
+        // Повторные изменения одного плейлиста в пределах интервала объединения дают одну запись
+        return persistence.schedule("playlist:" + name, () -> append(PUT, name, payload));
+    }
+
+    @Override
+    public CompletableFuture<Void> remove(String name) {
+        return persistence.schedule("playlist:" + name, () -> append(REMOVE, name, new byte[0]));
+    }
+
+    private synchronized void append(byte type, String name, byte[] payload) throws IOException {
+        if (type == REMOVE && !live.containsKey(name)) {
+            return;
+        }
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        if (nameBytes.length > 0xFFFF) {
+            throw new IOException("Слишком длинное имя плейлиста: " + name);
+        }
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + 3 + nameBytes.length + payload.length)
+            .order(ByteOrder.LITTLE_ENDIAN);
+        record.position(RECORD_HEADER_SIZE);
+        record.put(type).putShort((short) nameBytes.length).put(nameBytes).put(payload);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), RECORD_HEADER_SIZE, record.capacity() - RECORD_HEADER_SIZE);
+        record.putInt(0, record.capacity() - RECORD_HEADER_SIZE).putInt(4, (int) crc.getValue());
+        record.position(0);
+
+        if (channel == null) {
+            if (!Files.exists(file)) {
+                compact(); // Журнал удалили во время игры - начинаем с актуального состояния
+            }
+            channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+        channel.force(false);
+        logBytes += record.capacity();
+        apply(type, name, payload);
+
+        if (logBytes > MIN_COMPACT_BYTES && logBytes > liveBytes * 2) {
+            compact();
+        }
+    }
+
+    /**
+     * Переписывает журнал, оставляя по одной записи на каждый существующий плейлист
+     */
+    private void compact() throws IOException {
+        closeChannel();
+        long before = logBytes;
+        ByteBuffer buffer = ByteBuffer.allocate((int) (HEADER_SIZE + liveBytes)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION);
+        CRC32 crc = new CRC32();
+        for (Map.Entry<String, byte[]> entry : live.entrySet()) {
+            byte[] nameBytes = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            byte[] payload = entry.getValue();
+            int start = buffer.position();
+            buffer.position(start + RECORD_HEADER_SIZE);
+            buffer.put(PUT).putShort((short) nameBytes.length).put(nameBytes).put(payload);
+            int length = buffer.position() - start - RECORD_HEADER_SIZE;
+            crc.reset();
+            crc.update(buffer.array(), start + RECORD_HEADER_SIZE, length);
+            buffer.putInt(start, length).putInt(start + 4, (int) crc.getValue());
+        }
+        buffer.flip();
+        PersistenceWorker.writeAtomically(file, buffer);
+        logBytes = HEADER_SIZE + liveBytes;
+        if (before > 0) {
+            LOGGER.debug("Журнал плейлистов сжат: {} -> {} байт", before, logBytes);
+        }
+    }
+
+    private void closeChannel() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            closeChannel();
+        } catch (IOException e) {
+            LOGGER.error("Ошибка при закрытии журнала плейлистов", e);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.audiocontroller.audio;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.mojang.logging.LogUtils;
+import org.lwjgl.system.MemoryUtil;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.ShortBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Фоновый анализ громкости треков (EBU R128) для выравнивания громкости при воспроизведении.
+ * Трек декодируется порциями в одном потоке с минимальным приоритетом, чтобы не мешать
+ * воспроизведению. Результаты сохраняются в config/audiocontroller/loudness.json
+ * и повторно используются, пока файл не изменился (см. FileKey)
+ */
+public class LoudnessAnalyzer {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final String CACHE_FILE = "config/audiocontroller/loudness.json";
+    private static final Gson GSON = new Gson();
+    private static final int CHUNK_FRAMES = 4096;
+    private static final float MIN_LOUDNESS_LUFS = -70.0f; // Тишина хранится как порог стробирования
+
+    private static final class Result {
+        final float loudness;
+        final float peak;
+
+        Result(float loudness, float peak) {
+            this.loudness = loudness;
+            this.peak = peak;
+        }
+    }
+
+    private final Map<FileKey, Result> cache = new HashMap<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final ExecutorService executorService = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "AudioController-Loudness");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+    private boolean dirty = false;
+
+    public LoudnessAnalyzer() {
+        loadCache();
+    }
+
+    /**
+     * Применяет сохранённые результаты к трекам и ставит в очередь анализ остальных
+     * @return future, который завершается после анализа всех треков
+     */
+    public CompletableFuture<Void> analyze(List<CustomMusicTrack> tracks) {
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        for (CustomMusicTrack track : tracks) {
+            if (track.hasLoudness()) {
+                continue;
+            }
+            FileKey key = FileKey.of(track.getFilePath());
+            if (key == null) {
+                continue;
+            }
+            Result cached;
+            synchronized (cache) {
+                cached = cache.get(key);
+            }
+            if (cached != null) {
+                track.setLoudness(cached.loudness, cached.peak);
+            } else {
+                pending.incrementAndGet();
+                tasks.add(CompletableFuture.runAsync(() -> analyze(track, key), executorService));
+            }
+        }
+        if (tasks.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        LOGGER.info("Треков в очереди на анализ громкости: {}", tasks.size());
+        return CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0]));
+    }
+
+    private void analyze(CustomMusicTrack track, FileKey key) {
+        try {
+            Result result = measure(track.getFilePath());
+            if (result != null) {
+                synchronized (cache) {
+                    cache.put(key, result);
+                    dirty = true;
+                }
+                track.setLoudness(result.loudness, result.peak);
+                LOGGER.debug("Громкость трека {}: {} LUFS, пик {}", track.getName(), result.loudness, result.peak);
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Ошибка при анализе громкости трека: {}", track.getFilePath(), e);
+        } finally {
+            if (pending.decrementAndGet() == 0) {
+                saveCache();
+            }
+        }
+    }
+
+    /**
+     * Декодирует файл порциями по CHUNK_FRAMES кадров и измеряет громкость
+     */
+    private static Result measure(Path file) {
+        VorbisStream stream = VorbisStream.open(file);
+        if (stream == null) {
+            return null;
+        }
+        ShortBuffer pcm = MemoryUtil.memAllocShort(CHUNK_FRAMES * stream.getChannels());
+        try {
+            LoudnessMeter meter = new LoudnessMeter(stream.getChannels(), stream.getSampleRate());
+            while (stream.read(pcm) > 0) {
+                meter.accept(pcm);
+            }
+            float loudness = (float) Math.max(MIN_LOUDNESS_LUFS, meter.getIntegratedLoudness());
+            return new Result(loudness, (float) meter.getPeak());
+        } finally {
+            MemoryUtil.memFree(pcm);
+            stream.close();
+        }
+    }
+
+    private void loadCache() {
+        Path file = Paths.get(CACHE_FILE);
+        if (!Files.exists(file)) {
+            return;
+        }
+        try {
+            JsonObject json = GSON.fromJson(Files.readString(file), JsonObject.class);
+            if (json == null || !json.has("tracks")) {
+                return;
+            }
+            synchronized (cache) {
+                for (JsonElement element : json.getAsJsonArray("tracks")) {
+                    JsonObject entry = element.getAsJsonObject();
+                    FileKey key = new FileKey(Paths.get(entry.get("path").getAsString()),
+                        entry.get("size").getAsLong(), entry.get("lastModified").getAsLong());
+                    cache.put(key, new Result(entry.get("loudness").getAsFloat(), entry.get("peak").getAsFloat()));
+                }
+            }
+            LOGGER.debug("Загружен кэш громкости: {} треков", cache.size());
+        } catch (Exception e) {
+            LOGGER.error("Ошибка при загрузке кэша громкости: {}", file, e);
+        }
+    }
+
+    private void saveCache() {
+        JsonArray entries = new JsonArray();
+        synchronized (cache) {
+            if (!dirty) {
+                return;
+            }
+            dirty = false;
+            for (Map.Entry<FileKey, Result> entry : cache.entrySet()) {
+                JsonObject json = new JsonObject();
+                json.addProperty("path", entry.getKey().getPath().toString());
+                json.addProperty("size", entry.getKey().getSize());
+                json.addProperty("lastModified", entry.getKey().getLastModified());
+                json.addProperty("loudness", entry.getValue().loudness);
+                json.addProperty("peak", entry.getValue().peak);
+                entries.add(json);
+            }
+        }
+        JsonObject json = new JsonObject();
+        json.addProperty("version", 1);
+        json.add("tracks", entries);
+
+        Path file = Paths.get(CACHE_FILE);
+        try {
+            // Прерванная запись не должна оставить обрезанный файл вместо всего кэша
+            PersistenceWorker.writeAtomically(file, StandardCharsets.UTF_8.encode(GSON.toJson(json)));
+        } catch (IOException e) {
+            LOGGER.error("Ошибка при сохранении кэша громкости: {}", file, e);
+        }
+    }
+
+    public void shutdown() {
+        executorService.shutdownNow();
+    }
+}
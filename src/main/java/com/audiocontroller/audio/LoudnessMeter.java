@@ -0,0 +1,159 @@
+package com.audiocontroller.audio;
+
+import java.nio.ShortBuffer;
+
+/**
+ * Измерение интегральной громкости по EBU R128 (ITU-R BS.1770) и пикового уровня.
+ * PCM подаётся порциями любого размера, память не зависит от длины трека:
+ * энергии блоков складываются в гистограмму с шагом 0.1 LU
+ */
+final class LoudnessMeter {
+    private static final double ABSOLUTE_GATE_LUFS = -70.0;
+    private static final double RELATIVE_GATE_LU = -10.0;
+    private static final double MAX_LUFS = 10.0;
+    private static final double BIN_WIDTH_LU = 0.1;
+    private static final int BIN_COUNT = (int) ((MAX_LUFS - ABSOLUTE_GATE_LUFS) / BIN_WIDTH_LU);
+    private static final int STEPS_PER_BLOCK = 4; // Блок 400 мс с перекрытием 75% = 4 шага по 100 мс
+
+    private final int channels;
+    private final int stepFrames;
+
+    // Коэффициенты K-фильтра: полка высоких частот и фильтр верхних частот
+    private final double shelfB0, shelfB1, shelfB2, shelfA1, shelfA2;
+    private final double highPassA1, highPassA2;
+    // Состояние фильтров для каждого канала (прямая форма II)
+    private final double[] shelfZ1, shelfZ2, highPassZ1, highPassZ2;
+
+    private final double[] stepEnergy = new double[STEPS_PER_BLOCK]; // Кольцо последних шагов
+    private int stepIndex = 0;
+    private int completedSteps = 0;
+    private double currentEnergy = 0.0;
+    private int currentFrames = 0;
+
+    private final long[] binCounts = new long[BIN_COUNT];
+    private final double[] binEnergy = new double[BIN_COUNT];
+    private int peakSample = 0;
+
+    LoudnessMeter(int channels, int sampleRate) {
+        this.channels = channels;
+        this.stepFrames = Math.max(1, sampleRate / 10);
+        this.shelfZ1 = new double[channels];
+        this.shelfZ2 = new double[channels];
+        this.highPassZ1 = new double[channels];
+        this.highPassZ2 = new double[channels];
+
+        // Коэффициенты пересчитываются для любой частоты дискретизации (как в libebur128)
+        double f0 = 1681.974450955533;
+        double gainDb = 3.999843853973347;
+        double q = 0.7071752369554196;
+        double k = Math.tan(Math.PI * f0 / sampleRate);
+        double vh = Math.pow(10.0, gainDb / 20.0);
+        double vb = Math.pow(vh, 0.4996667741545416);
+        double a0 = 1.0 + k / q + k * k;
+        shelfB0 = (vh + vb * k / q + k * k) / a0;
+        shelfB1 = 2.0 * (k * k - vh) / a0;
+        shelfB2 = (vh - vb * k / q + k * k) / a0;
+        shelfA1 = 2.0 * (k * k - 1.0) / a0;
+        shelfA2 = (1.0 - k / q + k * k) / a0;
+
+        f0 = 38.13547087602444;
+        q = 0.5003270373238773;
+        k = Math.tan(Math.PI * f0 / sampleRate);
+        a0 = 1.0 + k / q + k * k;
+        highPassA1 = 2.0 * (k * k - 1.0) / a0;
+        highPassA2 = (1.0 - k / q + k * k) / a0;
+    }
+
+    /**
+     * Добавляет порцию чередующихся 16-битных сэмплов от position до limit
+     */
+    void accept(ShortBuffer pcm) {
+        int frames = pcm.remaining() / channels;
+        int offset = pcm.position();
+        for (int frame = 0; frame < frames; frame++) {
+            double sum = 0.0;
+            for (int ch = 0; ch < channels; ch++) {
+                short sample = pcm.get(offset + frame * channels + ch);
+                peakSample = Math.max(peakSample, Math.abs((int) sample));
+                double y = filter(ch, sample / 32768.0);
+                sum += y * y; // Весовые коэффициенты каналов L/R/моно равны 1
+            }
+            currentEnergy += sum;
+            if (++currentFrames == stepFrames) {
+                finishStep();
+            }
+        }
+    }
+
+    private double filter(int ch, double x) {
+        double w = x - shelfA1 * shelfZ1[ch] - shelfA2 * shelfZ2[ch];
+        double y = shelfB0 * w + shelfB1 * shelfZ1[ch] + shelfB2 * shelfZ2[ch];
+        shelfZ2[ch] = shelfZ1[ch];
+        shelfZ1[ch] = w;
+
+        w = y - highPassA1 * highPassZ1[ch] - highPassA2 * highPassZ2[ch];
+        y = w - 2.0 * highPassZ1[ch] + highPassZ2[ch];
+        highPassZ2[ch] = highPassZ1[ch];
+        highPassZ1[ch] = w;
+        return y;
+    }
+
+    private void finishStep() {
+        stepEnergy[stepIndex] = currentEnergy;
+        stepIndex = (stepIndex + 1) % STEPS_PER_BLOCK;
+        currentEnergy = 0.0;
+        currentFrames = 0;
+        if (++completedSteps < STEPS_PER_BLOCK) {
+            return;
+        }
+
+        double sum = 0.0;
+        for (double energy : stepEnergy) {
+            sum += energy;
+        }
+        double blockEnergy = sum / (stepFrames * STEPS_PER_BLOCK);
+        double loudness = toLufs(blockEnergy);
+        if (loudness > ABSOLUTE_GATE_LUFS) {
+            int bin = (int) Math.min(BIN_COUNT - 1, (loudness - ABSOLUTE_GATE_LUFS) / BIN_WIDTH_LU);
+            binCounts[bin]++;
+            binEnergy[bin] += blockEnergy;
+        }
+    }
+
+    /**
+     * Интегральная громкость в LUFS с абсолютным (-70 LUFS) и относительным (-10 LU) стробированием
+     * @return громкость или Double.NEGATIVE_INFINITY, если в треке нет блоков громче абсолютного порога
+     */
+    double getIntegratedLoudness() {
+        double energy = 0.0;
+        long count = 0;
+        for (int bin = 0; bin < BIN_COUNT; bin++) {
+            energy += binEnergy[bin];
+            count += binCounts[bin];
+        }
+        if (count == 0) {
+            return Double.NEGATIVE_INFINITY;
+        }
+
+        double relativeGate = toLufs(energy / count) + RELATIVE_GATE_LU;
+        int firstBin = (int) Math.max(0, Math.ceil((relativeGate - ABSOLUTE_GATE_LUFS) / BIN_WIDTH_LU));
+        energy = 0.0;
+        count = 0;
+        for (int bin = firstBin; bin < BIN_COUNT; bin++) {
+            energy += binEnergy[bin];
+            count += binCounts[bin];
+        }
+        return count == 0 ? Double.NEGATIVE_INFINITY : toLufs(energy / count);
+    }
+
+    /**
+     * Пиковое значение сэмпла (0.0 - 1.0)
+     */
+    double getPeak() {
+        return peakSample / 32768.0;
+    }
+
+    private static double toLufs(double meanSquare) {
+        return -0.691 + 10.0 * Math.log10(meanSquare);
+    }
+}
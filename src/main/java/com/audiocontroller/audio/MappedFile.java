@@ -0,0 +1,79 @@
+package com.audiocontroller.audio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Файл, отображённый в память только для чтения, со счётчиком ссылок.
+ * Предзагрузка и воспроизведение одного и того же файла разделяют одно отображение,
+ * а данные читаются напрямую из страничного кэша ОС без копирования.
+ *
+ * Отображение снимается сборщиком мусора после последнего release(), поэтому
+ * на Windows файл может оставаться заблокированным ещё некоторое время
+ */
+final class MappedFile {
+    private static final Map<FileKey, MappedFile> OPEN = new HashMap<>();
+
+    private final FileKey key;
+    private final ByteBuffer buffer;
+    private int refCount = 1;
+
+    private MappedFile(FileKey key, ByteBuffer buffer) {
+        this.key = key;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Отображает файл в память или возвращает уже существующее отображение
+     * @throws IOException если файл недоступен или слишком велик для одного отображения
+     */
+    static MappedFile acquire(Path path) throws IOException {
+        FileKey key = FileKey.of(path);
+        if (key == null) {
+            throw new NoSuchFileException(path.toString());
+        }
+        if (key.getSize() > Integer.MAX_VALUE) {
+            throw new IOException("Файл слишком велик для отображения в память: " + path);
+        }
+
+        synchronized (OPEN) {
+            MappedFile existing = OPEN.get(key);
+            if (existing != null) {
+                existing.refCount++;
+                return existing;
+            }
+
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                MappedFile mapped = new MappedFile(key, channel.map(FileChannel.MapMode.READ_ONLY, 0, key.getSize()));
+                OPEN.put(key, mapped);
+                return mapped;
+            }
+        }
+    }
+
+    /**
+     * Содержимое файла. Буфер нельзя использовать после release()
+     */
+    ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    FileKey getKey() {
+        return key;
+    }
+
+    void release() {
+        synchronized (OPEN) {
+            refCount--;
+            if (refCount == 0) {
+                OPEN.remove(key, this);
+            }
+        }
+    }
+}
@@ -8,21 +8,49 @@ import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Библиотека музыки из папки config/audiocontroller/music.
+ * При запуске библиотека сразу восстанавливается из каталога (см. TrackCatalog), а
+ * сканирование папки затем проверяет его и обрабатывает только изменившиеся файлы.
+ * После первого сканирования изменения в папке отслеживаются через WatchService (см. MusicWatcher)
+ * и применяются к библиотеке на месте, без повторного обхода всей папки
+ */
 public class MusicLoader {
     private static final Logger LOGGER = LogUtils.getLogger();
     private static final String MUSIC_FOLDER = "config/audiocontroller/music";
     private static final Set<String> SUPPORTED_EXTENSIONS = Set.of(".ogg");
-    
-    private final List<CustomMusicTrack> tracks = new ArrayList<>();
+    private static final int SCAN_BATCH_SIZE = 256;
+    private static final long SCAN_BATCH_INTERVAL_MS = 100;
+
+    // Изменяется только в потоке загрузчика, читатели используют опубликованный снимок
+    private final Map<Path, CustomMusicTrack> tracks = new LinkedHashMap<>();
+    private volatile LibrarySnapshot snapshot = LibrarySnapshot.EMPTY;
     private final ExecutorService executorService = Executors.newSingleThreadExecutor(r -> {
         Thread t = new Thread(r, "AudioController-MusicLoader");
         t.setDaemon(true);
         return t;
     });
-    private boolean isLoading = false;
+    private final DurationProber durationProber = new DurationProber();
+    private final LoudnessAnalyzer loudnessAnalyzer = new LoudnessAnalyzer();
+    private final IntegrityValidator integrityValidator = new IntegrityValidator();
+    private final MusicWatcher watcher = new MusicWatcher(this);
+    private final List<LibraryListener> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean catalogDirty = new AtomicBoolean();
+    private final AtomicLong scanGeneration = new AtomicLong();
+    private final AtomicReference<ScanHandle> currentScan = new AtomicReference<>();
+    private volatile int scanParallelism = AudioSettings.defaultScanParallelism();
 
     public MusicLoader() {
         ensureMusicDirectoryExists();
@@ -40,76 +68,370 @@ public class MusicLoader {
         }
     }
 
-    public CompletableFuture<Void> scanMusicFiles() {
-        if (isLoading) {
-            return CompletableFuture.completedFuture(null);
-        }
+    /**
+     * Подписывается на изменения библиотеки
+     */
+    public void addListener(LibraryListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(LibraryListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Количество потоков для обхода папки с музыкой
+     */
+    public void setScanParallelism(int scanParallelism) {
+        this.scanParallelism = Math.max(1, scanParallelism);
+    }
 
-        isLoading = true;
+    /**
+     * Восстанавливает библиотеку из сохранённого каталога без обращения к файлам.
+     * Если библиотека уже загружена, ничего не делает
+     */
+    public CompletableFuture<Void> loadCatalog() {
         return CompletableFuture.runAsync(() -> {
-            try {
-                List<CustomMusicTrack> newTracks = new ArrayList<>();
-                Path musicDir = Paths.get(MUSIC_FOLDER);
+            if (!tracks.isEmpty()) {
+                return;
+            }
+            long start = System.nanoTime();
+            List<CustomMusicTrack> cached = TrackCatalog.load(getMusicDirectory());
+            if (cached.isEmpty()) {
+                return;
+            }
+            for (CustomMusicTrack track : cached) {
+                tracks.put(track.getFilePath(), track);
+            }
+            LOGGER.info("Загружено треков из каталога: {} за {} мс", cached.size(), (System.nanoTime() - start) / 1_000_000);
+            // Каталог перезаписывается, только если для части треков ещё нет данных
+            boolean incomplete = cached.stream().anyMatch(track -> !track.isLoaded() || !track.hasLoudness()
+                || track.getIntegrity() == TrackIntegrity.UNKNOWN);
+            publish(new LibraryChange(cached, List.of(), List.of(), false), incomplete);
+        }, executorService);
+    }
+
+    /**
+     * Полное сканирование папки с музыкой. Треки, файлы которых не изменились, сохраняются
+     * вместе с уже определёнными длительностью и громкостью. Новые и изменённые треки
+     * публикуются порциями по мере обхода, удалённые - в конце сканирования.
+     * Незавершённое предыдущее сканирование останавливается и вытесняется новым
+     */
+    public ScanHandle scanMusicFiles() {
+        ScanHandle handle = new ScanHandle(scanGeneration.incrementAndGet());
+        ScanHandle previous = currentScan.getAndSet(handle);
+        if (previous != null && !previous.isDone()) {
+            previous.supersede(handle);
+        }
+        try {
+            executorService.execute(() -> runScan(handle));
+        } catch (RejectedExecutionException e) {
+            handle.finish(e);
+        }
+        return handle;
+    }
+
+    private void runScan(ScanHandle handle) {
+        Throwable error = null;
+        try {
+            scan(handle);
+        } catch (Exception e) {
+            LOGGER.error("Ошибка при сканировании папки с музыкой", e);
+            error = e;
+        } finally {
+            handle.finish(error);
+        }
+    }
+
+    private void scan(ScanHandle handle) throws InterruptedException {
+        Path musicDir = Paths.get(MUSIC_FOLDER);
+        if (handle.isCancelled()) {
+            return;
+        }
+        if (!Files.exists(musicDir)) {
+            ensureMusicDirectoryExists();
+            return;
+        }
+
+        long start = System.nanoTime();
+        handle.setExpectedFiles(tracks.size()); // Каталог загружается в этом же потоке, поэтому уже учтён
+        Queue<ParallelScanner.Entry> pending = new ConcurrentLinkedQueue<>();
+        CompletableFuture<List<ParallelScanner.Entry>> walk = ParallelScanner.scanAsync(musicDir, scanParallelism,
+            MusicLoader::isSupported, watcher::register, entry -> {
+                pending.add(entry);
+                handle.onFileVisited(entry.size);
+            }, handle::isCancelled);
+
+        Map<Path, CustomMusicTrack> previous = new HashMap<>(tracks);
+        List<CustomMusicTrack> added = new ArrayList<>();
+        List<CustomMusicTrack> modified = new ArrayList<>();
+        long lastPublish = System.nanoTime();
+        boolean done;
+        do {
+            // Состояние обхода проверяется до разбора очереди, чтобы не потерять последние файлы
+            done = walk.isDone();
+            ParallelScanner.Entry entry;
+            while ((entry = pending.poll()) != null) {
+                CustomMusicTrack track = previous.remove(entry.path);
+                if (track == null) {
+                    track = createTrack(entry.path, entry.size, entry.lastModified);
+                    tracks.put(entry.path, track);
+                    added.add(track);
+                    LOGGER.debug("Найден трек: {}", track.getName());
+                } else if (!track.isSameFile(entry.size, entry.lastModified)) {
+                    track.updateFile(entry.size, entry.lastModified);
+                    modified.add(track);
+                }
+            }
+
+            int changed = added.size() + modified.size();
+            if (changed > 0 && (done || changed >= SCAN_BATCH_SIZE
+                    || System.nanoTime() - lastPublish >= SCAN_BATCH_INTERVAL_MS * 1_000_000)) {
+                publish(new LibraryChange(added, List.of(), modified, false));
+                added = new ArrayList<>();
+                modified = new ArrayList<>();
+                lastPublish = System.nanoTime();
+            }
+            if (!done) {
+                try {
+                    walk.get(SCAN_BATCH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException | ExecutionException e) {
+                    // Проверим состояние обхода на следующей итерации
+                }
+            }
+        } while (!done);
+
+        List<ParallelScanner.Entry> found = walk.join();
+        if (handle.isCancelled()) {
+            LOGGER.info("Сканирование прервано: обработано файлов {}", handle.getFilesVisited());
+            return;
+        }
+
+        // Треки, которые не нашлись при полном обходе, удалены; порядок библиотеки - порядок обхода
+        List<CustomMusicTrack> removed = new ArrayList<>(previous.values());
+        Map<Path, CustomMusicTrack> ordered = new LinkedHashMap<>();
+        for (ParallelScanner.Entry entry : found) {
+            ordered.put(entry.path, tracks.get(entry.path));
+        }
+        tracks.clear();
+        tracks.putAll(ordered);
+
+        LOGGER.info("Загружено треков: {} за {} мс (потоков: {})", tracks.size(),
+            (System.nanoTime() - start) / 1_000_000, scanParallelism);
+        publish(new LibraryChange(List.of(), removed, List.of(), true));
+    }
 
-                if (!Files.exists(musicDir)) {
-                    ensureMusicDirectoryExists();
-                    isLoading = false;
-                    return;
+    /**
+     * Применяет изменения отдельных путей, полученные от MusicWatcher.
+     * Путь может указывать на файл или папку, которые появились, изменились или исчезли
+     */
+    void applyChanges(Collection<Path> paths) {
+        executorService.execute(() -> {
+            Set<CustomMusicTrack> added = new LinkedHashSet<>();
+            List<CustomMusicTrack> removed = new ArrayList<>();
+            Set<CustomMusicTrack> modified = new LinkedHashSet<>();
+
+            for (Path path : paths) {
+                try {
+                    applyChange(path, added, removed, modified);
+                } catch (IOException e) {
+                    LOGGER.warn("Ошибка при обработке изменения: {}", path, e);
                 }
+            }
+
+            if (!added.isEmpty() || !removed.isEmpty() || !modified.isEmpty()) {
+                LOGGER.info("Библиотека музыки обновлена: добавлено {}, удалено {}, изменено {}",
+                    added.size(), removed.size(), modified.size());
+                publish(new LibraryChange(added, removed, modified, false));
+            }
+        });
+    }
+
+    private void applyChange(Path path, Set<CustomMusicTrack> added, List<CustomMusicTrack> removed,
+                             Set<CustomMusicTrack> modified) throws IOException {
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            attrs = null;
+        }
 
-                Files.walkFileTree(musicDir, new SimpleFileVisitor<Path>() {
-                    @Override
-                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                        String fileName = file.getFileName().toString().toLowerCase();
-                        String extension = fileName.substring(fileName.lastIndexOf('.'));
-                        
-                        if (SUPPORTED_EXTENSIONS.contains(extension)) {
-                            try {
-                                long fileSize = Files.size(file);
-                                String trackName = file.getFileName().toString();
-                                
-                                // Убираем расширение из имени
-                                if (trackName.endsWith(extension)) {
-                                    trackName = trackName.substring(0, trackName.length() - extension.length());
-                                }
-                                
-                                CustomMusicTrack track = new CustomMusicTrack(trackName, file, fileSize);
-                                newTracks.add(track);
-                                LOGGER.debug("Найден трек: {}", trackName);
-                            } catch (IOException e) {
-                                LOGGER.warn("Ошибка при чтении файла: {}", file, e);
-                            }
-                        }
-                        return FileVisitResult.CONTINUE;
+        if (attrs == null) {
+            CustomMusicTrack track = tracks.remove(path);
+            if (track != null) {
+                removed.add(track);
+            } else if (!isSupported(path)) {
+                // Удалена папка - убираем все треки внутри неё
+                Iterator<Map.Entry<Path, CustomMusicTrack>> iterator = tracks.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    Map.Entry<Path, CustomMusicTrack> entry = iterator.next();
+                    if (entry.getKey().startsWith(path)) {
+                        iterator.remove();
+                        removed.add(entry.getValue());
                     }
-                });
+                }
+            }
+        } else if (attrs.isDirectory()) {
+            // Новая или перемещённая папка - сканируем только её
+            for (ParallelScanner.Entry entry : ParallelScanner.scan(path, scanParallelism, MusicLoader::isSupported, watcher::register)) {
+                applyFile(entry.path, entry.size, entry.lastModified, added, modified);
+            }
+        } else if (attrs.isRegularFile() && isSupported(path)) {
+            applyFile(path, attrs.size(), attrs.lastModifiedTime().toMillis(), added, modified);
+        }
+    }
+
+    private void applyFile(Path file, long size, long lastModified, Set<CustomMusicTrack> added, Set<CustomMusicTrack> modified) {
+        CustomMusicTrack track = tracks.get(file);
+        if (track == null) {
+            track = createTrack(file, size, lastModified);
+            tracks.put(file, track);
+            added.add(track);
+        } else if (!track.isSameFile(size, lastModified)) {
+            track.updateFile(size, lastModified);
+            if (!added.contains(track)) {
+                modified.add(track);
+            }
+        }
+    }
+
+    private static boolean isSupported(Path file) {
+        String fileName = file.getFileName().toString().toLowerCase();
+        int dot = fileName.lastIndexOf('.');
+        return dot >= 0 && SUPPORTED_EXTENSIONS.contains(fileName.substring(dot));
+    }
+
+    static CustomMusicTrack createTrack(Path file, long fileSize, long lastModified) {
+        String trackName = file.getFileName().toString();
+        // Убираем расширение из имени (путь из повреждённого каталога может быть без расширения)
+        int dot = trackName.lastIndexOf('.');
+        if (dot > 0) {
+            trackName = trackName.substring(0, dot);
+        }
+        return new CustomMusicTrack(trackName, file, fileSize, lastModified);
+    }
+
+    /**
+     * Публикует новый снимок библиотеки, запускает фоновую обработку новых треков и оповещает подписчиков
+     */
+    private void publish(LibraryChange change) {
+        publish(change, !change.isEmpty());
+    }
 
-                synchronized (tracks) {
-                    tracks.clear();
-                    tracks.addAll(newTracks);
+    private void publish(LibraryChange change, boolean saveCatalog) {
+        if (change.isEmpty() && !change.isFullRescan()) {
+            return;
+        }
+        // Полное сканирование задаёт новый порядок треков, остальные изменения применяются к прежнему снимку
+        snapshot = change.isFullRescan()
+            ? new LibrarySnapshot(snapshot.getVersion() + 1, tracks.values())
+            : snapshot.apply(snapshot.getVersion() + 1, change);
+        change = change.withSnapshot(snapshot);
+
+        List<CustomMusicTrack> pending = new ArrayList<>(change.getAdded());
+        pending.addAll(change.getModified());
+        // Длительность, громкость и целостность определяются в фоне и не задерживают сканирование,
+        // каталог сохраняется, когда они готовы
+        CompletableFuture.allOf(durationProber.probe(pending), loudnessAnalyzer.analyze(pending),
+                integrityValidator.validate(pending))
+            .whenComplete((result, error) -> {
+                // Снимок с новыми отпечатками публикуется до сохранения каталога, которое его использует
+                if (!pending.isEmpty()) {
+                    scheduleMetadataUpdate(pending);
+                }
+                if (saveCatalog) {
+                    scheduleCatalogSave();
                 }
+            });
 
-                LOGGER.info("Загружено треков: {}", newTracks.size());
-            } catch (IOException e) {
-                LOGGER.error("Ошибка при сканировании папки с музыкой", e);
-            } finally {
-                isLoading = false;
+        notifyListeners(change);
+    }
+
+    private void notifyListeners(LibraryChange change) {
+        for (LibraryListener listener : listeners) {
+            try {
+                listener.onLibraryChanged(change);
+            } catch (Exception e) {
+                LOGGER.error("Ошибка в обработчике изменений библиотеки музыки", e);
             }
-        }, executorService);
+        }
     }
 
-    public List<CustomMusicTrack> getTracks() {
-        synchronized (tracks) {
-            return new ArrayList<>(tracks);
+    /**
+     * Сообщает подписчикам, что у треков определились длительность, теги и целостность.
+     * Вместе с изменением публикуется снимок, в индекс отпечатков которого добавлены эти треки
+     */
+    private void scheduleMetadataUpdate(List<CustomMusicTrack> updated) {
+        try {
+            executorService.execute(() -> {
+                LibraryChange change = new LibraryChange(List.of(), List.of(), updated, false);
+                snapshot = snapshot.apply(snapshot.getVersion() + 1, change);
+                notifyListeners(change.withSnapshot(snapshot));
+            });
+        } catch (RejectedExecutionException e) {
+            // Загрузчик уже остановлен
         }
     }
 
-    public Optional<CustomMusicTrack> getTrackByName(String name) {
-        synchronized (tracks) {
-            return tracks.stream()
-                    .filter(track -> track.getName().equals(name))
-                    .findFirst();
+    private void scheduleCatalogSave() {
+        catalogDirty.set(true);
+        try {
+            executorService.execute(this::saveCatalog);
+        } catch (RejectedExecutionException e) {
+            // Загрузчик уже остановлен
+        }
+    }
+
+    /**
+     * Сохраняет каталог после фоновой обработки треков. Снимок заново не публикуется:
+     * отпечатки обработанных треков уже внёс scheduleMetadataUpdate() вместе с оповещением подписчиков
+     */
+    private void saveCatalog() {
+        if (!catalogDirty.getAndSet(false)) {
+            return;
         }
+        LibrarySnapshot library = snapshot;
+        TrackCatalog.save(getMusicDirectory(), library.getTracks());
+        reportDuplicates(library);
+    }
+
+    private static void reportDuplicates(LibrarySnapshot library) {
+        List<List<CustomMusicTrack>> duplicates = library.getDuplicates();
+        if (duplicates.isEmpty()) {
+            return;
+        }
+        long reclaimable = 0;
+        for (List<CustomMusicTrack> group : duplicates) {
+            reclaimable += group.get(0).getFileSize() * (group.size() - 1);
+            LOGGER.debug("Одинаковые файлы: {}", group.stream().map(CustomMusicTrack::getFilePath).toList());
+        }
+        LOGGER.info("Найдено файлов с одинаковым содержимым: {} групп, можно освободить {} МБ",
+            duplicates.size(), reclaimable / (1024 * 1024));
+    }
+
+    /**
+     * Группы файлов библиотеки с одинаковым содержимым
+     */
+    public List<List<CustomMusicTrack>> findDuplicates() {
+        return snapshot.getDuplicates();
+    }
+
+    /**
+     * Текущий снимок библиотеки. Снимок не меняется, изменения публикуются новым снимком
+     */
+    public LibrarySnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Все треки библиотеки. Список неизменяемый и не копируется при вызове
+     */
+    public List<CustomMusicTrack> getTracks() {
+        return snapshot.getTracks();
+    }
+
+    public Optional<CustomMusicTrack> getTrackByName(String name) {
+        return snapshot.getTrackByName(name);
     }
 
     public Path getMusicDirectory() {
@@ -118,10 +440,24 @@ public class MusicLoader {
 
     public void shutdown() {
         executorService.shutdown();
+        watcher.shutdown();
+        durationProber.shutdown();
+        loudnessAnalyzer.shutdown();
+        integrityValidator.shutdown();
     }
 
+    /**
+     * Идёт ли сейчас сканирование папки
+     */
     public boolean isLoading() {
-        return isLoading;
+        ScanHandle scan = currentScan.get();
+        return scan != null && !scan.isDone();
     }
-}
 
+    /**
+     * Последнее запущенное сканирование или null, если сканирований ещё не было
+     */
+    public ScanHandle getCurrentScan() {
+        return currentScan.get();
+    }
+}
@@ -0,0 +1,147 @@
+package com.audiocontroller.audio;
+
+import com.mojang.logging.LogUtils;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Отслеживание изменений в папке с музыкой через WatchService.
+ * События собираются в пачку, пока файлы копируются (до QUIET_MILLIS тишины, но не дольше
+ * MAX_BATCH_MILLIS), и передаются в MusicLoader как набор изменившихся путей.
+ * При переполнении очереди событий (OVERFLOW) запрашивается полное сканирование
+ */
+final class MusicWatcher {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final long QUIET_MILLIS = 200;
+    private static final long MAX_BATCH_MILLIS = 800;
+
+    private final MusicLoader loader;
+    private final Map<WatchKey, Path> directories = new ConcurrentHashMap<>();
+    private WatchService service;
+    private Thread thread;
+    private boolean closed; // После shutdown() сервис не создаётся заново
+
+    MusicWatcher(MusicLoader loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Подписывается на изменения в папке. Вложенные папки регистрируются отдельно
+     */
+    void register(Path directory) {
+        WatchService watchService = getService();
+        if (watchService == null) {
+            return;
+        }
+        try {
+            WatchKey key = directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            directories.put(key, directory);
+        } catch (IOException e) {
+            LOGGER.warn("Не удалось отслеживать изменения в папке: {}", directory, e);
+        } catch (ClosedWatchServiceException e) {
+            // shutdown() между getService() и регистрацией
+        }
+    }
+
+    private synchronized WatchService getService() {
+        if (closed) {
+            return null;
+        }
+        if (service == null) {
+            try {
+                service = FileSystems.getDefault().newWatchService();
+            } catch (IOException e) {
+                LOGGER.warn("Отслеживание изменений в папке с музыкой недоступно", e);
+                return null;
+            }
+            thread = new Thread(this::run, "AudioController-MusicWatcher");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return service;
+    }
+
+    private void run() {
+        WatchService service;
+        synchronized (this) {
+            service = this.service; // shutdown() обнуляет поле, поток работает со своим сервисом до его закрытия
+        }
+        if (service == null) {
+            return;
+        }
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                Set<Path> changed = new LinkedHashSet<>();
+                boolean overflow = collect(key, changed);
+
+                // Копирование файла порождает серию событий - ждём, пока они закончатся
+                long deadline = System.currentTimeMillis() + MAX_BATCH_MILLIS;
+                long wait;
+                while ((wait = Math.min(QUIET_MILLIS, deadline - System.currentTimeMillis())) > 0
+                        && (key = service.poll(wait, TimeUnit.MILLISECONDS)) != null) {
+                    overflow |= collect(key, changed);
+                }
+
+                if (overflow) {
+                    LOGGER.info("Переполнение очереди событий файловой системы, полное сканирование музыки");
+                    loader.scanMusicFiles();
+                } else if (!changed.isEmpty()) {
+                    loader.applyChanges(changed);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Отслеживание остановлено
+        }
+    }
+
+    /**
+     * Переносит события ключа в набор путей
+     * @return true если часть событий потеряна
+     */
+    private boolean collect(WatchKey key, Set<Path> changed) {
+        boolean overflow = false;
+        Path directory = directories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflow = true;
+            } else if (directory != null) {
+                changed.add(directory.resolve((Path) event.context()));
+            }
+        }
+        if (!key.reset()) {
+            // Папка удалена
+            directories.remove(key);
+            if (directory != null) {
+                changed.add(directory);
+            }
+        }
+        return overflow;
+    }
+
+    synchronized void shutdown() {
+        closed = true;
+        if (service != null) {
+            try {
+                service.close();
+            } catch (IOException e) {
+                LOGGER.debug("Ошибка при остановке отслеживания папки с музыкой", e);
+            }
+            service = null;
+        }
+    }
+}
@@ -0,0 +1,385 @@
+package com.audiocontroller.audio;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Быстрое чтение сведений об OGG Vorbis файле без декодирования звука.
+ * Читает только начало файла (заголовки идентификации и комментариев Vorbis) и хвост файла,
+ * где находится последняя страница с итоговой позицией granule.
+ * По заголовкам и звуковым данным считается отпечаток содержимого, который не зависит
+ * ни от имени и расположения файла, ни от его тегов
+ */
+final class OggProbe {
+    private static final int PAGE_HEADER_SIZE = 27;
+    private static final int TAIL_WINDOW = 64 * 1024; // Максимальный размер страницы Ogg ~64 КБ
+    private static final int HEAD_WINDOW = 64 * 1024;
+    private static final int MAX_TAG_LENGTH = 256;
+    private static final int FINGERPRINT_AUDIO_BYTES = 32 * 1024; // Звуковых данных из начала и из конца потока
+
+    /**
+     * Сведения о потоке Vorbis
+     */
+    static final class Info {
+        final int channels;
+        final int sampleRate;
+        final long lengthFrames;
+        final long fingerprint;
+        final TrackTags tags;
+
+        Info(int channels, int sampleRate, long lengthFrames, long fingerprint, TrackTags tags) {
+            this.channels = channels;
+            this.sampleRate = sampleRate;
+            this.lengthFrames = lengthFrames;
+            this.fingerprint = fingerprint;
+            this.tags = tags;
+        }
+
+        /**
+         * Длительность в миллисекундах, -1 если длина неизвестна
+         */
+        long getDurationMillis() {
+            if (lengthFrames <= 0 || sampleRate <= 0) {
+                return -1;
+            }
+            return lengthFrames * 1000L / sampleRate;
+        }
+    }
+
+    private OggProbe() {
+    }
+
+    /**
+     * Читает заголовок и последнюю страницу файла
+     * @throws IOException если файл недоступен или не является OGG Vorbis
+     */
+    static Info probe(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer head = read(channel, 0, (int) Math.min(size, HEAD_WINDOW));
+            if (!isCapturePattern(head, 0)) {
+                throw new IOException("Не OGG файл: " + file);
+            }
+            if (head.limit() < PAGE_HEADER_SIZE) {
+                throw new IOException("Файл обрезан: " + file);
+            }
+            int serial = head.getInt(14);
+
+            // Первый пакет первой страницы - заголовок идентификации Vorbis
+            int segments = head.get(26) & 0xFF;
+            int packetOffset = PAGE_HEADER_SIZE + segments;
+            if (head.limit() < packetOffset) {
+                throw new IOException("Файл обрезан: " + file);
+            }
+            if (head.limit() < packetOffset + 16 || head.get(packetOffset) != 1
+                    || !matches(head, packetOffset + 1, "vorbis")) {
+                throw new IOException("Не найден заголовок Vorbis: " + file);
+            }
+            int channels = head.get(packetOffset + 11) & 0xFF;
+            int sampleRate = head.getInt(packetOffset + 12);
+            TrackTags tags = readTags(head, serial);
+
+            long tailStart = Math.max(0, size - TAIL_WINDOW);
+            ByteBuffer tail = tailStart == 0 ? head : read(channel, tailStart, (int) (size - tailStart));
+            long granule = findLastGranule(tail, serial);
+            long fingerprint = fingerprint(channel, size, head, tail, tailStart, serial, granule);
+            return new Info(channels, sampleRate, granule, fingerprint, tags);
+        }
+    }
+
+    /**
+     * Отпечаток содержимого: пакеты заголовков идентификации и настройки Vorbis, первые и последние
+     * FINGERPRINT_AUDIO_BYTES звуковых данных и длина потока (granule).
+     * Заголовок комментариев не учитывается, как и заголовки страниц Ogg: при перезаписи тегов
+     * у страниц меняются номера и CRC, а звуковые данные сдвигаются в файле.
+     * Конец потока берётся с последних страниц, поэтому результат не зависит от того, где
+     * начинается окно хвоста (пока страницы не длиннее ~16 КБ, как у обычных кодировщиков)
+     */
+    private static long fingerprint(FileChannel channel, long size, ByteBuffer head, ByteBuffer tail,
+                                    long tailStart, int serial, long granule) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream(16 * 1024 + FINGERPRINT_AUDIO_BYTES * 2);
+        long audioStart = size; // Смещение первой страницы со звуком
+        int packetIndex = 0;
+        int audioBytes = 0;
+        long position = 0;
+        while (audioBytes < FINGERPRINT_AUDIO_BYTES && position + PAGE_HEADER_SIZE <= size) {
+            ByteBuffer header = readAt(channel, head, position, PAGE_HEADER_SIZE);
+            if (header.limit() < PAGE_HEADER_SIZE || !isCapturePattern(header, 0)) {
+                break;
+            }
+            int segments = header.get(26) & 0xFF;
+            ByteBuffer lacing = readAt(channel, head, position + PAGE_HEADER_SIZE, segments);
+            if (lacing.limit() < segments) {
+                break;
+            }
+            long bodyStart = position + PAGE_HEADER_SIZE + segments;
+            int bodySize = 0;
+            for (int i = 0; i < segments; i++) {
+                bodySize += lacing.get(i) & 0xFF;
+            }
+            if (header.getInt(14) == serial) {
+                if (packetIndex >= 3 && audioStart == size) {
+                    audioStart = position;
+                }
+                // Тело страницы читается, только если в ней есть что-то кроме комментариев
+                ByteBuffer body = null;
+                int offset = 0;
+                for (int i = 0; i < segments; i++) {
+                    int length = lacing.get(i) & 0xFF;
+                    if (packetIndex != 1) {
+                        if (body == null) {
+                            body = readAt(channel, head, bodyStart, bodySize);
+                        }
+                        int available = Math.max(0, Math.min(length, body.limit() - offset));
+                        content.write(bytes(body, offset, available), 0, available);
+                        if (packetIndex >= 3) {
+                            audioBytes += available;
+                        }
+                    }
+                    offset += length;
+                    if (length < 255) {
+                        packetIndex++;
+                    }
+                }
+            }
+            position = bodyStart + bodySize;
+        }
+
+        // Последние страницы потока со звуком
+        List<int[]> pages = tailPages(tail, serial);
+        int first = pages.size();
+        int tailBytes = 0;
+        while (first > 0 && tailBytes < FINGERPRINT_AUDIO_BYTES && tailStart + pages.get(first - 1)[0] >= audioStart) {
+            tailBytes += pages.get(--first)[2];
+        }
+        for (int[] page : pages.subList(first, pages.size())) {
+            content.write(bytes(tail, page[1], page[2]), 0, page[2]);
+        }
+
+        byte[] data = content.toByteArray();
+        return XxHash64.hash(ByteBuffer.wrap(data), 0, data.length, granule);
+    }
+
+    /**
+     * Полные страницы потока в хвосте файла: ищет первое смещение, с которого цепочка страниц
+     * доходит ровно до конца буфера (случайное "OggS" внутри звуковых данных так не совпадёт)
+     * @return для каждой страницы {начало страницы, начало тела, размер тела}
+     */
+    private static List<int[]> tailPages(ByteBuffer tail, int serial) {
+        int limit = tail.limit();
+        for (int start = 0; start + PAGE_HEADER_SIZE <= limit; start++) {
+            if (!isCapturePattern(tail, start)) {
+                continue;
+            }
+            List<int[]> pages = new ArrayList<>();
+            int position = start;
+            while (position + PAGE_HEADER_SIZE <= limit && isCapturePattern(tail, position)) {
+                int segments = tail.get(position + 26) & 0xFF;
+                int bodyStart = position + PAGE_HEADER_SIZE + segments;
+                if (bodyStart > limit) {
+                    break;
+                }
+                int bodySize = 0;
+                for (int i = 0; i < segments; i++) {
+                    bodySize += tail.get(position + PAGE_HEADER_SIZE + i) & 0xFF;
+                }
+                if (tail.getInt(position + 14) == serial) {
+                    pages.add(new int[] {position, bodyStart, bodySize});
+                }
+                position = bodyStart + bodySize;
+            }
+            if (position == limit) {
+                return pages;
+            }
+        }
+        return List.of();
+    }
+
+    /**
+     * Данные файла: из уже прочитанного начала, если они в нём, иначе чтением с диска
+     */
+    private static ByteBuffer readAt(FileChannel channel, ByteBuffer head, long position, int length) throws IOException {
+        if (position + length <= head.limit()) {
+            return head.slice((int) position, length).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return read(channel, position, length);
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Собирает второй пакет потока (заголовок комментариев Vorbis) из страниц в начале файла.
+     * Пакет может занимать несколько страниц; если он не помещается в прочитанное окно
+     * (например, из-за встроенной обложки), разбирается доступная часть
+     */
+    private static TrackTags readTags(ByteBuffer head, int serial) {
+        ByteBuffer packet = ByteBuffer.allocate(head.limit()).order(ByteOrder.LITTLE_ENDIAN);
+        int packetIndex = 0;
+        int page = 0;
+        pages:
+        while (isCapturePattern(head, page) && page + PAGE_HEADER_SIZE <= head.limit()) {
+            int segments = head.get(page + 26) & 0xFF;
+            int data = page + PAGE_HEADER_SIZE + segments;
+            if (data > head.limit()) {
+                break;
+            }
+            boolean sameStream = head.getInt(page + 14) == serial;
+            for (int i = 0; i < segments; i++) {
+                int lacing = head.get(page + PAGE_HEADER_SIZE + i) & 0xFF;
+                if (sameStream && packetIndex == 1) {
+                    int length = Math.max(0, Math.min(lacing, head.limit() - data));
+                    packet.put(packet.position(), head, data, length);
+                    packet.position(packet.position() + length);
+                }
+                data += lacing;
+                // Сегмент короче 255 байт завершает пакет
+                if (sameStream && lacing < 255 && ++packetIndex > 1) {
+                    break pages;
+                }
+            }
+            page = data;
+        }
+        packet.flip();
+        return parseComments(packet);
+    }
+
+    /**
+     * Разбирает заголовок комментариев: тип 3, "vorbis", строка поставщика и список "КЛЮЧ=значение"
+     */
+    private static TrackTags parseComments(ByteBuffer packet) {
+        if (packet.remaining() < 15 || packet.get(0) != 3 || !matches(packet, 1, "vorbis")) {
+            return TrackTags.EMPTY;
+        }
+        String title = null;
+        String artist = null;
+        String album = null;
+        String genre = null;
+        int trackNumber = 0;
+
+        int position = 7;
+        position += 4 + packet.getInt(position); // Строка поставщика
+        if (position < 0 || position + 4 > packet.limit()) {
+            return TrackTags.EMPTY;
+        }
+        int count = packet.getInt(position);
+        position += 4;
+        for (int i = 0; i < count && position + 4 <= packet.limit(); i++) {
+            int length = packet.getInt(position);
+            position += 4;
+            if (length < 0 || length > packet.limit() - position) {
+                break; // Комментарий обрезан окном чтения
+            }
+            int separator = indexOf(packet, position, Math.min(length, 32), (byte) '=');
+            if (separator >= 0) {
+                String key = new String(bytes(packet, position, separator - position), StandardCharsets.US_ASCII)
+                    .toUpperCase(Locale.ROOT);
+                int valueLength = Math.min(position + length - separator - 1, MAX_TAG_LENGTH * 4);
+                switch (key) {
+                    case "TITLE" -> title = title != null ? title : value(packet, separator + 1, valueLength);
+                    case "ARTIST" -> artist = artist != null ? artist : value(packet, separator + 1, valueLength);
+                    case "ALBUM" -> album = album != null ? album : value(packet, separator + 1, valueLength);
+                    case "GENRE" -> genre = genre != null ? genre : value(packet, separator + 1, valueLength);
+                    case "TRACKNUMBER" -> trackNumber = trackNumber != 0 ? trackNumber
+                        : parseTrackNumber(value(packet, separator + 1, valueLength));
+                    default -> {
+                        // Остальные теги (в том числе обложки) не декодируются
+                    }
+                }
+            }
+            position += length;
+        }
+        if (title == null && artist == null && album == null && trackNumber == 0 && genre == null) {
+            return TrackTags.EMPTY;
+        }
+        return new TrackTags(title, artist, album, trackNumber, genre);
+    }
+
+    private static String value(ByteBuffer buffer, int offset, int length) {
+        String value = new String(bytes(buffer, offset, length), StandardCharsets.UTF_8).trim();
+        if (value.length() > MAX_TAG_LENGTH) {
+            value = value.substring(0, MAX_TAG_LENGTH);
+        }
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * Номер трека вида "3" или "3/12"
+     */
+    private static int parseTrackNumber(String value) {
+        if (value == null) {
+            return 0;
+        }
+        int number = 0;
+        for (int i = 0; i < value.length() && Character.isDigit(value.charAt(i)) && number < 100000; i++) {
+            number = number * 10 + (value.charAt(i) - '0');
+        }
+        return number;
+    }
+
+    private static byte[] bytes(ByteBuffer buffer, int offset, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return bytes;
+    }
+
+    private static int indexOf(ByteBuffer buffer, int offset, int length, byte value) {
+        for (int i = offset; i < offset + length; i++) {
+            if (buffer.get(i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Ищет с конца последнюю страницу нужного логического потока с известной позицией granule
+     * @return позиция granule (количество сэмплов на канал) или -1
+     */
+    private static long findLastGranule(ByteBuffer buffer, int serial) {
+        for (int i = buffer.limit() - PAGE_HEADER_SIZE; i >= 0; i--) {
+            if (isCapturePattern(buffer, i) && buffer.get(i + 4) == 0 && buffer.getInt(i + 14) == serial) {
+                long granule = buffer.getLong(i + 6);
+                if (granule != -1) {
+                    return granule;
+                }
+            }
+        }
+        return -1;
+    }
+
+    static boolean isCapturePattern(ByteBuffer buffer, int offset) {
+        return offset + 4 <= buffer.limit()
+                && buffer.get(offset) == 'O' && buffer.get(offset + 1) == 'g'
+                && buffer.get(offset + 2) == 'g' && buffer.get(offset + 3) == 'S';
+    }
+
+    private static boolean matches(ByteBuffer buffer, int offset, String ascii) {
+        if (offset + ascii.length() > buffer.limit()) {
+            return false;
+        }
+        for (int i = 0; i < ascii.length(); i++) {
+            if (buffer.get(offset + i) != ascii.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,171 @@
+package com.audiocontroller.audio;
+
+import com.mojang.logging.LogUtils;
+import org.lwjgl.openal.AL10;
+import org.slf4j.Logger;
+
+/**
+ * Пул источников и буферов OpenAL, которые создаются один раз при первом воспроизведении
+ * и затем переиспользуются. Смена трека не создаёт и не удаляет объекты драйвера.
+ *
+ * Методы acquire/release/reserve/destroy вызываются только из аудиопотока,
+ * геттеры статистики можно читать из любого потока
+ */
+public class OpenAlPool {
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    private final int sourceCapacity;
+    private final int bufferCapacity;
+    private final int[] freeSources;
+    private final int[] freeBuffers;
+    private int freeSourceCount = 0;
+    private int freeBufferCount = 0;
+    private boolean reserved = false;
+
+    private volatile int reservedSources = 0;
+    private volatile int reservedBuffers = 0;
+    private volatile int sourcesInUse = 0;
+    private volatile int buffersInUse = 0;
+    private volatile int peakSourcesInUse = 0;
+    private volatile int peakBuffersInUse = 0;
+    private volatile long failedAcquires = 0;
+
+    OpenAlPool(int sourceCapacity, int bufferCapacity) {
+        this.sourceCapacity = sourceCapacity;
+        this.bufferCapacity = bufferCapacity;
+        this.freeSources = new int[sourceCapacity];
+        this.freeBuffers = new int[bufferCapacity];
+    }
+
+    /**
+     * Создаёт все объекты пула, если это ещё не сделано
+     */
+    void reserve() {
+        if (reserved) {
+            return;
+        }
+        reserved = true;
+
+        AL10.alGetError(); // Сбрасываем ошибку, оставшуюся от чужих вызовов
+        for (int i = 0; i < sourceCapacity; i++) {
+            int source = AL10.alGenSources();
+            if (AL10.alGetError() != AL10.AL_NO_ERROR || source == 0) {
+                LOGGER.warn("Удалось зарезервировать только {} из {} источников OpenAL", i, sourceCapacity);
+                break;
+            }
+            // Источник для музыки: без 3D позиционирования
+            AL10.alSourcei(source, AL10.AL_SOURCE_RELATIVE, AL10.AL_TRUE);
+            AL10.alSource3f(source, AL10.AL_POSITION, 0.0f, 0.0f, 0.0f);
+            freeSources[freeSourceCount++] = source;
+        }
+        for (int i = 0; i < bufferCapacity; i++) {
+            int buffer = AL10.alGenBuffers();
+            if (AL10.alGetError() != AL10.AL_NO_ERROR || buffer == 0) {
+                LOGGER.warn("Удалось зарезервировать только {} из {} буферов OpenAL", i, bufferCapacity);
+                break;
+            }
+            freeBuffers[freeBufferCount++] = buffer;
+        }
+        reservedSources = freeSourceCount;
+        reservedBuffers = freeBufferCount;
+        LOGGER.debug("Зарезервировано источников OpenAL: {}, буферов: {}", reservedSources, reservedBuffers);
+    }
+
+    /**
+     * @return источник или -1, если свободных источников нет
+     */
+    int acquireSource() {
+        reserve();
+        if (freeSourceCount == 0) {
+            failedAcquires++;
+            return -1;
+        }
+        sourcesInUse++;
+        peakSourcesInUse = Math.max(peakSourcesInUse, sourcesInUse);
+        return freeSources[--freeSourceCount];
+    }
+
+    /**
+     * Возвращает источник в пул. Источник должен быть остановлен и без очереди буферов
+     */
+    void releaseSource(int source) {
+        freeSources[freeSourceCount++] = source;
+        sourcesInUse--;
+    }
+
+    /**
+     * Заполняет массив свободными буферами
+     * @return false если свободных буферов не хватает (массив не изменяется)
+     */
+    boolean acquireBuffers(int[] target) {
+        reserve();
+        if (freeBufferCount < target.length) {
+            failedAcquires++;
+            return false;
+        }
+        for (int i = 0; i < target.length; i++) {
+            target[i] = freeBuffers[--freeBufferCount];
+        }
+        buffersInUse += target.length;
+        peakBuffersInUse = Math.max(peakBuffersInUse, buffersInUse);
+        return true;
+    }
+
+    void releaseBuffers(int[] buffers) {
+        for (int buffer : buffers) {
+            freeBuffers[freeBufferCount++] = buffer;
+        }
+        buffersInUse -= buffers.length;
+    }
+
+    /**
+     * Удаляет все объекты пула. Вызывается при остановке аудиопотока, когда все объекты возвращены
+     */
+    void destroy() {
+        if (!reserved) {
+            return;
+        }
+        for (int i = 0; i < freeSourceCount; i++) {
+            AL10.alDeleteSources(freeSources[i]);
+        }
+        for (int i = 0; i < freeBufferCount; i++) {
+            AL10.alDeleteBuffers(freeBuffers[i]);
+        }
+        freeSourceCount = 0;
+        freeBufferCount = 0;
+        reservedSources = 0;
+        reservedBuffers = 0;
+        reserved = false;
+    }
+
+    public int getReservedSources() {
+        return reservedSources;
+    }
+
+    public int getReservedBuffers() {
+        return reservedBuffers;
+    }
+
+    public int getSourcesInUse() {
+        return sourcesInUse;
+    }
+
+    public int getBuffersInUse() {
+        return buffersInUse;
+    }
+
+    public int getPeakSourcesInUse() {
+        return peakSourcesInUse;
+    }
+
+    public int getPeakBuffersInUse() {
+        return peakBuffersInUse;
+    }
+
+    /**
+     * Сколько раз запрос объекта из пула не удалось удовлетворить
+     */
+    public long getFailedAcquires() {
+        return failedAcquires;
+    }
+}
@@ -0,0 +1,168 @@
+package com.audiocontroller.audio;
+
+import com.mojang.logging.LogUtils;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Параллельный обход папки с музыкой на ForkJoinPool.
+ * Каждая вложенная папка обходится отдельной задачей, свободные потоки забирают задачи
+ * у занятых (work stealing), поэтому медленные диски и сетевые папки читаются параллельно.
+ * Результат не зависит от порядка выполнения: записи каждой папки сортируются по имени
+ */
+final class ParallelScanner {
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    /**
+     * Найденный файл с атрибутами, прочитанными при обходе
+     */
+    static final class Entry {
+        final Path path;
+        final long size;
+        final long lastModified;
+
+        Entry(Path path, long size, long lastModified) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+
+    private ParallelScanner() {
+    }
+
+    /**
+     * Обходит дерево папок
+     * @param root корневая папка
+     * @param parallelism количество потоков обхода
+     * @param filter отбор файлов по пути
+     * @param directoryVisitor вызывается для каждой папки (из потоков обхода)
+     * @return найденные файлы в порядке обхода в глубину с сортировкой по имени
+     */
+    static List<Entry> scan(Path root, int parallelism, Predicate<Path> filter, Consumer<Path> directoryVisitor) {
+        return scanAsync(root, parallelism, filter, directoryVisitor, entry -> { }, () -> false).join();
+    }
+
+    /**
+     * Запускает обход в фоне
+     * @param entryVisitor вызывается для каждого найденного файла сразу при обнаружении (из потоков обхода)
+     * @param cancelled проверяется перед чтением каждой папки; после отмены оставшиеся папки пропускаются
+     * @return найденные файлы в том же порядке, что и у scan(); после отмены - только прочитанная часть
+     */
+    static CompletableFuture<List<Entry>> scanAsync(Path root, int parallelism, Predicate<Path> filter,
+                                                    Consumer<Path> directoryVisitor, Consumer<Entry> entryVisitor,
+                                                    BooleanSupplier cancelled) {
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism), p -> {
+            ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            t.setName("AudioController-Scan-" + t.getPoolIndex());
+            t.setDaemon(true);
+            return t;
+        }, null, false);
+        Visitors visitors = new Visitors(filter, directoryVisitor, entryVisitor, cancelled);
+        CompletableFuture<List<Entry>> result = new CompletableFuture<>();
+        pool.execute(() -> {
+            try {
+                result.complete(new DirectoryTask(root, visitors).invoke());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            } finally {
+                pool.shutdown();
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Параметры обхода, общие для всех задач
+     */
+    private static final class Visitors {
+        final Predicate<Path> filter;
+        final Consumer<Path> directoryVisitor;
+        final Consumer<Entry> entryVisitor;
+        final BooleanSupplier cancelled;
+
+        Visitors(Predicate<Path> filter, Consumer<Path> directoryVisitor, Consumer<Entry> entryVisitor,
+                 BooleanSupplier cancelled) {
+            this.filter = filter;
+            this.directoryVisitor = directoryVisitor;
+            this.entryVisitor = entryVisitor;
+            this.cancelled = cancelled;
+        }
+    }
+
+    private static final class DirectoryTask extends RecursiveTask<List<Entry>> {
+        private final Path directory;
+        private final Visitors visitors;
+
+        DirectoryTask(Path directory, Visitors visitors) {
+            this.directory = directory;
+            this.visitors = visitors;
+        }
+
+        @Override
+        protected List<Entry> compute() {
+            if (visitors.cancelled.getAsBoolean()) {
+                return List.of();
+            }
+            visitors.directoryVisitor.accept(directory);
+
+            List<Path> children = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path child : stream) {
+                    children.add(child);
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Ошибка при чтении папки: {}", directory, e);
+                return List.of();
+            }
+            Collections.sort(children);
+
+            // Подпапки запускаются сразу, файлы читаются, пока подпапки обходятся другими потоками
+            List<Object> parts = new ArrayList<>(children.size());
+            for (Path child : children) {
+                BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (IOException e) {
+                    LOGGER.warn("Ошибка при чтении файла: {}", child, e);
+                    continue;
+                }
+                if (attrs.isDirectory()) {
+                    DirectoryTask task = new DirectoryTask(child, visitors);
+                    task.fork();
+                    parts.add(task);
+                } else if (attrs.isRegularFile() && visitors.filter.test(child)) {
+                    Entry entry = new Entry(child, attrs.size(), attrs.lastModifiedTime().toMillis());
+                    visitors.entryVisitor.accept(entry);
+                    parts.add(entry);
+                }
+            }
+
+            List<Entry> result = new ArrayList<>();
+            for (Object part : parts) {
+                if (part instanceof DirectoryTask task) {
+                    result.addAll(task.join());
+                } else {
+                    result.add((Entry) part);
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package com.audiocontroller.audio;
+
+import com.mojang.logging.LogUtils;
+import org.lwjgl.system.MemoryUtil;
+import org.slf4j.Logger;
+
+import java.nio.ShortBuffer;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LRU кэш декодированного PCM в нативной памяти.
+ * Короткие треки, которые часто повторяются в плейлисте, при повторном запуске
+ * читаются из памяти без декодирования. Трек попадает в кэш, когда его первое
+ * воспроизведение дочитано до конца, поэтому отдельного декодирования не требуется
+ */
+public class PcmCache {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final int MAX_ENTRY_FRACTION = 4; // Один трек занимает не больше четверти бюджета
+
+    private static final class Entry {
+        final FileKey key;
+        final ShortBuffer pcm;
+        final int channels;
+        final int sampleRate;
+        final long frames;
+        final long bytes;
+        int refCount = 0;
+
+        Entry(FileKey key, ShortBuffer pcm, int channels, int sampleRate, long frames) {
+            this.key = key;
+            this.pcm = pcm;
+            this.channels = channels;
+            this.sampleRate = sampleRate;
+            this.frames = frames;
+            this.bytes = (long) pcm.capacity() * Short.BYTES;
+        }
+    }
+
+    private final LinkedHashMap<FileKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long budgetBytes;
+    private long usedBytes = 0;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param budgetBytes максимальный объём нативной памяти под кэш, 0 - кэш отключен
+     */
+    public PcmCache(long budgetBytes) {
+        this.budgetBytes = Math.max(0, budgetBytes);
+    }
+
+    /**
+     * Открывает файл для воспроизведения: из кэша, если он там есть, иначе через декодер.
+     * Если трек помещается в кэш, декодированные данные записываются в него по ходу воспроизведения
+     * @return поток или null, если файл не удалось открыть
+     */
+    PcmStream open(Path file) {
+        FileKey key = FileKey.of(file);
+        if (key != null) {
+            synchronized (this) {
+                Entry entry = entries.get(key);
+                if (entry != null) {
+                    entry.refCount++;
+                    hits.incrementAndGet();
+                    return new CachedStream(entry, file);
+                }
+            }
+        }
+
+        VorbisStream stream = VorbisStream.open(file);
+        if (stream == null || key == null) {
+            return stream;
+        }
+        misses.incrementAndGet();
+
+        long bytes = stream.getLengthFrames() * stream.getChannels() * Short.BYTES;
+        if (stream.getLengthFrames() <= 0 || bytes > getMaxEntryBytes()) {
+            return stream;
+        }
+        ShortBuffer capture = MemoryUtil.memAllocShort((int) (bytes / Short.BYTES));
+        return new RecordingStream(stream, key, capture);
+    }
+
+    private synchronized long getMaxEntryBytes() {
+        return Math.min(Integer.MAX_VALUE, budgetBytes / MAX_ENTRY_FRACTION);
+    }
+
+    /**
+     * Добавляет полностью декодированный трек в кэш, вытесняя давно не использованные записи
+     * @return true если данные приняты кэшем (и будут освобождены им)
+     */
+    private synchronized boolean put(FileKey key, ShortBuffer pcm, int channels, int sampleRate, long frames) {
+        if (entries.containsKey(key)) {
+            return false;
+        }
+        long bytes = (long) pcm.capacity() * Short.BYTES;
+        if (!evictUntilFits(bytes)) {
+            return false;
+        }
+        entries.put(key, new Entry(key, pcm, channels, sampleRate, frames));
+        usedBytes += bytes;
+        LOGGER.debug("Трек добавлен в кэш PCM: {} ({} КБ, занято {} КБ из {} КБ)",
+            key.getPath().getFileName(), bytes / 1024, usedBytes / 1024, budgetBytes / 1024);
+        return true;
+    }
+
+    /**
+     * Вытесняет записи, которые сейчас никто не читает, пока новый объём не уложится в бюджет
+     */
+    private boolean evictUntilFits(long bytes) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (usedBytes + bytes > budgetBytes && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.refCount == 0) {
+                iterator.remove();
+                free(entry);
+                evictions.incrementAndGet();
+            }
+        }
+        return usedBytes + bytes <= budgetBytes;
+    }
+
+    private void free(Entry entry) {
+        usedBytes -= entry.bytes;
+        MemoryUtil.memFree(entry.pcm);
+    }
+
+    private synchronized void release(Entry entry) {
+        entry.refCount--;
+        if (entry.refCount == 0 && entries.get(entry.key) != entry) {
+            // Запись удалили из кэша, пока её читали
+            free(entry);
+        }
+    }
+
+    /**
+     * Меняет бюджет кэша, вытесняя лишние записи
+     */
+    public synchronized void setBudgetBytes(long budgetBytes) {
+        this.budgetBytes = Math.max(0, budgetBytes);
+        evictUntilFits(0);
+    }
+
+    /**
+     * Освобождает все записи, которые сейчас не читаются
+     */
+    public synchronized void clear() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            iterator.remove();
+            if (entry.refCount == 0) {
+                free(entry);
+            }
+        }
+    }
+
+    public synchronized long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Чтение трека из кэша
+     */
+    private final class CachedStream implements PcmStream {
+        private final Entry entry;
+        private final Path file;
+        private final ShortBuffer view;
+        private long framesRead = 0;
+        private boolean closed = false;
+
+        CachedStream(Entry entry, Path file) {
+            this.entry = entry;
+            this.file = file;
+            this.view = entry.pcm.duplicate();
+            this.view.clear();
+        }
+
+        @Override
+        public int read(ShortBuffer pcm) {
+            pcm.clear();
+            int frames = (int) Math.min(pcm.capacity() / entry.channels, entry.frames - framesRead);
+            if (frames <= 0) {
+                pcm.limit(0);
+                return 0;
+            }
+            int limit = view.limit();
+            view.limit(view.position() + frames * entry.channels);
+            pcm.put(view);
+            view.limit(limit);
+            pcm.flip();
+            framesRead += frames;
+            return frames;
+        }
+
+        @Override
+        public int getChannels() {
+            return entry.channels;
+        }
+
+        @Override
+        public int getSampleRate() {
+            return entry.sampleRate;
+        }
+
+        @Override
+        public long getLengthFrames() {
+            return entry.frames;
+        }
+
+        @Override
+        public long getFramesRead() {
+            return framesRead;
+        }
+
+        @Override
+        public Path getFile() {
+            return file;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                release(entry);
+            }
+        }
+    }
+
+    /**
+     * Декодирование с параллельной записью PCM в буфер для кэша
+     */
+    private final class RecordingStream implements PcmStream {
+        private final VorbisStream stream;
+        private final FileKey key;
+        private ShortBuffer capture;
+
+        RecordingStream(VorbisStream stream, FileKey key, ShortBuffer capture) {
+            this.stream = stream;
+            this.key = key;
+            this.capture = capture;
+        }
+
+        @Override
+        public int read(ShortBuffer pcm) {
+            int frames = stream.read(pcm);
+            if (capture == null) {
+                return frames;
+            }
+            if (frames > 0) {
+                if (capture.remaining() < pcm.remaining()) {
+                    // Реальная длина больше заявленной - такой трек не кэшируем
+                    discard();
+                } else {
+                    capture.put(pcm);
+                    pcm.position(0);
+                }
+            } else {
+                capture.flip();
+                if (put(key, capture, stream.getChannels(), stream.getSampleRate(), capture.limit() / stream.getChannels())) {
+                    capture = null;
+                } else {
+                    discard();
+                }
+            }
+            return frames;
+        }
+
+        private void discard() {
+            MemoryUtil.memFree(capture);
+            capture = null;
+        }
+
+        @Override
+        public int getChannels() {
+            return stream.getChannels();
+        }
+
+        @Override
+        public int getSampleRate() {
+            return stream.getSampleRate();
+        }
+
+        @Override
+        public long getLengthFrames() {
+            return stream.getLengthFrames();
+        }
+
+        @Override
+        public long getFramesRead() {
+            return stream.getFramesRead();
+        }
+
+        @Override
+        public Path getFile() {
+            return stream.getFile();
+        }
+
+        @Override
+        public void close() {
+            stream.close();
+            if (capture != null) {
+                discard();
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.audiocontroller.audio;
+
+import org.lwjgl.openal.AL10;
+
+import java.nio.ShortBuffer;
+import java.nio.file.Path;
+
+/**
+ * Источник 16-битного PCM для StreamingSource: декодер OGG или уже декодированные данные из кэша
+ */
+interface PcmStream extends AutoCloseable {
+    /**
+     * Записывает следующую порцию звука в буфер (interleaved, 16 бит)
+     * @param pcm буфер назначения; после вызова limit указывает на конец данных
+     * @return количество сэмплов на канал, 0 при достижении конца потока
+     */
+    int read(ShortBuffer pcm);
+
+    int getChannels();
+
+    int getSampleRate();
+
+    /**
+     * Длина потока в сэмплах на канал, 0 если длина неизвестна
+     */
+    long getLengthFrames();
+
+    /**
+     * Сколько сэмплов на канал уже прочитано
+     */
+    long getFramesRead();
+
+    Path getFile();
+
+    /**
+     * Формат OpenAL, соответствующий количеству каналов
+     */
+    default int getFormat() {
+        return getChannels() == 1 ? AL10.AL_FORMAT_MONO16 : AL10.AL_FORMAT_STEREO16;
+    }
+
+    @Override
+    void close();
+}
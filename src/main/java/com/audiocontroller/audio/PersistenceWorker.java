@@ -0,0 +1,172 @@
+package com.audiocontroller.audio;
+
+import com.mojang.logging.LogUtils;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Отложенная запись файлов настроек в отдельном потоке.
+ * Вызывающий поток только ставит запись в очередь и никогда не ждёт диск.
+ * Повторные записи одного файла (или операции с одним ключом) в течение COALESCE_MS
+ * объединяются - выполняется только последняя. Файл записывается во временный файл и затем атомарно
+ * заменяет старый, поэтому при сбое на диске остаётся либо старая, либо новая версия
+ */
+final class PersistenceWorker {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final long COALESCE_MS = 250;
+
+    /**
+     * Операция ввода-вывода, выполняемая в потоке записи
+     */
+    @FunctionalInterface
+    interface IoTask {
+        void run() throws IOException;
+    }
+
+    private static final class Pending {
+        IoTask task;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+    }
+
+    private final Map<Object, Pending> pending = new HashMap<>(); // Под блокировкой pending
+    private final ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "AudioController-Persistence");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Ставит файл в очередь на запись
+     * @param content содержимое; вычисляется в потоке записи, поэтому должно быть уже
+     *                отвязано от изменяемого состояния вызывающего потока
+     * @return future, который завершается после записи последней версии файла
+     */
+    CompletableFuture<Void> write(Path file, Supplier<ByteBuffer> content) {
+        return schedule(file, () -> writeAtomically(file, content.get()));
+    }
+
+    /**
+     * Ставит файл в очередь на удаление. Более поздняя запись того же файла отменяет удаление
+     */
+    CompletableFuture<Void> delete(Path file) {
+        return schedule(file, () -> Files.deleteIfExists(file));
+    }
+
+    /**
+     * Ставит операцию в очередь. Если операция с тем же ключом ещё не выполнена, она заменяется новой
+     * @return future, который завершается после выполнения последней операции с этим ключом
+     */
+    CompletableFuture<Void> schedule(Object key, IoTask task) {
+        synchronized (pending) {
+            Pending operation = pending.get(key);
+            if (operation != null) {
+                operation.task = task; // Операция уже запланирована - заменяем её
+                return operation.future;
+            }
+            operation = new Pending();
+            operation.task = task;
+            pending.put(key, operation);
+            try {
+                executorService.schedule(() -> flush(key), COALESCE_MS, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                pending.remove(key);
+                operation.future.completeExceptionally(e);
+            }
+            return operation.future;
+        }
+    }
+
+    /**
+     * Записывает все ожидающие файлы, не дожидаясь окончания интервала объединения
+     * @return future, который завершается после записи
+     */
+    CompletableFuture<Void> flush() {
+        try {
+            return CompletableFuture.runAsync(this::flushAll, executorService);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    private void flushAll() {
+        List<Object> keys;
+        synchronized (pending) {
+            keys = new ArrayList<>(pending.keySet());
+        }
+        for (Object key : keys) {
+            flush(key);
+        }
+    }
+
+    private void flush(Object key) {
+        Pending operation;
+        synchronized (pending) {
+            operation = pending.remove(key);
+        }
+        if (operation == null) {
+            return; // Уже выполнена через flush()
+        }
+        try {
+            operation.task.run();
+            operation.future.complete(null);
+        } catch (Exception e) {
+            LOGGER.error("Ошибка при записи: {}", key, e);
+            operation.future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Записывает данные во временный файл рядом с целевым и атомарно заменяет им целевой файл
+     */
+    static void writeAtomically(Path file, ByteBuffer data) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+            channel.force(false);
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Записывает всё, что осталось в очереди, и останавливает поток записи
+     */
+    void shutdown() {
+        flush();
+        executorService.shutdown();
+        try {
+            if (!executorService.awaitTermination(5, TimeUnit.SECONDS)) {
+                LOGGER.warn("Не все файлы успели записаться при завершении");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.audiocontroller.audio;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Неизменяемая хэш-таблица с общей структурой между версиями (префиксное дерево по битам хэша, HAMT).
+ * put() и remove() возвращают новую таблицу, копируя только путь от корня до изменённого узла -
+ * не больше семи узлов по 32 ссылки, поэтому изменение стоит O(1) независимо от размера.
+ * Прежняя версия остаётся неизменной и может читаться из других потоков без блокировок.
+ * Ключи сравниваются через equals(), null в качестве ключа не поддерживается
+ */
+final class PersistentHashMap<K, V> {
+    private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<>(null, 0);
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private final Node root; // null - таблица пуста
+    private final int size;
+
+    private PersistentHashMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(Object key) {
+        return root != null ? (V) root.find(key, hash(key), 0) : null;
+    }
+
+    boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @return таблица с заменённым или добавленным значением; та же таблица, если значение не изменилось
+     */
+    PersistentHashMap<K, V> put(K key, V value) {
+        boolean[] added = new boolean[1];
+        Node base = root != null ? root : BitmapNode.EMPTY;
+        Node next = base.put(key, value, hash(key), 0, added);
+        if (next == root) {
+            return this;
+        }
+        return new PersistentHashMap<>(next, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * @return таблица без ключа; та же таблица, если ключа не было
+     */
+    PersistentHashMap<K, V> remove(Object key) {
+        if (root == null) {
+            return this;
+        }
+        Node next = root.remove(key, hash(key), 0);
+        if (next == root) {
+            return this;
+        }
+        return size == 1 ? empty() : new PersistentHashMap<>(next, size - 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    void forEach(BiConsumer<? super K, ? super V> action) {
+        if (root != null) {
+            root.forEach((BiConsumer<Object, Object>) action);
+        }
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private abstract static class Node {
+        abstract Object find(Object key, int hash, int shift);
+
+        abstract Node put(Object key, Object value, int hash, int shift, boolean[] added);
+
+        /**
+         * @return узел без ключа, null - узел опустел, тот же узел - ключа не было
+         */
+        abstract Node remove(Object key, int hash, int shift);
+
+        abstract void forEach(BiConsumer<Object, Object> action);
+    }
+
+    /**
+     * Узел с 32 ячейками, из которых хранятся только занятые (bitmap). Ячейка - пара
+     * ключ/значение или, если ключ null, дочерний узел на месте значения
+     */
+    private static final class BitmapNode extends Node {
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        final int bitmap;
+        final Object[] array;
+
+        BitmapNode(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        private int slot(int bit) {
+            return 2 * Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        Object find(Object key, int hash, int shift) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            int i = slot(bit);
+            Object k = array[i];
+            if (k == null) {
+                return ((Node) array[i + 1]).find(key, hash, shift + BITS);
+            }
+            return key.equals(k) ? array[i + 1] : null;
+        }
+
+        @Override
+        Node put(Object key, Object value, int hash, int shift, boolean[] added) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            int i = slot(bit);
+            if ((bitmap & bit) == 0) {
+                Object[] next = new Object[array.length + 2];
+                System.arraycopy(array, 0, next, 0, i);
+                next[i] = key;
+                next[i + 1] = value;
+                System.arraycopy(array, i, next, i + 2, array.length - i);
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, next);
+            }
+            Object k = array[i];
+            Object v = array[i + 1];
+            if (k == null) {
+                Node child = ((Node) v).put(key, value, hash, shift + BITS, added);
+                return child == v ? this : with(i + 1, null, child);
+            }
+            if (key.equals(k)) {
+                return v == value ? this : with(i + 1, k, value);
+            }
+            added[0] = true;
+            return with(i + 1, null, pair(k, v, hash(k), key, value, hash, shift + BITS));
+        }
+
+        private BitmapNode with(int valueSlot, Object key, Object value) {
+            Object[] next = array.clone();
+            next[valueSlot - 1] = key;
+            next[valueSlot] = value;
+            return new BitmapNode(bitmap, next);
+        }
+
+        private static Node pair(Object key1, Object value1, int hash1, Object key2, Object value2, int hash2, int shift) {
+            if (hash1 == hash2) {
+                return new CollisionNode(hash1, new Object[] {key1, value1, key2, value2});
+            }
+            boolean[] added = new boolean[1];
+            return EMPTY.put(key1, value1, hash1, shift, added).put(key2, value2, hash2, shift, added);
+        }
+
+        @Override
+        Node remove(Object key, int hash, int shift) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int i = slot(bit);
+            Object k = array[i];
+            if (k == null) {
+                Node child = (Node) array[i + 1];
+                Node next = child.remove(key, hash, shift + BITS);
+                if (next == child) {
+                    return this;
+                }
+                return next != null ? with(i + 1, null, next) : without(bit, i);
+            }
+            return key.equals(k) ? without(bit, i) : this;
+        }
+
+        private BitmapNode without(int bit, int i) {
+            if (bitmap == bit) {
+                return null;
+            }
+            Object[] next = new Object[array.length - 2];
+            System.arraycopy(array, 0, next, 0, i);
+            System.arraycopy(array, i + 2, next, i, array.length - i - 2);
+            return new BitmapNode(bitmap & ~bit, next);
+        }
+
+        @Override
+        void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (array[i] == null) {
+                    ((Node) array[i + 1]).forEach(action);
+                } else {
+                    action.accept(array[i], array[i + 1]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Ключи с одинаковым полным хэшем
+     */
+    private static final class CollisionNode extends Node {
+        final int hash;
+        final Object[] array;
+
+        CollisionNode(int hash, Object[] array) {
+            this.hash = hash;
+            this.array = array;
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        Object find(Object key, int hash, int shift) {
+            int i = hash == this.hash ? indexOf(key) : -1;
+            return i >= 0 ? array[i + 1] : null;
+        }
+
+        @Override
+        Node put(Object key, Object value, int hash, int shift, boolean[] added) {
+            if (hash != this.hash) {
+                // Другой хэш: узел опускается на уровень ниже под новым узлом с ячейками
+                Node parent = new BitmapNode(1 << ((this.hash >>> shift) & MASK), new Object[] {null, this});
+                return parent.put(key, value, hash, shift, added);
+            }
+            int i = indexOf(key);
+            if (i >= 0) {
+                if (array[i + 1] == value) {
+                    return this;
+                }
+                Object[] next = array.clone();
+                next[i + 1] = value;
+                return new CollisionNode(hash, next);
+            }
+            Object[] next = new Object[array.length + 2];
+            System.arraycopy(array, 0, next, 0, array.length);
+            next[array.length] = key;
+            next[array.length + 1] = value;
+            added[0] = true;
+            return new CollisionNode(hash, next);
+        }
+
+        @Override
+        Node remove(Object key, int hash, int shift) {
+            int i = hash == this.hash ? indexOf(key) : -1;
+            if (i < 0) {
+                return this;
+            }
+            if (array.length == 2) {
+                return null;
+            }
+            Object[] next = new Object[array.length - 2];
+            System.arraycopy(array, 0, next, 0, i);
+            System.arraycopy(array, i + 2, next, i, array.length - i - 2);
+            return new CollisionNode(hash, next);
+        }
+
+        @Override
+        void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < array.length; i += 2) {
+                action.accept(array[i], array[i + 1]);
+            }
+        }
+    }
+}
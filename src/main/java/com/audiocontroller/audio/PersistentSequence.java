@@ -0,0 +1,238 @@
+package com.audiocontroller.audio;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * Неизменяемая последовательность элементов, упорядоченных по ключу (номеру добавления),
+ * с общей структурой между версиями: сбалансированное дерево (AVL), в узлах которого хранится
+ * размер поддерева. Вставка и удаление по ключу, а также доступ по номеру стоят O(log n)
+ * и копируют только путь от корня, поэтому прежняя версия остаётся неизменной.
+ * asList() даёт неизменяемый список без копирования - его можно отдавать читателям
+ */
+final class PersistentSequence<T> {
+    private static final PersistentSequence<?> EMPTY = new PersistentSequence<>(null);
+
+    private final Node root;
+    private List<T> list; // Создаётся при первом вызове asList()
+
+    private static final class Node {
+        final long key;
+        final Object value;
+        final Node left;
+        final Node right;
+        final int height;
+        final int size;
+
+        Node(long key, Object value, Node left, Node right) {
+            this.key = key;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.height = Math.max(height(left), height(right)) + 1;
+            this.size = size(left) + size(right) + 1;
+        }
+    }
+
+    private PersistentSequence(Node root) {
+        this.root = root;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> PersistentSequence<T> empty() {
+        return (PersistentSequence<T>) EMPTY;
+    }
+
+    int size() {
+        return size(root);
+    }
+
+    boolean isEmpty() {
+        return root == null;
+    }
+
+    /**
+     * Элемент с номером index в порядке ключей
+     */
+    @SuppressWarnings("unchecked")
+    T get(int index) {
+        Objects.checkIndex(index, size());
+        Node node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index > leftSize) {
+                index -= leftSize + 1;
+                node = node.right;
+            } else {
+                return (T) node.value;
+            }
+        }
+    }
+
+    /**
+     * @return последовательность с элементом по ключу (существующий элемент с тем же ключом заменяется)
+     */
+    PersistentSequence<T> put(long key, T value) {
+        return new PersistentSequence<>(put(root, key, value));
+    }
+
+    /**
+     * @return последовательность без элемента с ключом; та же последовательность, если ключа не было
+     */
+    PersistentSequence<T> remove(long key) {
+        Node next = remove(root, key);
+        return next == root ? this : new PersistentSequence<>(next);
+    }
+
+    /**
+     * Неизменяемый список элементов в порядке ключей. get() стоит O(log n), обход итератором - O(1) на элемент
+     */
+    List<T> asList() {
+        List<T> view = list;
+        if (view == null) {
+            view = new ListView();
+            list = view; // Гонка безопасна: представления одинаковы
+        }
+        return view;
+    }
+
+    private static int height(Node node) {
+        return node != null ? node.height : 0;
+    }
+
+    private static int size(Node node) {
+        return node != null ? node.size : 0;
+    }
+
+    private static Node put(Node node, long key, Object value) {
+        if (node == null) {
+            return new Node(key, value, null, null);
+        }
+        if (key < node.key) {
+            return balance(node.key, node.value, put(node.left, key, value), node.right);
+        }
+        if (key > node.key) {
+            return balance(node.key, node.value, node.left, put(node.right, key, value));
+        }
+        return new Node(key, value, node.left, node.right);
+    }
+
+    private static Node remove(Node node, long key) {
+        if (node == null) {
+            return null;
+        }
+        if (key < node.key) {
+            Node left = remove(node.left, key);
+            return left == node.left ? node : balance(node.key, node.value, left, node.right);
+        }
+        if (key > node.key) {
+            Node right = remove(node.right, key);
+            return right == node.right ? node : balance(node.key, node.value, node.left, right);
+        }
+        if (node.left == null) {
+            return node.right;
+        }
+        if (node.right == null) {
+            return node.left;
+        }
+        Node first = node.right;
+        while (first.left != null) {
+            first = first.left;
+        }
+        return balance(first.key, first.value, node.left, remove(node.right, first.key));
+    }
+
+    private static Node balance(long key, Object value, Node left, Node right) {
+        if (height(left) > height(right) + 1) {
+            if (height(left.left) >= height(left.right)) {
+                return new Node(left.key, left.value, left.left, new Node(key, value, left.right, right));
+            }
+            Node middle = left.right;
+            return new Node(middle.key, middle.value, new Node(left.key, left.value, left.left, middle.left),
+                new Node(key, value, middle.right, right));
+        }
+        if (height(right) > height(left) + 1) {
+            if (height(right.right) >= height(right.left)) {
+                return new Node(right.key, right.value, new Node(key, value, left, right.left), right.right);
+            }
+            Node middle = right.left;
+            return new Node(middle.key, middle.value, new Node(key, value, left, middle.left),
+                new Node(right.key, right.value, middle.right, right.right));
+        }
+        return new Node(key, value, left, right);
+    }
+
+    private final class ListView extends AbstractList<T> {
+        @Override
+        public T get(int index) {
+            return PersistentSequence.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return PersistentSequence.this.size();
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return new InOrder();
+        }
+
+        @Override
+        public int indexOf(Object o) {
+            int index = 0;
+            for (T element : this) {
+                if (Objects.equals(o, element)) {
+                    return index;
+                }
+                index++;
+            }
+            return -1;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return indexOf(o) >= 0;
+        }
+    }
+
+    /**
+     * Обход дерева по возрастанию ключей со стеком левых ветвей
+     */
+    private final class InOrder implements Iterator<T> {
+        private final Deque<Node> stack = new ArrayDeque<>();
+
+        InOrder() {
+            pushLeft(root);
+        }
+
+        private void pushLeft(Node node) {
+            for (; node != null; node = node.left) {
+                stack.push(node);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !stack.isEmpty();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T next() {
+            if (stack.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            Node node = stack.pop();
+            pushLeft(node.right);
+            return (T) node.value;
+        }
+    }
+}
@@ -0,0 +1,464 @@
+package com.audiocontroller.audio;
+
+import com.mojang.logging.LogUtils;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * История прослушивания: каждое начало, пропуск и полное воспроизведение трека.
+ * record() только увеличивает счётчики в памяти и кладёт событие в неблокирующую очередь,
+ * поэтому вызывается из клиентского потока без ожидания диска. Поток записи дописывает события
+ * в журнал (записи фиксированного размера), а когда журнал вырастает, сворачивает его в файл
+ * счётчиков по трекам и начинает журнал заново.
+ * Журнал и счётчики помечены номером поколения: журнал старше счётчиков уже учтён в них,
+ * поэтому сбой между записью счётчиков и очисткой журнала не учитывает события дважды.
+ * Ключ трека - отпечаток содержимого. События трека, отпечаток которого ещё не определён,
+ * держатся в памяти и попадают в журнал после resolvePending(); если отпечаток так и не
+ * определился до выхода, они не сохраняются
+ */
+public final class PlayHistory {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final byte[] LOG_MAGIC = "APHL".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] STATS_MAGIC = "APST".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8; // magic, версия, поколение
+    private static final int RECORD_SIZE = 8 + 1 + 8; // трек, тип, время
+    private static final int STATS_RECORD_SIZE = 8 + 4 + 4 + 4 + 8;
+    private static final long COMPACT_BYTES = 256 * 1024; // ~15000 событий
+    private static final long IDLE_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Тип события истории. Код записывается в журнал и не должен меняться
+     */
+    public enum Event {
+        PLAY(1), SKIP(2), COMPLETE(3);
+
+        private final byte code;
+
+        Event(int code) {
+            this.code = (byte) code;
+        }
+
+        static Event byCode(byte code) {
+            for (Event event : values()) {
+                if (event.code == code) {
+                    return event;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Счётчики трека за всё время. Обновляются из клиентского потока, читаются из любого
+     */
+    public static final class TrackStats {
+        static final TrackStats EMPTY = new TrackStats();
+
+        private final AtomicInteger plays = new AtomicInteger();
+        private final AtomicInteger skips = new AtomicInteger();
+        private final AtomicInteger completions = new AtomicInteger();
+        private final AtomicLong lastPlayed = new AtomicLong();
+
+        public int getPlays() {
+            return plays.get();
+        }
+
+        public int getSkips() {
+            return skips.get();
+        }
+
+        public int getCompletions() {
+            return completions.get();
+        }
+
+        /**
+         * Время последнего начала воспроизведения (мс с эпохи), 0 - не играл
+         */
+        public long getLastPlayed() {
+            return lastPlayed.get();
+        }
+
+        void add(Event event, long time) {
+            switch (event) {
+                case PLAY -> {
+                    plays.incrementAndGet();
+                    lastPlayed.accumulateAndGet(time, Math::max);
+                }
+                case SKIP -> skips.incrementAndGet();
+                case COMPLETE -> completions.incrementAndGet();
+            }
+        }
+
+        void add(Counters counters) {
+            plays.addAndGet(counters.plays);
+            skips.addAndGet(counters.skips);
+            completions.addAndGet(counters.completions);
+            lastPlayed.accumulateAndGet(counters.lastPlayed, Math::max);
+        }
+    }
+
+    /**
+     * Счётчики, уже записанные в журнал или файл счётчиков. Принадлежат потоку записи:
+     * в отличие от TrackStats, не включают события, ещё стоящие в очереди
+     */
+    private static final class Counters {
+        int plays;
+        int skips;
+        int completions;
+        long lastPlayed;
+
+        void add(Event event, long time) {
+            switch (event) {
+                case PLAY -> {
+                    plays++;
+                    lastPlayed = Math.max(lastPlayed, time);
+                }
+                case SKIP -> skips++;
+                case COMPLETE -> completions++;
+            }
+        }
+    }
+
+    private static final class Entry {
+        final long key;
+        final Event event;
+        final long time;
+
+        Entry(long key, Event event, long time) {
+            this.key = key;
+            this.event = event;
+            this.time = time;
+        }
+    }
+
+    /**
+     * События трека без отпечатка. Изменяется только под блокировкой pending
+     */
+    private static final class Pending {
+        final TrackStats stats = new TrackStats();
+        final List<Entry> events = new ArrayList<>();
+    }
+
+    private final Path logFile;
+    private final Path statsFile;
+    private final Map<Long, TrackStats> stats = new ConcurrentHashMap<>();
+    private final Map<CustomMusicTrack, Pending> pending = new HashMap<>();
+    private final ConcurrentLinkedQueue<Entry> queue = new ConcurrentLinkedQueue<>();
+    private final CompletableFuture<Void> loaded = new CompletableFuture<>();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    // Состояние потока записи
+    private final Map<Long, Counters> durable = new HashMap<>();
+    private final ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 256).order(ByteOrder.LITTLE_ENDIAN);
+    private FileChannel log;
+    private long generation;
+
+    public PlayHistory(Path logFile, Path statsFile) {
+        this.logFile = logFile;
+        this.statsFile = statsFile;
+        this.writer = new Thread(this::run, "AudioController-PlayHistory");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Завершается, когда история прочитана с диска. До этого счётчики содержат только
+     * события текущей сессии
+     */
+    public CompletableFuture<Void> getLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Записывает событие. Не блокируется: счётчики обновляются атомарно, а запись на диск
+     * выполняет поток истории. Только трек без отпечатка ненадолго берёт блокировку pending
+     */
+    public void record(CustomMusicTrack track, Event event) {
+        if (track == null || !running) {
+            return;
+        }
+        long time = System.currentTimeMillis();
+        long key = track.getFingerprint();
+        if (key == 0L) {
+            synchronized (pending) {
+                // Проверка под блокировкой: resolvePending() после setFingerprint() увидит это событие
+                if (track.getFingerprint() == 0L) {
+                    Pending trackPending = pending.computeIfAbsent(track, t -> new Pending());
+                    trackPending.stats.add(event, time);
+                    trackPending.events.add(new Entry(0L, event, time));
+                    return;
+                }
+            }
+            key = track.getFingerprint();
+        }
+        stats.computeIfAbsent(key, k -> new TrackStats()).add(event, time);
+        queue.offer(new Entry(key, event, time));
+    }
+
+    /**
+     * Переносит накопленные события треков, у которых появился отпечаток, в счётчики и журнал.
+     * Вызывается после изменения библиотеки, когда в фоне определены новые отпечатки
+     */
+    void resolvePending() {
+        synchronized (pending) {
+            pending.entrySet().removeIf(entry -> {
+                long key = entry.getKey().getFingerprint();
+                if (key == 0L) {
+                    return false;
+                }
+                TrackStats trackStats = stats.computeIfAbsent(key, k -> new TrackStats());
+                for (Entry event : entry.getValue().events) {
+                    trackStats.add(event.event, event.time);
+                    queue.offer(new Entry(key, event.event, event.time));
+                }
+                return true;
+            });
+        }
+    }
+
+    /**
+     * @return счётчики трека; для трека без истории - нулевые
+     */
+    public TrackStats getStats(CustomMusicTrack track) {
+        long key = track.getFingerprint();
+        if (key == 0L) {
+            synchronized (pending) {
+                Pending trackPending = pending.get(track);
+                if (trackPending != null) {
+                    return trackPending.stats;
+                }
+            }
+            key = track.getFingerprint();
+        }
+        TrackStats trackStats = stats.get(key);
+        return trackStats != null ? trackStats : TrackStats.EMPTY;
+    }
+
+    public int getPlays(CustomMusicTrack track) {
+        return getStats(track).getPlays();
+    }
+
+    private void run() {
+        try {
+            load();
+            loaded.complete(null);
+        } catch (Exception e) {
+            LOGGER.error("Ошибка при загрузке истории прослушивания", e);
+            loaded.completeExceptionally(e);
+            running = false;
+            queue.clear();
+            return;
+        }
+        while (running || !queue.isEmpty()) {
+            if (queue.isEmpty()) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                continue;
+            }
+            try {
+                if (log == null) {
+                    openLog(); // Журнал не удалось открыть заново после сжатия
+                }
+                drain();
+                if (log.size() > COMPACT_BYTES) {
+                    compact();
+                }
+            } catch (IOException | RuntimeException e) {
+                LOGGER.error("Ошибка при записи истории прослушивания: {}", logFile, e);
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+        closeLog();
+    }
+
+    /**
+     * Дописывает в журнал всё, что накопилось в очереди
+     */
+    private void drain() throws IOException {
+        Entry entry;
+        while ((entry = queue.peek()) != null) {
+            if (buffer.remaining() < RECORD_SIZE) {
+                flushBuffer();
+            }
+            buffer.putLong(entry.key).put(entry.event.code).putLong(entry.time);
+            durable.computeIfAbsent(entry.key, k -> new Counters()).add(entry.event, entry.time);
+            queue.poll();
+        }
+        flushBuffer();
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                log.write(buffer);
+            }
+        } finally {
+            buffer.compact(); // После ошибки недописанные записи остаются для следующей попытки
+        }
+    }
+
+    /**
+     * Сворачивает журнал в файл счётчиков следующего поколения и начинает пустой журнал
+     */
+    private void compact() throws IOException {
+        long next = generation + 1;
+        ByteBuffer data = ByteBuffer.allocate(HEADER_SIZE + 4 + durable.size() * STATS_RECORD_SIZE)
+            .order(ByteOrder.LITTLE_ENDIAN);
+        data.put(STATS_MAGIC).putInt(VERSION).putLong(next).putInt(durable.size());
+        for (Map.Entry<Long, Counters> entry : durable.entrySet()) {
+            Counters counters = entry.getValue();
+            data.putLong(entry.getKey()).putInt(counters.plays).putInt(counters.skips)
+                .putInt(counters.completions).putLong(counters.lastPlayed);
+        }
+        data.flip();
+        PersistenceWorker.writeAtomically(statsFile, data);
+        // Счётчики записаны: журнал прошлого поколения больше не нужен
+        closeLog();
+        try {
+            PersistenceWorker.writeAtomically(logFile, logHeader(next));
+            generation = next;
+        } finally {
+            // Если журнал не заменён, дописываем в прежний: счётчики всех событий есть в durable,
+            // и следующее сжатие снова запишет их с тем же номером поколения
+            openLog();
+        }
+        LOGGER.debug("История прослушивания свёрнута: {} треков, поколение {}", durable.size(), next);
+    }
+
+    private void load() throws IOException {
+        long statsGeneration = readStats();
+        generation = statsGeneration;
+        if (Files.exists(logFile)) {
+            replayLog(statsGeneration);
+        } else {
+            PersistenceWorker.writeAtomically(logFile, logHeader(generation));
+        }
+        openLog();
+        for (Map.Entry<Long, Counters> entry : durable.entrySet()) {
+            stats.computeIfAbsent(entry.getKey(), k -> new TrackStats()).add(entry.getValue());
+        }
+        LOGGER.info("Загружена история прослушивания: {} треков", durable.size());
+    }
+
+    /**
+     * @return поколение файла счётчиков, 0 - файла нет
+     */
+    private long readStats() throws IOException {
+        if (!Files.exists(statsFile)) {
+            return 0L;
+        }
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(statsFile)).order(ByteOrder.LITTLE_ENDIAN);
+        if (!hasHeader(data, STATS_MAGIC) || data.remaining() < 4) {
+            LOGGER.warn("Файл счётчиков истории повреждён и будет пересоздан: {}", statsFile);
+            return 0L;
+        }
+        long statsGeneration = data.getLong(8);
+        int count = data.getInt();
+        for (int i = 0; i < count && data.remaining() >= STATS_RECORD_SIZE; i++) {
+            Counters counters = new Counters();
+            long key = data.getLong();
+            counters.plays = data.getInt();
+            counters.skips = data.getInt();
+            counters.completions = data.getInt();
+            counters.lastPlayed = data.getLong();
+            durable.put(key, counters);
+        }
+        return statsGeneration;
+    }
+
+    private void replayLog(long statsGeneration) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(logFile)).order(ByteOrder.LITTLE_ENDIAN);
+        if (!hasHeader(data, LOG_MAGIC) || data.getLong(8) < statsGeneration) {
+            // Журнал повреждён или уже учтён в счётчиках
+            PersistenceWorker.writeAtomically(logFile, logHeader(statsGeneration));
+            return;
+        }
+        generation = data.getLong(8);
+        while (data.remaining() >= RECORD_SIZE) {
+            long key = data.getLong();
+            Event event = Event.byCode(data.get());
+            long time = data.getLong();
+            if (event != null) {
+                durable.computeIfAbsent(key, k -> new Counters()).add(event, time);
+            }
+        }
+        if (data.hasRemaining()) {
+            // Недописанная запись после сбоя
+            LOGGER.warn("Отброшен недописанный хвост журнала истории: {} байт", data.remaining());
+            try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.WRITE)) {
+                channel.truncate(data.position());
+            }
+        }
+    }
+
+    private static boolean hasHeader(ByteBuffer data, byte[] magic) {
+        if (data.remaining() < HEADER_SIZE) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if (data.get() != magic[i]) {
+                return false;
+            }
+        }
+        data.position(HEADER_SIZE); // Поколение читается по смещению 8
+        return data.getInt(4) == VERSION;
+    }
+
+    private static ByteBuffer logHeader(long generation) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(LOG_MAGIC).putInt(VERSION).putLong(generation);
+        return header.flip();
+    }
+
+    private void openLog() throws IOException {
+        log = FileChannel.open(logFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void closeLog() {
+        if (log != null) {
+            try {
+                log.close();
+            } catch (IOException e) {
+                LOGGER.warn("Не удалось закрыть журнал истории: {}", logFile, e);
+            }
+            log = null;
+        }
+    }
+
+    /**
+     * Дописывает оставшиеся события и останавливает поток истории
+     */
+    public void shutdown() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer.isAlive()) {
+            LOGGER.warn("История прослушивания не успела записаться при завершении");
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.audiocontroller.audio;
+
+import java.nio.file.Path;
+
+/**
+ * Событие аудиопотока о смене трека
+ */
+public final class PlaybackEvent {
+    public enum Type {
+        /**
+         * Трек начал играть: файл, загруженный командой load (isInitial()), после play(),
+         * или предзагруженный трек без паузы или через кроссфейд
+         */
+        TRACK_STARTED,
+        /** Трек доигран до конца, следующий не был предзагружен */
+        TRACK_ENDED,
+        /** Файл не удалось открыть, воспроизведение не началось */
+        TRACK_FAILED
+    }
+
+    private final Type type;
+    private final Path file;
+    private final long loadSequence;
+    private final boolean initial;
+
+    PlaybackEvent(Type type, Path file, long loadSequence, boolean initial) {
+        this.type = type;
+        this.file = file;
+        this.loadSequence = loadSequence;
+        this.initial = initial;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Файл, к которому относится событие, или null для TRACK_FAILED
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Для TRACK_STARTED: играет сам загруженный файл, а не предзагруженный следующий
+     */
+    public boolean isInitial() {
+        return initial;
+    }
+
+    /**
+     * Номер команды загрузки, к которой относится событие
+     */
+    long getLoadSequence() {
+        return loadSequence;
+    }
+}
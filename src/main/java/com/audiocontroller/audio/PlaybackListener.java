@@ -0,0 +1,10 @@
+package com.audiocontroller.audio;
+
+/**
+ * Получатель событий воспроизведения от LWJGLDirectAudioPlayer.
+ * Вызывается в аудиопотоке, поэтому обработчик должен быстро передать работу в свой поток
+ */
+@FunctionalInterface
+public interface PlaybackListener {
+    void onPlaybackEvent(PlaybackEvent event);
+}
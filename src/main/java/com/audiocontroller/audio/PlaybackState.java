@@ -0,0 +1,56 @@
+package com.audiocontroller.audio;
+
+import java.nio.file.Path;
+
+/**
+ * Неизменяемый снимок состояния воспроизведения, который публикует аудиопоток.
+ * Клиентский поток читает его без обращения к OpenAL
+ */
+public final class PlaybackState {
+    static final PlaybackState IDLE = new PlaybackState(0, null, false, false, 0);
+
+    private final long sequence;
+    private final Path file;
+    private final boolean playing;
+    private final boolean paused;
+    private final int transitions;
+
+    PlaybackState(long sequence, Path file, boolean playing, boolean paused, int transitions) {
+        this.sequence = sequence;
+        this.file = file;
+        this.playing = playing;
+        this.paused = paused;
+        this.transitions = transitions;
+    }
+
+    /**
+     * Номер последней команды, обработанной аудиопотоком к моменту снимка
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public boolean isPlaying() {
+        return playing;
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Количество бесшовных переходов к предзагруженному треку с последней загрузки файла
+     */
+    public int getTransitions() {
+        return transitions;
+    }
+
+    boolean sameAs(long sequence, Path file, boolean playing, boolean paused, int transitions) {
+        return this.sequence == sequence && this.file == file && this.playing == playing && this.paused == paused
+                && this.transitions == transitions;
+    }
+}
@@ -4,28 +4,79 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.mojang.logging.LogUtils;
+import org.slf4j.Logger;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class Playlist {
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    /**
+     * Дочитывает список треков плейлиста, загруженного только с заголовком (см. read())
+     */
+    @FunctionalInterface
+    interface BodyReader {
+        Playlist read() throws IOException;
+    }
+
     private String name;
     private List<String> trackNames;
+    private List<String> trackIds; // Идентификаторы содержимого (см. CustomMusicTrack.getId()), null - неизвестен
     private boolean shuffle;
     private boolean repeat;
     private int currentIndex;
+    private long shuffleSeed; // Определяет порядок перемешивания (см. ShuffleOrder)
+    private SmartRules rules; // Правила умного плейлиста, null - обычный плейлист
     private transient List<CustomMusicTrack> tracks;
+    private transient ShuffleOrder shuffleOrder; // Создаётся при первом переходе в режиме перемешивания
+    private transient SmartPlaylistView smartView; // Источник треков умного плейлиста, подключает PlaylistManager
+    private transient long smartViewVersion; // Версия smartView, треки которой в tracks
+    private transient BodyReader pendingBody; // Не null - треки ещё не прочитаны, известно только их количество
+    private transient int trackCount;
 
     public Playlist(String name) {
         this.name = name;
         this.trackNames = new ArrayList<>();
+        this.trackIds = new ArrayList<>();
         this.shuffle = false;
         this.repeat = true;
         this.currentIndex = 0;
+        this.shuffleSeed = ThreadLocalRandom.current().nextLong();
         this.tracks = new ArrayList<>();
     }
 
+    /**
+     * Независимая копия плейлиста. Опубликованные в PlaylistManager версии не изменяются,
+     * изменения делаются в копии, которая затем публикуется как новая версия
+     */
+    public synchronized Playlist copy() {
+        Playlist copy = new Playlist(name);
+        if (pendingBody != null) {
+            // Список треков ещё не прочитан - копия дочитает его сама
+            copy.pendingBody = pendingBody;
+            copy.trackCount = trackCount;
+        } else {
+            copy.trackNames = new ArrayList<>(trackNames);
+            copy.trackIds = new ArrayList<>(trackIds);
+        }
+        copy.shuffle = shuffle;
+        copy.repeat = repeat;
+        copy.currentIndex = currentIndex;
+        copy.shuffleSeed = shuffleSeed;
+        copy.rules = rules;
+        // Треки умного плейлиста - неизменяемая версия из представления, её можно не копировать
+        copy.tracks = rules != null ? getTracks() : new ArrayList<>(getTracks());
+        return copy;
+    }
+
     public String getName() {
         return name;
     }
@@ -35,11 +86,100 @@ public class Playlist {
     }
 
     public List<String> getTrackNames() {
+        readBody();
         return trackNames;
     }
 
     public void setTrackNames(List<String> trackNames) {
+        this.pendingBody = null;
+        this.shuffleOrder = null;
         this.trackNames = trackNames;
+        this.trackIds = new ArrayList<>();
+    }
+
+    public List<String> getTrackIds() {
+        readBody();
+        return trackIds;
+    }
+
+    /**
+     * Количество треков в плейлисте. Для плейлиста, загруженного только с заголовком,
+     * не читает список треков
+     */
+    public int getTrackCount() {
+        if (rules != null) {
+            return tracks != null ? tracks.size() : 0;
+        }
+        return pendingBody != null ? trackCount : trackNames.size();
+    }
+
+    /**
+     * Умный плейлист: треки выбираются из библиотеки по правилам, а не перечисляются
+     */
+    public boolean isSmart() {
+        return rules != null;
+    }
+
+    public SmartRules getRules() {
+        return rules;
+    }
+
+    public void setRules(SmartRules rules) {
+        this.rules = rules;
+        this.smartView = null;
+        this.shuffleOrder = null;
+    }
+
+    SmartPlaylistView getSmartView() {
+        return smartView;
+    }
+
+    /**
+     * Подключает представление и берёт его текущую версию треков. Вызывается один раз,
+     * до публикации экземпляра: опубликованный плейлист не меняется вместе с представлением,
+     * новые треки приходят с новым экземпляром (см. isSmartViewChanged())
+     */
+    void setSmartView(SmartPlaylistView smartView) {
+        SmartPlaylistView.Matches matches = smartView.getMatches();
+        this.smartView = smartView;
+        this.smartViewVersion = matches.version;
+        this.tracks = matches.tracks;
+        this.shuffleOrder = null;
+    }
+
+    /**
+     * Треки представления изменились после публикации этого экземпляра
+     */
+    boolean isSmartViewChanged() {
+        SmartPlaylistView view = smartView;
+        return view != null && view.getVersion() != smartViewVersion;
+    }
+
+    /**
+     * Загружен ли плейлист только с заголовком (имя, настройки, количество треков)
+     */
+    public boolean isHeaderOnly() {
+        return pendingBody != null;
+    }
+
+    void setPendingBody(BodyReader body) {
+        this.pendingBody = body;
+    }
+
+    // Опубликованные версии читаются из разных потоков, список треков дочитывается один раз
+    private synchronized void readBody() {
+        BodyReader body = pendingBody;
+        if (body == null) {
+            return;
+        }
+        pendingBody = null;
+        try {
+            Playlist full = body.read();
+            this.trackNames = full.trackNames;
+            this.trackIds = full.trackIds;
+        } catch (IOException e) {
+            LOGGER.error("Ошибка при чтении треков плейлиста: {}", name, e);
+        }
     }
 
     public boolean isShuffle() {
@@ -48,6 +188,7 @@ public class Playlist {
 
     public void setShuffle(boolean shuffle) {
         this.shuffle = shuffle;
+        this.shuffleOrder = null;
     }
 
     public boolean isRepeat() {
@@ -67,37 +208,100 @@ public class Playlist {
     }
 
     public List<CustomMusicTrack> getTracks() {
+        if (rules != null) {
+            return tracks != null ? tracks : List.of(); // Версия из setSmartView() или из copy()
+        }
         return tracks;
     }
 
     public void setTracks(List<CustomMusicTrack> tracks) {
+        this.pendingBody = null;
+        this.shuffleOrder = null;
         this.tracks = tracks;
         this.trackNames = new ArrayList<>();
+        this.trackIds = new ArrayList<>();
         for (CustomMusicTrack track : tracks) {
             this.trackNames.add(track.getName());
+            this.trackIds.add(track.getId());
+        }
+    }
+
+    /**
+     * Находит треки плейлиста в библиотеке: сначала по идентификатору содержимого,
+     * чтобы переименованные и перемещённые файлы не терялись, затем по имени файла
+     */
+    public void resolveTracks(LibrarySnapshot library) {
+        if (rules != null) {
+            return; // Треки умного плейлиста поддерживает SmartPlaylistView
         }
+        readBody();
+        List<CustomMusicTrack> resolved = new ArrayList<>(trackNames.size());
+        List<String> names = new ArrayList<>(trackNames.size());
+        List<String> ids = new ArrayList<>(trackNames.size());
+        for (int i = 0; i < trackNames.size(); i++) {
+            String id = i < trackIds.size() ? trackIds.get(i) : null;
+            Optional<CustomMusicTrack> track = library.getTrackById(id);
+            if (track.isEmpty()) {
+                track = library.getTrackByName(trackNames.get(i));
+            }
+            if (track.isPresent()) {
+                resolved.add(track.get());
+                names.add(track.get().getName());
+                // Отпечаток нового файла может быть ещё не определён - сохраняем прежний идентификатор
+                ids.add(track.get().getId() != null ? track.get().getId() : id);
+            }
+        }
+        this.tracks = resolved;
+        this.shuffleOrder = null;
+        this.trackNames = names;
+        this.trackIds = ids;
     }
 
     public CustomMusicTrack getCurrentTrack() {
-        if (tracks == null || tracks.isEmpty()) {
+        List<CustomMusicTrack> list = getTracks();
+        if (list == null || list.isEmpty()) {
+            return null;
+        }
+        if (currentIndex >= 0 && currentIndex < list.size()) {
+            return list.get(currentIndex);
+        }
+        return list.get(0);
+    }
+
+    /**
+     * Следующий трек плейлиста. Треки с повреждёнными файлами пропускаются.
+     * В режиме перемешивания каждый трек звучит один раз за круг (см. ShuffleOrder)
+     * @return трек или null, если плейлист закончился или в нём нет исправных треков
+     */
+    public CustomMusicTrack getNextTrack() {
+        List<CustomMusicTrack> list = getTracks();
+        if (list == null) {
             return null;
         }
-        if (currentIndex >= 0 && currentIndex < tracks.size()) {
-            return tracks.get(currentIndex);
+        for (int attempt = 0; attempt < list.size(); attempt++) {
+            CustomMusicTrack track = advance();
+            if (track == null || !track.isCorrupt()) {
+                return track;
+            }
         }
-        return tracks.get(0);
+        return null;
     }
 
-    public CustomMusicTrack getNextTrack(Random random) {
-        if (tracks == null || tracks.isEmpty()) {
+    private CustomMusicTrack advance() {
+        List<CustomMusicTrack> list = getTracks();
+        if (list == null || list.isEmpty()) {
             return null;
         }
         
         if (shuffle) {
-            currentIndex = random.nextInt(tracks.size());
+            int index = shuffleOrder(list.size()).next(repeat);
+            if (index < 0) {
+                return null;
+            }
+            currentIndex = index;
         } else {
             currentIndex++;
-            if (currentIndex >= tracks.size()) {
+            if (currentIndex >= list.size()) {
                 if (repeat) {
                     currentIndex = 0;
                 } else {
@@ -108,24 +312,42 @@ public class Playlist {
         
         return getCurrentTrack();
     }
-    
-    public CustomMusicTrack getNextTrack() {
-        return getNextTrack(new Random());
-    }
 
+    /**
+     * Предыдущий трек. В режиме перемешивания - предыдущий по истории текущего круга
+     * @return трек или null, если возвращаться некуда
+     */
     public CustomMusicTrack getPreviousTrack() {
-        if (tracks == null || tracks.isEmpty()) {
+        List<CustomMusicTrack> list = getTracks();
+        if (list == null) {
+            return null;
+        }
+        for (int attempt = 0; attempt < list.size(); attempt++) {
+            CustomMusicTrack track = retreat();
+            if (track == null || !track.isCorrupt()) {
+                return track;
+            }
+        }
+        return null;
+    }
+
+    private CustomMusicTrack retreat() {
+        List<CustomMusicTrack> list = getTracks();
+        if (list == null || list.isEmpty()) {
             return null;
         }
         
         if (shuffle) {
-            Random random = new Random();
-            currentIndex = random.nextInt(tracks.size());
+            int index = shuffleOrder(list.size()).previous();
+            if (index < 0) {
+                return null;
+            }
+            currentIndex = index;
         } else {
             currentIndex--;
             if (currentIndex < 0) {
                 if (repeat) {
-                    currentIndex = tracks.size() - 1;
+                    currentIndex = list.size() - 1;
                 } else {
                     return null;
                 }
@@ -135,12 +357,37 @@ public class Playlist {
         return getCurrentTrack();
     }
 
+    private ShuffleOrder shuffleOrder(int size) {
+        if (shuffleOrder == null || shuffleOrder.size() != size) {
+            shuffleOrder = new ShuffleOrder(size, shuffleSeed);
+        }
+        return shuffleOrder;
+    }
+
+    /**
+     * Начинает новый круг перемешивания с трека, который уже играет, чтобы он не прозвучал
+     * снова в этом круге (например, после изменения активного плейлиста)
+     */
+    public void continueShuffleFrom(int index) {
+        List<CustomMusicTrack> list = getTracks();
+        if (shuffle && index >= 0 && index < list.size()) {
+            shuffleOrder = new ShuffleOrder(list.size(), shuffleSeed);
+            shuffleOrder.startAt(index);
+            currentIndex = index;
+        }
+    }
+
     public JsonObject toJson() {
+        readBody();
         JsonObject json = new JsonObject();
         json.addProperty("name", name);
         json.addProperty("shuffle", shuffle);
         json.addProperty("repeat", repeat);
         json.addProperty("currentIndex", currentIndex);
+        json.addProperty("shuffleSeed", shuffleSeed);
+        if (rules != null) {
+            json.add("rules", rules.toJson());
+        }
         
         JsonArray tracksArray = new JsonArray();
         for (String trackName : trackNames) {
@@ -148,6 +395,12 @@ public class Playlist {
         }
         json.add("tracks", tracksArray);
         
+        JsonArray idsArray = new JsonArray();
+        for (String trackId : trackIds) {
+            idsArray.add(trackId);
+        }
+        json.add("trackIds", idsArray);
+        
         return json;
     }
 
@@ -156,15 +409,104 @@ public class Playlist {
         playlist.setShuffle(json.has("shuffle") && json.get("shuffle").getAsBoolean());
         playlist.setRepeat(json.has("repeat") && json.get("repeat").getAsBoolean());
         playlist.setCurrentIndex(json.has("currentIndex") ? json.get("currentIndex").getAsInt() : 0);
+        if (json.has("shuffleSeed")) {
+            playlist.shuffleSeed = json.get("shuffleSeed").getAsLong();
+        }
+        if (json.has("rules")) {
+            playlist.rules = SmartRules.fromJson(json.getAsJsonObject("rules"));
+        }
         
-        JsonArray tracksArray = json.getAsJsonArray("tracks");
+        // У умных плейлистов списка треков может не быть
+        JsonArray tracksArray = json.has("tracks") ? json.getAsJsonArray("tracks") : new JsonArray();
         List<String> trackNames = new ArrayList<>();
         for (int i = 0; i < tracksArray.size(); i++) {
             trackNames.add(tracksArray.get(i).getAsString());
         }
         playlist.setTrackNames(trackNames);
         
+        // Старые плейлисты без идентификаторов находят треки по имени
+        if (json.has("trackIds")) {
+            JsonArray idsArray = json.getAsJsonArray("trackIds");
+            for (int i = 0; i < idsArray.size(); i++) {
+                playlist.trackIds.add(idsArray.get(i).isJsonNull() ? null : idsArray.get(i).getAsString());
+            }
+        }
+        
         return playlist;
     }
-}
 
+    /**
+     * Читает плейлист потоково, без построения дерева JSON
+     * @param headerOnly прочитать только имя, настройки и количество треков;
+     *                   список треков дочитывается через setPendingBody() при первом обращении
+     */
+    static Playlist read(JsonReader reader, boolean headerOnly) throws IOException {
+        String name = null;
+        boolean shuffle = false;
+        boolean repeat = false;
+        int currentIndex = 0;
+        Long shuffleSeed = null;
+        SmartRules rules = null;
+        int count = 0;
+        List<String> names = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "name" -> name = reader.nextString();
+                case "shuffle" -> shuffle = reader.nextBoolean();
+                case "repeat" -> repeat = reader.nextBoolean();
+                case "currentIndex" -> currentIndex = reader.nextInt();
+                case "shuffleSeed" -> shuffleSeed = reader.nextLong();
+                case "rules" -> rules = SmartRules.fromJson(JsonParser.parseReader(reader).getAsJsonObject());
+                case "tracks" -> {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        if (headerOnly) {
+                            reader.skipValue();
+                        } else {
+                            names.add(reader.nextString());
+                        }
+                        count++;
+                    }
+                    reader.endArray();
+                }
+                case "trackIds" -> {
+                    if (headerOnly) {
+                        reader.skipValue();
+                        break;
+                    }
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        if (reader.peek() == JsonToken.NULL) {
+                            reader.nextNull();
+                            ids.add(null);
+                        } else {
+                            ids.add(reader.nextString());
+                        }
+                    }
+                    reader.endArray();
+                }
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (name == null) {
+            throw new IOException("В плейлисте нет имени");
+        }
+
+        Playlist playlist = new Playlist(name);
+        playlist.shuffle = shuffle;
+        playlist.repeat = repeat;
+        playlist.currentIndex = currentIndex;
+        if (shuffleSeed != null) {
+            playlist.shuffleSeed = shuffleSeed; // Старые плейлисты получают случайный seed из конструктора
+        }
+        playlist.rules = rules;
+        playlist.trackNames = names;
+        playlist.trackIds = ids;
+        playlist.trackCount = count;
+        return playlist;
+    }
+}
@@ -0,0 +1,10 @@
+package com.audiocontroller.audio;
+
+/**
+ * Получатель изменений списка плейлистов.
+ * Вызывается в потоке, опубликовавшем новую версию, поэтому GUI должен перейти в клиентский поток сам
+ */
+@FunctionalInterface
+public interface PlaylistListener {
+    void onPlaylistsChanged(PlaylistState state);
+}
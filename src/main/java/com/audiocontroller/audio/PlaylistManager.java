@@ -1,7 +1,5 @@
 package com.audiocontroller.audio;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import com.mojang.logging.LogUtils;
@@ -13,20 +11,143 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
+/**
+ * Плейлисты в памяти и их сохранение.
+ * Список плейлистов хранится неизменяемыми версиями (PlaylistState): изменения сериализуются
+ * блокировкой и публикуют новую версию, чтение не блокируется и всегда видит согласованный список
+ */
 public class PlaylistManager {
     private static final Logger LOGGER = LogUtils.getLogger();
     private static final String PLAYLIST_FOLDER = "config/audiocontroller/playlists";
-    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    private static final String PLAYLIST_LOG = "config/audiocontroller/playlists.log";
+    private static final String PLAY_HISTORY_LOG = "config/audiocontroller/play_history.log";
+    private static final String PLAY_HISTORY_STATS = "config/audiocontroller/play_stats.bin";
     
     private final MusicLoader musicLoader;
-    private final Map<String, Playlist> playlists = new HashMap<>();
-    private Playlist currentPlaylist;
+    private final PersistenceWorker persistence = new PersistenceWorker();
+    private final PlaylistStore store;
+    private final List<PlaylistListener> listeners = new CopyOnWriteArrayList<>();
+    private final Object writeLock = new Object();
+    private volatile PlaylistState state = PlaylistState.EMPTY; // Меняется только под writeLock
+    private volatile Playlist currentPlaylist;
+    private volatile boolean loaded;
+    private volatile boolean lazyLoading;
+    private final Map<String, SmartPlaylistView> smartViews = new ConcurrentHashMap<>(); // Изменяется под writeLock
+    private final PlayHistory playHistory = new PlayHistory(Paths.get(PLAY_HISTORY_LOG), Paths.get(PLAY_HISTORY_STATS));
 
     public PlaylistManager(MusicLoader musicLoader) {
+        this(musicLoader, false);
+    }
+
+    /**
+     * @param useLog хранить все плейлисты в одном журнале (LogPlaylistStore) вместо отдельных JSON файлов
+     */
+    public PlaylistManager(MusicLoader musicLoader, boolean useLog) {
         this.musicLoader = musicLoader;
         ensurePlaylistDirectoryExists();
+        this.store = useLog
+            ? new LogPlaylistStore(Paths.get(PLAYLIST_LOG), Paths.get(PLAYLIST_FOLDER), persistence)
+            : new JsonPlaylistStore(Paths.get(PLAYLIST_FOLDER), Paths.get(PLAYLIST_LOG), persistence);
+        // Умные плейлисты обновляются по изменениям библиотеки, без полного пересчёта
+        musicLoader.addListener(this::onLibraryChanged);
+        // Пока история читается, правило "ещё не играл" видит только текущую сессию - потом проверяем заново
+        playHistory.getLoaded().thenRun(() -> {
+            for (SmartPlaylistView view : smartViews.values()) {
+                if (view.getRules().dependsOnPlays()) {
+                    view.initialize(musicLoader.getSnapshot());
+                }
+            }
+            publishSmartChanges();
+        });
+    }
+
+    private void onLibraryChanged(LibraryChange change) {
+        // Новые отпечатки: события, записанные до их появления, переходят в историю трека
+        playHistory.resolvePending();
+        for (SmartPlaylistView view : smartViews.values()) {
+            view.apply(change);
+        }
+        publishSmartChanges();
+    }
+
+    /**
+     * Публикует новые экземпляры умных плейлистов, треки которых изменились.
+     * Слушатели (например, AudioManager со снимком активного плейлиста) узнают об изменении
+     * так же, как о любой другой новой версии плейлиста
+     */
+    private void publishSmartChanges() {
+        synchronized (writeLock) {
+            Map<String, Playlist> next = null;
+            for (Playlist playlist : state.getPlaylists()) {
+                if (playlist.isSmartViewChanged()) {
+                    if (next == null) {
+                        next = new HashMap<>(state.asMap());
+                    }
+                    next.put(playlist.getName(), playlist.copy()); // Новую версию треков подключит publish()
+                }
+            }
+            if (next != null) {
+                publish(next);
+            }
+        }
+    }
+
+    /**
+     * Записывает начало воспроизведения трека в историю и обновляет умные плейлисты
+     * с правилом "ещё не играл"
+     */
+    public void recordPlayed(CustomMusicTrack track) {
+        if (track == null) {
+            return;
+        }
+        boolean firstPlay = playHistory.getPlays(track) == 0;
+        playHistory.record(track, PlayHistory.Event.PLAY);
+        if (firstPlay) {
+            for (SmartPlaylistView view : smartViews.values()) {
+                view.onPlayed(track);
+            }
+            publishSmartChanges();
+        }
+    }
+
+    /**
+     * История прослушивания (начала, пропуски и полные воспроизведения треков)
+     */
+    public PlayHistory getPlayHistory() {
+        return playHistory;
+    }
+
+    /**
+     * Подключает к новым экземплярам умных плейлистов их представления: существующее,
+     * если правила не изменились, иначе новое. Экземпляры, уже опубликованные в state,
+     * не трогаются - их треки зафиксированы при публикации.
+     * Вызывается под writeLock перед публикацией версии
+     */
+    private void attachSmartViews(Map<String, Playlist> playlists) {
+        smartViews.keySet().removeIf(name -> {
+            Playlist playlist = playlists.get(name);
+            return playlist == null || !playlist.isSmart();
+        });
+        for (Playlist playlist : playlists.values()) {
+            if (!playlist.isSmart()) {
+                continue;
+            }
+            SmartPlaylistView view = smartViews.get(playlist.getName());
+            if (view == null || !view.getRules().equals(playlist.getRules())) {
+                view = new SmartPlaylistView(playlist.getRules(), musicLoader.getMusicDirectory(),
+                    track -> playHistory.getPlays(track) > 0);
+                smartViews.put(playlist.getName(), view);
+                view.initialize(musicLoader.getSnapshot());
+            }
+            if (playlist.getSmartView() != view && state.asMap().get(playlist.getName()) != playlist) {
+                playlist.setSmartView(view);
+            }
+        }
     }
 
     private void ensurePlaylistDirectoryExists() {
@@ -41,107 +162,207 @@ public class PlaylistManager {
         }
     }
 
+    /**
+     * Загружать только заголовки плейлистов (имя, настройки, количество треков).
+     * Треки читаются и ищутся в библиотеке при открытии или выборе плейлиста
+     */
+    public void setLazyLoading(boolean lazyLoading) {
+        this.lazyLoading = lazyLoading;
+    }
+
     public CompletableFuture<Void> loadPlaylists() {
-        return CompletableFuture.runAsync(() -> {
+        PlaylistState before = state;
+        // Сначала дописываем отложенные изменения, иначе чтение вернёт старые версии
+        return persistence.flush().thenRunAsync(() -> {
             try {
-                playlists.clear();
-                Path playlistDir = Paths.get(PLAYLIST_FOLDER);
-                
-                if (!Files.exists(playlistDir)) {
-                    ensurePlaylistDirectoryExists();
-                    return;
+                boolean headerOnly = lazyLoading;
+                List<Playlist> stored = store.loadAll(headerOnly);
+
+                if (!headerOnly) {
+                    // Один снимок библиотеки на всю загрузку: поиск трека по отпечатку и имени - O(1)
+                    LibrarySnapshot library = musicLoader.getSnapshot();
+                    stored.parallelStream().forEach(playlist -> playlist.resolveTracks(library));
                 }
 
-                Files.list(playlistDir)
-                    .filter(path -> path.toString().endsWith(".json"))
-                    .forEach(path -> {
-                        try {
-                            String jsonContent = Files.readString(path);
-                            JsonObject json = GSON.fromJson(jsonContent, JsonObject.class);
-                            Playlist playlist = Playlist.fromJson(json);
-                            
-                            // Загружаем треки из имен
-                            List<CustomMusicTrack> tracks = new ArrayList<>();
-                            for (String trackName : playlist.getTrackNames()) {
-                                musicLoader.getTrackByName(trackName).ifPresent(tracks::add);
-                            }
-                            playlist.setTracks(tracks);
-                            
-                            playlists.put(playlist.getName(), playlist);
-                            LOGGER.debug("Загружен плейлист: {}", playlist.getName());
-                        } catch (IOException e) {
-                            LOGGER.error("Ошибка при загрузке плейлиста: {}", path, e);
+                Map<String, Playlist> loadedPlaylists = new HashMap<>();
+                for (Playlist playlist : stored) {
+                    loadedPlaylists.put(playlist.getName(), playlist);
+                }
+                synchronized (writeLock) {
+                    // Изменения, опубликованные во время чтения, новее прочитанного с диска
+                    Map<String, Playlist> current = state.asMap();
+                    for (Map.Entry<String, Playlist> entry : current.entrySet()) {
+                        if (before.asMap().get(entry.getKey()) != entry.getValue()) {
+                            loadedPlaylists.put(entry.getKey(), entry.getValue());
                         }
-                    });
-
-                LOGGER.info("Загружено плейлистов: {}", playlists.size());
+                    }
+                    for (String name : before.asMap().keySet()) {
+                        if (!current.containsKey(name)) {
+                            loadedPlaylists.remove(name);
+                        }
+                    }
+                    loaded = true;
+                    publish(loadedPlaylists);
+                }
+                LOGGER.info("Загружено плейлистов: {}", loadedPlaylists.size());
             } catch (IOException e) {
-                LOGGER.error("Ошибка при сканировании папки с плейлистами", e);
+                LOGGER.error("Ошибка при чтении плейлистов", e);
             }
         });
     }
 
-    public CompletableFuture<Void> savePlaylist(Playlist playlist) {
-        return CompletableFuture.runAsync(() -> {
+    /**
+     * Загружены ли плейлисты хотя бы раз. После загрузки список в памяти всегда актуален
+     * и перечитывать хранилище не нужно
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Текущая версия списка плейлистов
+     */
+    public PlaylistState getState() {
+        return state;
+    }
+
+    /**
+     * Подписывается на новые версии списка плейлистов
+     */
+    public void addListener(PlaylistListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(PlaylistListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Публикует новую версию. Вызывается под writeLock
+     */
+    private PlaylistState publish(Map<String, Playlist> playlists) {
+        attachSmartViews(playlists);
+        PlaylistState next = new PlaylistState(state.getVersion() + 1, playlists);
+        state = next;
+        for (PlaylistListener listener : listeners) {
             try {
-                Path playlistDir = Paths.get(PLAYLIST_FOLDER);
-                ensurePlaylistDirectoryExists();
-                
-                String fileName = playlist.getName().replaceAll("[^a-zA-Z0-9_]", "_") + ".json";
-                Path filePath = playlistDir.resolve(fileName);
-                
-                JsonObject json = playlist.toJson();
-                String jsonContent = GSON.toJson(json);
-                
-                Files.writeString(filePath, jsonContent);
-                playlists.put(playlist.getName(), playlist);
-                
-                LOGGER.info("Плейлист сохранён: {}", playlist.getName());
-            } catch (IOException e) {
-                LOGGER.error("Ошибка при сохранении плейлиста: {}", playlist.getName(), e);
+                listener.onPlaylistsChanged(next);
+            } catch (Exception e) {
+                LOGGER.error("Ошибка в обработчике изменения плейлистов", e);
             }
-        });
+        }
+        return next;
+    }
+
+    /**
+     * Сохраняет плейлист как новую версию. Изменения сразу видны в памяти, на диск они записываются
+     * в фоне (см. PersistenceWorker), поэтому метод не блокирует вызывающий поток.
+     * После вызова плейлист принадлежит PlaylistManager и не должен изменяться - для дальнейших
+     * изменений нужна копия (Playlist.copy()) или update()
+     * @return future, который завершается после записи на диск
+     */
+    public CompletableFuture<Void> savePlaylist(Playlist playlist) {
+        String name = playlist.getName();
+        CompletableFuture<Void> written;
+        synchronized (writeLock) {
+            Map<String, Playlist> next = new HashMap<>(state.asMap());
+            next.put(name, playlist);
+            publish(next);
+            // Снимок содержимого делается сразу, сериализация и запись - в потоке записи.
+            // Под блокировкой, чтобы записи одного плейлиста попадали на диск в порядке версий
+            written = store.put(name, playlist.toJson());
+        }
+        return written.thenRun(() -> LOGGER.info("Плейлист сохранён: {}", name));
+    }
+
+    /**
+     * Изменяет плейлист: копирует текущую версию, применяет к копии mutator и публикует результат
+     * @return новая версия или empty, если плейлиста нет
+     */
+    public Optional<Playlist> update(String name, Consumer<Playlist> mutator) {
+        synchronized (writeLock) {
+            Playlist current = state.asMap().get(name);
+            if (current == null) {
+                return Optional.empty();
+            }
+            Playlist updated = current.copy();
+            mutator.accept(updated);
+            if (!updated.getName().equals(name)) {
+                throw new IllegalArgumentException("Переименование плейлиста через update не поддерживается: " + name);
+            }
+            savePlaylist(updated);
+            return Optional.of(updated);
+        }
     }
 
     public CompletableFuture<Void> deletePlaylist(String name) {
-        return CompletableFuture.runAsync(() -> {
-            try {
-                Path playlistDir = Paths.get(PLAYLIST_FOLDER);
-                String fileName = name.replaceAll("[^a-zA-Z0-9_]", "_") + ".json";
-                Path filePath = playlistDir.resolve(fileName);
-                
-                if (Files.exists(filePath)) {
-                    Files.delete(filePath);
-                    playlists.remove(name);
-                    if (currentPlaylist != null && currentPlaylist.getName().equals(name)) {
-                        currentPlaylist = null;
-                    }
-                    LOGGER.info("Плейлист удалён: {}", name);
-                }
-            } catch (IOException e) {
-                LOGGER.error("Ошибка при удалении плейлиста: {}", name, e);
+        CompletableFuture<Void> removed;
+        synchronized (writeLock) {
+            Map<String, Playlist> next = new HashMap<>(state.asMap());
+            next.remove(name);
+            Playlist current = currentPlaylist;
+            if (current != null && current.getName().equals(name)) {
+                currentPlaylist = null;
             }
+            publish(next);
+            removed = store.remove(name);
+        }
+        return removed.thenRun(() -> LOGGER.info("Плейлист удалён: {}", name));
+    }
+
+    /**
+     * Выгружает все плейлисты в папку в виде JSON файлов (формат папки playlists)
+     */
+    public CompletableFuture<Void> exportPlaylists(Path directory) {
+        Map<String, JsonObject> snapshot = new HashMap<>();
+        for (Playlist playlist : state.getPlaylists()) {
+            snapshot.put(playlist.getName(), playlist.toJson());
+        }
+        return persistence.schedule("export:" + directory.toAbsolutePath(), () -> {
+            JsonPlaylistStore.writeDirectory(directory, snapshot);
+            LOGGER.info("Плейлисты выгружены в {}: {}", directory, snapshot.size());
         });
     }
 
+    /**
+     * Фоновая запись файлов. Используется также для других настроек плейлистов (активный плейлист)
+     */
+    PersistenceWorker getPersistence() {
+        return persistence;
+    }
+
+    /**
+     * Дописывает отложенные изменения на диск
+     */
+    public void shutdown() {
+        persistence.shutdown();
+        playHistory.shutdown();
+        store.close();
+    }
+
     public Playlist createPlaylist(String name) {
-        if (playlists.containsKey(name)) {
-            LOGGER.warn("Плейлист с именем {} уже существует", name);
-            return playlists.get(name);
+        synchronized (writeLock) {
+            Optional<Playlist> existing = state.getPlaylist(name);
+            if (existing.isPresent()) {
+                LOGGER.warn("Плейлист с именем {} уже существует", name);
+                return existing.get();
+            }
+
+            Playlist playlist = new Playlist(name);
+            savePlaylist(playlist);
+            return playlist;
         }
-        
-        Playlist playlist = new Playlist(name);
-        playlists.put(name, playlist);
-        savePlaylist(playlist);
-        return playlist;
     }
 
+    /**
+     * Плейлисты текущей версии, отсортированные по имени. Список неизменяемый
+     */
     public List<Playlist> getPlaylists() {
-        return new ArrayList<>(playlists.values());
+        return state.getPlaylists();
     }
 
     public Optional<Playlist> getPlaylist(String name) {
-        return Optional.ofNullable(playlists.get(name));
+        return state.getPlaylist(name);
     }
 
     public void setCurrentPlaylist(Playlist playlist) {
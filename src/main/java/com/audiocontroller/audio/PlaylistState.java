@@ -0,0 +1,58 @@
+package com.audiocontroller.audio;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Неизменяемая версия списка плейлистов (см. PlaylistManager.getState()).
+ * Каждое изменение публикует новую версию с большим номером, поэтому читатели
+ * получают согласованный список без блокировок. Плейлисты внутри версии не изменяются -
+ * для изменения нужна копия (Playlist.copy()) или PlaylistManager.update()
+ */
+public final class PlaylistState {
+    static final PlaylistState EMPTY = new PlaylistState(0, Map.of());
+
+    private final long version;
+    private final Map<String, Playlist> byName;
+    private final List<Playlist> playlists;
+
+    PlaylistState(long version, Map<String, Playlist> byName) {
+        this.version = version;
+        this.byName = Collections.unmodifiableMap(new HashMap<>(byName));
+        List<Playlist> sorted = new ArrayList<>(byName.values());
+        sorted.sort(Comparator.comparing(Playlist::getName, String.CASE_INSENSITIVE_ORDER));
+        this.playlists = Collections.unmodifiableList(sorted);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Плейлисты, отсортированные по имени
+     */
+    public List<Playlist> getPlaylists() {
+        return playlists;
+    }
+
+    public Optional<Playlist> getPlaylist(String name) {
+        return Optional.ofNullable(byName.get(name));
+    }
+
+    public boolean contains(String name) {
+        return byName.containsKey(name);
+    }
+
+    public int size() {
+        return playlists.size();
+    }
+
+    Map<String, Playlist> asMap() {
+        return byName;
+    }
+}
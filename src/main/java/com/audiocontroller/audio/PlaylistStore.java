@@ -0,0 +1,37 @@
+package com.audiocontroller.audio;
+
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Хранилище плейлистов на диске. Плейлисты в памяти держит PlaylistManager,
+ * хранилище только читает их при загрузке и записывает изменения в фоне
+ */
+interface PlaylistStore {
+
+    /**
+     * Читает все сохранённые плейлисты. Треки плейлистов не ищутся в библиотеке (см. Playlist.resolveTracks())
+     * @param headerOnly читать только заголовки, списки треков дочитываются при первом обращении
+     */
+    List<Playlist> loadAll(boolean headerOnly) throws IOException;
+
+    /**
+     * Ставит сохранение плейлиста в очередь
+     * @param json снимок плейлиста, хранилище не должно его изменять
+     * @return future, который завершается после записи на диск
+     */
+    CompletableFuture<Void> put(String name, JsonObject json);
+
+    /**
+     * Ставит удаление плейлиста в очередь
+     */
+    CompletableFuture<Void> remove(String name);
+
+    /**
+     * Освобождает ресурсы хранилища. Вызывается после того, как все изменения записаны
+     */
+    void close();
+}
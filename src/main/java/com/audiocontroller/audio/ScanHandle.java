@@ -0,0 +1,138 @@
+package com.audiocontroller.audio;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Запущенное сканирование папки с музыкой (см. MusicLoader.scanMusicFiles()).
+ * Найденные треки публикуются порциями во время обхода, поэтому handle нужен в первую очередь
+ * для прогресса и отмены. Прогресс обновляется потоками обхода и читается из любого потока
+ */
+public final class ScanHandle {
+    private final long generation;
+    private volatile long expectedFiles;
+    private final long startNanos = System.nanoTime();
+    private final AtomicLong filesVisited = new AtomicLong();
+    private final AtomicLong bytesVisited = new AtomicLong();
+    private final CompletableFuture<Void> future = new CompletableFuture<>();
+    private volatile boolean cancelled;
+    private volatile long finishNanos;
+
+    ScanHandle(long generation) {
+        this.generation = generation;
+    }
+
+    /**
+     * Задаётся в начале обхода в потоке загрузчика, когда каталог уже восстановлен
+     * @param expectedFiles ожидаемое количество файлов (размер библиотеки до сканирования), 0 - неизвестно
+     */
+    void setExpectedFiles(long expectedFiles) {
+        this.expectedFiles = expectedFiles;
+    }
+
+    /**
+     * Ожидаемое количество файлов по библиотеке до сканирования, 0 - неизвестно.
+     * Это приблизительное значение: файлы могли добавиться или исчезнуть
+     */
+    public long getExpectedFiles() {
+        return expectedFiles;
+    }
+
+    /**
+     * Номер сканирования, каждое новое сканирование получает больший номер
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Завершается, когда сканирование закончено. Если сканирование вытеснено более новым,
+     * завершается вместе с ним; если отменено через cancel() - завершается с CancellationException
+     */
+    public CompletableFuture<Void> getFuture() {
+        return future;
+    }
+
+    /**
+     * Останавливает обход. Уже опубликованные треки остаются в библиотеке,
+     * а треки, до которых обход не дошёл, не удаляются
+     */
+    public void cancel() {
+        cancelled = true;
+        future.completeExceptionally(new CancellationException("Сканирование отменено"));
+    }
+
+    /**
+     * Останавливает обход в пользу более нового сканирования
+     */
+    void supersede(ScanHandle next) {
+        cancelled = true;
+        next.future.whenComplete((result, error) -> {
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(null);
+            }
+        });
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isDone() {
+        return finishNanos != 0;
+    }
+
+    void onFileVisited(long size) {
+        filesVisited.incrementAndGet();
+        bytesVisited.addAndGet(size);
+    }
+
+    void finish(Throwable error) {
+        finishNanos = System.nanoTime();
+        if (cancelled) {
+            return; // Future завершит cancel() или вытеснившее сканирование
+        }
+        if (error != null) {
+            future.completeExceptionally(error);
+        } else {
+            future.complete(null);
+        }
+    }
+
+    /**
+     * Количество найденных музыкальных файлов
+     */
+    public long getFilesVisited() {
+        return filesVisited.get();
+    }
+
+    /**
+     * Суммарный размер найденных файлов в байтах
+     */
+    public long getBytesVisited() {
+        return bytesVisited.get();
+    }
+
+    public long getElapsedMillis() {
+        long end = finishNanos != 0 ? finishNanos : System.nanoTime();
+        return (end - startNanos) / 1_000_000;
+    }
+
+    /**
+     * Грубая оценка оставшегося времени по скорости обхода и размеру библиотеки до сканирования.
+     * Скорость обхода неравномерна (кэш файловой системы, размер папок), поэтому в интерфейсе
+     * значение показывается как примерное
+     * @return миллисекунды или -1, если оценить нельзя (первое сканирование или библиотека выросла)
+     */
+    public long getEtaMillis() {
+        long visited = filesVisited.get();
+        long expectedFiles = this.expectedFiles;
+        if (isDone() || expectedFiles <= 0 || visited == 0 || visited >= expectedFiles) {
+            return -1;
+        }
+        return getElapsedMillis() * (expectedFiles - visited) / visited;
+    }
+}
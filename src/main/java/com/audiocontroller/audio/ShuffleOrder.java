@@ -0,0 +1,98 @@
+package com.audiocontroller.audio;
+
+import java.util.SplittableRandom;
+
+/**
+ * Порядок воспроизведения плейлиста в режиме перемешивания.
+ * Перестановка Фишера-Йетса строится лениво, по одному шагу на каждый следующий трек,
+ * поэтому каждый трек звучит ровно один раз за круг, а следующий и предыдущий трек - O(1).
+ * Уже выбранная часть перестановки служит историей для перехода назад.
+ * На новом круге первым не выбирается трек, которым закончился предыдущий.
+ * Порядок определяется seed, поэтому одинаковый seed даёт одинаковую последовательность.
+ * Память - один int[] на размер плейлиста
+ */
+final class ShuffleOrder {
+    // order[i] == 0 - позиция ещё не тронута и содержит i, иначе содержит order[i] - 1.
+    // Так массив не нужно заполнять заранее
+    private final int[] order;
+    private final SplittableRandom random;
+    private int cycle;
+    private int generated; // Выбранная часть перестановки текущего круга: позиции [0, generated)
+    private int position = -1; // Позиция текущего трека
+
+    ShuffleOrder(int size, long seed) {
+        this.order = new int[size];
+        this.random = new SplittableRandom(seed);
+    }
+
+    int size() {
+        return order.length;
+    }
+
+    /**
+     * Начинает круг с уже играющего трека: он считается сыгранным и не повторится до следующего круга
+     */
+    void startAt(int index) {
+        if (generated > 0 || index < 0 || index >= order.length) {
+            return;
+        }
+        swap(0, index);
+        generated = 1;
+        position = 0;
+    }
+
+    /**
+     * Переходит к следующему треку
+     * @param repeat начинать новый круг, когда все треки сыграны
+     * @return индекс трека в плейлисте или -1, если круг закончен и повтора нет
+     */
+    int next(boolean repeat) {
+        int size = order.length;
+        if (size == 0) {
+            return -1;
+        }
+        if (position + 1 < generated) {
+            return get(++position); // Возвращаемся вперёд по истории
+        }
+        if (generated == size) {
+            if (!repeat) {
+                return -1;
+            }
+            cycle++;
+            generated = 0;
+        }
+
+        int i = generated;
+        int bound = size - i;
+        if (i == 0 && cycle > 0 && size > 1) {
+            bound--; // Последний трек прошлого круга стоит в конце массива - исключаем его
+        }
+        swap(i, i + random.nextInt(bound));
+        generated++;
+        position = i;
+        return get(i);
+    }
+
+    /**
+     * Переходит к предыдущему треку текущего круга
+     * @return индекс трека или -1, если текущий трек первый в круге
+     */
+    int previous() {
+        if (position <= 0) {
+            return -1;
+        }
+        return get(--position);
+    }
+
+    private int get(int i) {
+        int value = order[i];
+        return value == 0 ? i : value - 1;
+    }
+
+    private void swap(int i, int j) {
+        int a = get(i);
+        int b = get(j);
+        order[i] = b + 1;
+        order[j] = a + 1;
+    }
+}
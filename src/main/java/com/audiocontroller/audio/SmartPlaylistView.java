@@ -0,0 +1,126 @@
+package com.audiocontroller.audio;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Треки умного плейлиста, поддерживаемые по изменениям библиотеки.
+ * Один раз проверяет всю библиотеку (initialize()), дальше проверяет только добавленные,
+ * удалённые и изменённые треки, поэтому новый файл обрабатывается за O(число правил).
+ * Изменения приходят из потока MusicLoader, чтение - из клиентского потока.
+ * Треки хранятся в неизменяемых структурах с общими частями между версиями, поэтому каждая
+ * версия списка (getMatches()) остаётся неизменной, а новый трек копирует O(log n) узлов,
+ * а не весь список. Каждый опубликованный экземпляр плейлиста получает версию списка один раз,
+ * при публикации (Playlist.setSmartView()), и дальше её не меняет
+ */
+final class SmartPlaylistView {
+    private final SmartRules rules;
+    private final Path musicRoot;
+    private final Predicate<CustomMusicTrack> played;
+    // Поля ниже изменяются под блокировкой this
+    private PersistentSequence<CustomMusicTrack> matches = PersistentSequence.empty(); // В порядке попадания под правила
+    private PersistentHashMap<CustomMusicTrack, Long> keys = PersistentHashMap.empty(); // Ключ трека в matches
+    private long nextKey;
+    private long version;
+
+    /**
+     * Версия списка треков вместе с её номером
+     */
+    static final class Matches {
+        final List<CustomMusicTrack> tracks; // Неизменяемый
+        final long version;
+
+        Matches(List<CustomMusicTrack> tracks, long version) {
+            this.tracks = tracks;
+            this.version = version;
+        }
+    }
+
+    SmartPlaylistView(SmartRules rules, Path musicRoot, Predicate<CustomMusicTrack> played) {
+        this.rules = rules;
+        this.musicRoot = musicRoot.toAbsolutePath().normalize();
+        this.played = played;
+    }
+
+    /**
+     * Проверяет всю библиотеку. Вызывается после подписки на изменения, поэтому изменение,
+     * опубликованное в это время, либо уже есть в снимке, либо будет применено после
+     */
+    synchronized void initialize(LibrarySnapshot library) {
+        for (CustomMusicTrack track : library.getTracks()) {
+            evaluate(track);
+        }
+    }
+
+    SmartRules getRules() {
+        return rules;
+    }
+
+    /**
+     * Применяет изменение библиотеки. Повторное применение того же изменения ничего не меняет
+     */
+    synchronized void apply(LibraryChange change) {
+        for (CustomMusicTrack track : change.getRemoved()) {
+            if (remove(track)) {
+                version++;
+            }
+        }
+        for (CustomMusicTrack track : change.getAdded()) {
+            evaluate(track);
+        }
+        for (CustomMusicTrack track : change.getModified()) {
+            evaluate(track);
+        }
+    }
+
+    /**
+     * Трек был воспроизведён: проверяем заново, если правила зависят от истории
+     */
+    synchronized void onPlayed(CustomMusicTrack track) {
+        if (rules.dependsOnPlays() && keys.containsKey(track)) {
+            evaluate(track);
+        }
+    }
+
+    private void evaluate(CustomMusicTrack track) {
+        boolean changed = rules.matches(track, musicRoot, played) ? add(track) : remove(track);
+        if (changed) {
+            version++;
+        }
+    }
+
+    private boolean add(CustomMusicTrack track) {
+        if (keys.containsKey(track)) {
+            return false;
+        }
+        long key = nextKey++;
+        matches = matches.put(key, track);
+        keys = keys.put(track, key);
+        return true;
+    }
+
+    private boolean remove(CustomMusicTrack track) {
+        Long key = keys.get(track);
+        if (key == null) {
+            return false;
+        }
+        matches = matches.remove(key);
+        keys = keys.remove(track);
+        return true;
+    }
+
+    /**
+     * Текущая версия треков. Список не копируется и не меняется при следующих изменениях представления
+     */
+    synchronized Matches getMatches() {
+        return new Matches(matches.asList(), version);
+    }
+
+    /**
+     * Номер изменения: растёт при каждом добавлении или удалении трека
+     */
+    synchronized long getVersion() {
+        return version;
+    }
+}
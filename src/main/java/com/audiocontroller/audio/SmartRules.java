@@ -0,0 +1,153 @@
+package com.audiocontroller.audio;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Правила умного плейлиста. Трек попадает в плейлист, если выполняются все заданные условия.
+ * Хранятся в JSON плейлиста в объекте "rules":
+ * {"folder": "boss/", "minDuration": 180, "maxDuration": 600, "artists": ["..."], "neverPlayed": true}
+ */
+public final class SmartRules {
+    private final String folder; // Начало пути относительно папки с музыкой, с '/' на конце; null - любая папка
+    private final long minDurationSeconds; // -1 - без ограничения
+    private final long maxDurationSeconds; // -1 - без ограничения
+    private final Set<String> artists; // В нижнем регистре, пустое - любой исполнитель
+    private final boolean neverPlayed;
+
+    public SmartRules(String folder, long minDurationSeconds, long maxDurationSeconds,
+                      Collection<String> artists, boolean neverPlayed) {
+        this.folder = normalizeFolder(folder);
+        this.minDurationSeconds = minDurationSeconds;
+        this.maxDurationSeconds = maxDurationSeconds;
+        Set<String> lowered = new HashSet<>();
+        for (String artist : artists) {
+            lowered.add(artist.trim().toLowerCase(Locale.ROOT));
+        }
+        this.artists = Set.copyOf(lowered);
+        this.neverPlayed = neverPlayed;
+    }
+
+    private static String normalizeFolder(String folder) {
+        if (folder == null) {
+            return null;
+        }
+        String normalized = folder.trim().replace('\\', '/').toLowerCase(Locale.ROOT);
+        while (normalized.startsWith("/")) {
+            normalized = normalized.substring(1);
+        }
+        if (normalized.isEmpty()) {
+            return null;
+        }
+        return normalized.endsWith("/") ? normalized : normalized + "/";
+    }
+
+    /**
+     * Проверяет трек. Треки с ещё не определённой длительностью не проходят условия по длительности -
+     * они будут проверены снова, когда DurationProber её определит
+     * @param musicRoot папка с музыкой, относительно которой проверяется folder
+     * @param played был ли трек уже воспроизведён
+     */
+    boolean matches(CustomMusicTrack track, Path musicRoot, Predicate<CustomMusicTrack> played) {
+        if (folder != null) {
+            Path file = track.getFilePath().toAbsolutePath().normalize();
+            if (!file.startsWith(musicRoot)) {
+                return false;
+            }
+            String relative = musicRoot.relativize(file).toString().replace('\\', '/').toLowerCase(Locale.ROOT);
+            if (!relative.startsWith(folder)) {
+                return false;
+            }
+        }
+        if (minDurationSeconds >= 0 || maxDurationSeconds >= 0) {
+            Duration duration = track.getDuration();
+            if (duration == null) {
+                return false;
+            }
+            long seconds = duration.getSeconds();
+            if ((minDurationSeconds >= 0 && seconds < minDurationSeconds)
+                    || (maxDurationSeconds >= 0 && seconds > maxDurationSeconds)) {
+                return false;
+            }
+        }
+        if (!artists.isEmpty()) {
+            String artist = track.getArtist();
+            if (artist == null || !artists.contains(artist.trim().toLowerCase(Locale.ROOT))) {
+                return false;
+            }
+        }
+        return !neverPlayed || !played.test(track);
+    }
+
+    /**
+     * Зависит ли результат от истории воспроизведения
+     */
+    boolean dependsOnPlays() {
+        return neverPlayed;
+    }
+
+    public JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        if (folder != null) {
+            json.addProperty("folder", folder);
+        }
+        if (minDurationSeconds >= 0) {
+            json.addProperty("minDuration", minDurationSeconds);
+        }
+        if (maxDurationSeconds >= 0) {
+            json.addProperty("maxDuration", maxDurationSeconds);
+        }
+        if (!artists.isEmpty()) {
+            JsonArray array = new JsonArray();
+            artists.stream().sorted().forEach(array::add);
+            json.add("artists", array);
+        }
+        if (neverPlayed) {
+            json.addProperty("neverPlayed", true);
+        }
+        return json;
+    }
+
+    public static SmartRules fromJson(JsonObject json) {
+        Set<String> artists = new HashSet<>();
+        if (json.has("artists")) {
+            for (JsonElement artist : json.getAsJsonArray("artists")) {
+                artists.add(artist.getAsString());
+            }
+        }
+        return new SmartRules(
+            json.has("folder") ? json.get("folder").getAsString() : null,
+            json.has("minDuration") ? json.get("minDuration").getAsLong() : -1,
+            json.has("maxDuration") ? json.get("maxDuration").getAsLong() : -1,
+            artists,
+            json.has("neverPlayed") && json.get("neverPlayed").getAsBoolean());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SmartRules other)) {
+            return false;
+        }
+        return minDurationSeconds == other.minDurationSeconds && maxDurationSeconds == other.maxDurationSeconds
+            && neverPlayed == other.neverPlayed && Objects.equals(folder, other.folder)
+            && artists.equals(other.artists);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(folder, minDurationSeconds, maxDurationSeconds, artists, neverPlayed);
+    }
+}
@@ -0,0 +1,58 @@
+package com.audiocontroller.audio;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Неблокирующая кольцевая очередь для одного производителя и одного потребителя.
+ * Используется для передачи команд из клиентского потока в аудиопоток без блокировок
+ */
+final class SpscQueue<E> {
+    private final Object[] elements;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong(); // Индекс чтения (потребитель)
+    private final AtomicLong tail = new AtomicLong(); // Индекс записи (производитель)
+
+    /**
+     * @param capacity ёмкость очереди, округляется вверх до степени двойки
+     */
+    SpscQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.elements = new Object[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Добавляет элемент в очередь. Вызывается только потоком-производителем
+     * @return false если очередь заполнена
+     */
+    boolean offer(E element) {
+        long t = tail.get();
+        if (t - head.get() >= elements.length) {
+            return false;
+        }
+        elements[(int) (t & mask)] = element;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Извлекает элемент из очереди. Вызывается только потоком-потребителем
+     * @return элемент или null, если очередь пуста
+     */
+    @SuppressWarnings("unchecked")
+    E poll() {
+        long h = head.get();
+        if (h >= tail.get()) {
+            return null;
+        }
+        int index = (int) (h & mask);
+        E element = (E) elements[index];
+        elements[index] = null;
+        head.lazySet(h + 1);
+        return element;
+    }
+
+    boolean isEmpty() {
+        return head.get() >= tail.get();
+    }
+}
@@ -0,0 +1,325 @@
+package com.audiocontroller.audio;
+
+import com.mojang.logging.LogUtils;
+import org.lwjgl.openal.AL10;
+import org.lwjgl.openal.AL11;
+import org.lwjgl.system.MemoryUtil;
+import org.slf4j.Logger;
+
+import java.nio.ShortBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Источник OpenAL с очередью буферов, который воспроизводит PcmStream потоково.
+ * В памяти одновременно находится только BUFFER_COUNT небольших буферов,
+ * независимо от длины трека.
+ *
+ * Источник и буферы берутся из OpenAlPool и возвращаются в него при close().
+ *
+ * Если задан следующий поток (setNext), он декодируется в ту же очередь сразу
+ * после конца текущего, поэтому переход между треками происходит без паузы
+ */
+class StreamingSource {
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    static final int BUFFER_COUNT = 4;
+    static final int BUFFER_FRAMES = 8192; // ~0.19 сек при 44100 Hz на один буфер
+    private static final int MAX_CHANNELS = 2;
+
+    private final OpenAlPool pool;
+    private int source = -1;
+    private final int[] buffers = new int[BUFFER_COUNT];
+    private ShortBuffer pcm;
+    private PcmStream stream;
+    private PcmStream next;
+    private boolean endOfStream = false;
+    private boolean playing = false; // Желаемое состояние: должен ли источник играть
+
+    // Буферы, которые сейчас не стоят в очереди (поток закончился раньше, чем их заполнили)
+    private final int[] idleBuffers = new int[BUFFER_COUNT];
+    private int idleCount = 0;
+
+    // Какому потоку принадлежит каждый буфер в очереди (в порядке очереди)
+    private final PcmStream[] queuedStreams = new PcmStream[BUFFER_COUNT];
+    private final int[] queuedFrames = new int[BUFFER_COUNT];
+    private int queuedHead = 0;
+    private int queuedCount = 0;
+    private PcmStream playingStream;
+    private int transitions = 0;
+    private int lastFillFrames = 0;
+
+    StreamingSource(OpenAlPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Берёт источник и буферы из пула и заполняет очередь первыми порциями звука
+     * @return true если поток готов к воспроизведению
+     */
+    boolean open(PcmStream stream, float gain) {
+        close();
+
+        int pooledSource = pool.acquireSource();
+        if (pooledSource == -1) {
+            LOGGER.error("Нет свободного источника OpenAL в пуле");
+            return false;
+        }
+        if (!pool.acquireBuffers(buffers)) {
+            LOGGER.error("Нет свободных буферов OpenAL в пуле");
+            pool.releaseSource(pooledSource);
+            return false;
+        }
+        source = pooledSource;
+
+        AL10.alSourcef(source, AL10.AL_GAIN, gain);
+
+        if (pcm == null) {
+            pcm = MemoryUtil.memAllocShort(BUFFER_FRAMES * MAX_CHANNELS);
+        }
+
+        this.stream = stream;
+        this.endOfStream = false;
+        this.playingStream = stream;
+        this.transitions = 0;
+        System.arraycopy(buffers, 0, idleBuffers, 0, BUFFER_COUNT);
+        idleCount = BUFFER_COUNT;
+        queueIdleBuffers();
+        return true;
+    }
+
+    /**
+     * Задаёт поток, который начнёт играть сразу после окончания текущего.
+     * Предыдущий заданный следующий поток закрывается
+     */
+    void setNext(PcmStream nextStream) {
+        if (next != null) {
+            next.close();
+        }
+        next = nextStream;
+        if (next != null && endOfStream && canAppend(next)) {
+            // Текущий поток уже дочитан - продолжаем заполнять очередь следующим
+            advanceToNext();
+            queueIdleBuffers();
+        }
+    }
+
+    /**
+     * Можно ли дописать поток в ту же очередь: OpenAL требует одинаковый формат буферов
+     */
+    private boolean canAppend(PcmStream candidate) {
+        return stream != null && candidate.getChannels() == stream.getChannels()
+                && candidate.getSampleRate() == stream.getSampleRate();
+    }
+
+    private void advanceToNext() {
+        stream.close();
+        stream = next;
+        next = null;
+        endOfStream = false;
+        LOGGER.debug("Бесшовный переход к следующему файлу: {}", stream.getFile());
+    }
+
+    /**
+     * Декодирует следующую порцию потока в буфер OpenAL.
+     * При конце текущего потока переходит к следующему, если он совместим
+     * @return false если поток закончился и буфер не заполнен
+     */
+    private boolean fill(int buffer) {
+        if (endOfStream) {
+            return false;
+        }
+        int frames = stream.read(pcm);
+        if (frames <= 0 && next != null && canAppend(next)) {
+            advanceToNext();
+            frames = stream.read(pcm);
+        }
+        if (frames <= 0) {
+            endOfStream = true;
+            return false;
+        }
+        AL10.alBufferData(buffer, stream.getFormat(), pcm, stream.getSampleRate());
+        lastFillFrames = frames;
+        return true;
+    }
+
+    private void queueBuffer(int buffer) {
+        AL10.alSourceQueueBuffers(source, buffer);
+        int slot = (queuedHead + queuedCount) % BUFFER_COUNT;
+        queuedStreams[slot] = stream;
+        queuedFrames[slot] = lastFillFrames;
+        queuedCount++;
+    }
+
+    private void queueIdleBuffers() {
+        while (idleCount > 0 && fill(idleBuffers[idleCount - 1])) {
+            queueBuffer(idleBuffers[--idleCount]);
+        }
+    }
+
+    /**
+     * Оставшееся время звучания текущего потока в секундах:
+     * ещё не декодированная часть плюс то, что стоит в очереди OpenAL
+     * @return оставшееся время или -1, если длина потока неизвестна
+     */
+    float getRemainingSeconds() {
+        if (source == -1 || stream == null || stream.getLengthFrames() <= 0) {
+            return -1.0f;
+        }
+        long remaining = stream.getLengthFrames() - stream.getFramesRead();
+        for (int i = 0; i < queuedCount; i++) {
+            remaining += queuedFrames[(queuedHead + i) % BUFFER_COUNT];
+        }
+        if (queuedCount > 0) {
+            remaining -= AL10.alGetSourcei(source, AL11.AL_SAMPLE_OFFSET);
+        }
+        return Math.max(0L, remaining) / (float) stream.getSampleRate();
+    }
+
+    /**
+     * Возвращает отыгранные буферы в очередь, заполнив их новыми данными.
+     * Должен вызываться регулярно, пока источник играет
+     */
+    void update() {
+        if (source == -1) {
+            return;
+        }
+
+        int processed = AL10.alGetSourcei(source, AL10.AL_BUFFERS_PROCESSED);
+        while (processed-- > 0) {
+            int buffer = AL10.alSourceUnqueueBuffers(source);
+            queuedStreams[queuedHead] = null;
+            queuedHead = (queuedHead + 1) % BUFFER_COUNT;
+            queuedCount--;
+            if (fill(buffer)) {
+                queueBuffer(buffer);
+            } else {
+                idleBuffers[idleCount++] = buffer;
+            }
+        }
+
+        // Первый буфер в очереди - тот, что сейчас играет
+        if (queuedCount > 0 && queuedStreams[queuedHead] != playingStream) {
+            playingStream = queuedStreams[queuedHead];
+            transitions++;
+        }
+
+        int state = AL10.alGetSourcei(source, AL10.AL_SOURCE_STATE);
+        if (playing && state == AL10.AL_STOPPED) {
+            if (queuedCount > 0) {
+                // Очередь опустела раньше, чем мы её пополнили, и OpenAL остановил источник
+                LOGGER.debug("Опустошение очереди буферов, перезапуск источника");
+                AL10.alSourcePlay(source);
+            } else if (endOfStream && next != null) {
+                // Формат следующего трека отличается - запускаем его после опустошения очереди
+                advanceToNext();
+                queueIdleBuffers();
+                AL10.alSourcePlay(source);
+            }
+        }
+    }
+
+    void play() {
+        if (source == -1) {
+            return;
+        }
+        playing = true;
+        if (AL10.alGetSourcei(source, AL10.AL_SOURCE_STATE) != AL10.AL_PLAYING) {
+            AL10.alSourcePlay(source);
+        }
+    }
+
+    void pause() {
+        if (source == -1) {
+            return;
+        }
+        playing = false;
+        AL10.alSourcePause(source);
+    }
+
+    boolean isPaused() {
+        return source != -1 && AL10.alGetSourcei(source, AL10.AL_SOURCE_STATE) == AL10.AL_PAUSED;
+    }
+
+    void stop() {
+        if (source == -1) {
+            return;
+        }
+        playing = false;
+        AL10.alSourceStop(source);
+        setNext(null);
+    }
+
+    /**
+     * Играет ли источник: либо OpenAL воспроизводит звук,
+     * либо поток ещё не закончился и ожидает пополнения очереди
+     */
+    boolean isPlaying() {
+        if (source == -1) {
+            return false;
+        }
+        int state = AL10.alGetSourcei(source, AL10.AL_SOURCE_STATE);
+        return state == AL10.AL_PLAYING
+                || (playing && (!endOfStream || next != null) && state != AL10.AL_PAUSED);
+    }
+
+    /**
+     * Файл, звук которого сейчас воспроизводится
+     */
+    Path getPlayingFile() {
+        return source == -1 || playingStream == null ? null : playingStream.getFile();
+    }
+
+    /**
+     * Сколько раз источник бесшовно перешёл к следующему потоку с момента open()
+     */
+    int getTransitions() {
+        return transitions;
+    }
+
+    void setGain(float gain) {
+        if (source != -1) {
+            AL10.alSourcef(source, AL10.AL_GAIN, gain);
+        }
+    }
+
+    /**
+     * Возвращает источник и буферы OpenAL в пул и закрывает потоки
+     */
+    void close() {
+        if (source != -1) {
+            AL10.alSourceStop(source);
+            // Отвязываем очередь буферов, чтобы их можно было заполнить для другого источника
+            AL10.alSourcei(source, AL10.AL_BUFFER, 0);
+            pool.releaseSource(source);
+            pool.releaseBuffers(buffers);
+            source = -1;
+        }
+        if (stream != null) {
+            stream.close();
+            stream = null;
+        }
+        if (next != null) {
+            next.close();
+            next = null;
+        }
+        playing = false;
+        endOfStream = false;
+        idleCount = 0;
+        Arrays.fill(queuedStreams, null);
+        queuedHead = 0;
+        queuedCount = 0;
+        playingStream = null;
+    }
+
+    /**
+     * Освобождает нативный буфер PCM. После вызова источник нельзя использовать
+     */
+    void free() {
+        close();
+        if (pcm != null) {
+            MemoryUtil.memFree(pcm);
+            pcm = null;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.audiocontroller.audio;
+
+import com.mojang.logging.LogUtils;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Двоичный каталог треков в config/audiocontroller/catalog.bin.
+ * Хранит для каждого файла (относительный путь + размер + время изменения) всё, что
+ * определяется в фоне: длительность, громкость и т.д. При запуске каталог читается целиком
+ * и сразу даёт готовую библиотеку, а сканирование папки затем проверяет записи
+ * и обрабатывает заново только изменившиеся файлы.
+ *
+ * Формат (little-endian): заголовок MAGIC, VERSION, количество записей; каждая запись
+ * начинается с её длины, поэтому новые поля можно дописывать в конец записи.
+ * Поля записи: путь, размер, время изменения, флаги, длительность, громкость, пик, отпечаток,
+ * теги (название, исполнитель, альбом, жанр, номер трека), результат проверки целостности
+ */
+final class TrackCatalog {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final String CATALOG_FILE = "config/audiocontroller/catalog.bin";
+    private static final int MAGIC = 0x54414341; // "ACAT"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+
+    private static final int FLAG_DURATION = 1; // Длительность определена (может быть неизвестна)
+    private static final int FLAG_LOUDNESS = 2;
+    private static final int FLAG_TAGS = 4;
+    private static final TrackIntegrity[] INTEGRITY_VALUES = TrackIntegrity.values();
+
+    private TrackCatalog() {
+    }
+
+    /**
+     * Читает каталог. Записи не проверяются по файловой системе - это делает сканирование папки
+     * @param musicDir папка с музыкой, относительно которой хранятся пути
+     * @return треки из каталога или пустой список, если каталога нет или он повреждён
+     */
+    static List<CustomMusicTrack> load(Path musicDir) {
+        return load(Paths.get(CATALOG_FILE), musicDir);
+    }
+
+    static List<CustomMusicTrack> load(Path file, Path musicDir) {
+        if (!Files.exists(file)) {
+            return List.of();
+        }
+
+        // Файл читается в память, а не отображается: отображение живёт до сборки мусора,
+        // и на Windows замена каталога в save() не удалась бы, пока оно открыто
+        ByteBuffer buffer;
+        try {
+            buffer = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        } catch (IOException e) {
+            LOGGER.warn("Не удалось открыть каталог треков: {}", file, e);
+            return List.of();
+        }
+        try {
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                LOGGER.info("Каталог треков устарел или повреждён, будет создан заново");
+                return List.of();
+            }
+            int count = buffer.getInt();
+            // Количество из повреждённого заголовка не должно приводить к огромному выделению памяти
+            List<CustomMusicTrack> tracks = new ArrayList<>(Math.min(count, buffer.remaining() / Integer.BYTES));
+            for (int i = 0; i < count; i++) {
+                int length = buffer.getInt();
+                int next = buffer.position() + length;
+                tracks.add(readEntry(buffer, musicDir, next));
+                buffer.position(next); // Пропускаем поля, которые добавлены в более новой версии
+            }
+            return tracks;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            LOGGER.warn("Каталог треков повреждён, будет создан заново: {}", file);
+            return List.of();
+        }
+    }
+
+    private static CustomMusicTrack readEntry(ByteBuffer buffer, Path musicDir, int end) {
+        byte[] pathBytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(pathBytes);
+        Path path = musicDir.resolve(new String(pathBytes, StandardCharsets.UTF_8));
+        long size = buffer.getLong();
+        long lastModified = buffer.getLong();
+        int flags = buffer.get();
+        long durationMillis = buffer.getLong();
+        float loudness = buffer.getFloat();
+        float peak = buffer.getFloat();
+        long fingerprint = buffer.position() + Long.BYTES <= end ? buffer.getLong() : 0L;
+        boolean hasTags = (flags & FLAG_TAGS) != 0 && buffer.position() < end;
+
+        CustomMusicTrack track = MusicLoader.createTrack(path, size, lastModified);
+        track.setFingerprint(fingerprint);
+        if (hasTags) {
+            String title = readString(buffer);
+            String artist = readString(buffer);
+            String album = readString(buffer);
+            String genre = readString(buffer);
+            int trackNumber = buffer.getInt();
+            track.setTags(new TrackTags(title, artist, album, trackNumber, genre));
+        }
+        if (buffer.position() < end) {
+            int integrity = buffer.get();
+            track.setIntegrity(integrity >= 0 && integrity < INTEGRITY_VALUES.length
+                ? INTEGRITY_VALUES[integrity] : TrackIntegrity.UNKNOWN);
+        }
+        // Запись из старой версии без отпечатка или тегов - файл будет прочитан заново
+        if ((flags & FLAG_DURATION) != 0 && fingerprint != 0L && hasTags) {
+            if (durationMillis >= 0) {
+                track.setDuration(Duration.ofMillis(durationMillis));
+            }
+            track.setLoaded(true);
+        }
+        if ((flags & FLAG_LOUDNESS) != 0) {
+            track.setLoudness(loudness, peak);
+        }
+        return track;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Перезаписывает каталог: данные пишутся во временный файл, который затем атомарно заменяет старый
+     */
+    static void save(Path musicDir, Collection<CustomMusicTrack> tracks) {
+        save(Paths.get(CATALOG_FILE), musicDir, tracks);
+    }
+
+    static void save(Path file, Path musicDir, Collection<CustomMusicTrack> tracks) {
+        List<byte[]> paths = new ArrayList<>(tracks.size());
+        List<byte[][]> tags = new ArrayList<>(tracks.size());
+        int size = HEADER_SIZE;
+        for (CustomMusicTrack track : tracks) {
+            byte[] path = musicDir.relativize(track.getFilePath()).toString()
+                .replace('\\', '/').getBytes(StandardCharsets.UTF_8);
+            TrackTags trackTags = track.getTags();
+            byte[][] strings = {
+                encode(trackTags.getTitle()), encode(trackTags.getArtist()),
+                encode(trackTags.getAlbum()), encode(trackTags.getGenre())
+            };
+            paths.add(path);
+            tags.add(strings);
+            size += Integer.BYTES + entrySize(path, strings);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(tracks.size());
+        int i = 0;
+        for (CustomMusicTrack track : tracks) {
+            byte[][] strings = tags.get(i);
+            byte[] path = paths.get(i++);
+            buffer.putInt(entrySize(path, strings));
+            buffer.putShort((short) path.length).put(path);
+            buffer.putLong(track.getFileSize()).putLong(track.getLastModified());
+            Duration duration = track.getDuration();
+            buffer.put((byte) ((track.isLoaded() ? FLAG_DURATION : 0) | (track.hasLoudness() ? FLAG_LOUDNESS : 0)
+                | FLAG_TAGS));
+            buffer.putLong(duration != null ? duration.toMillis() : -1L);
+            buffer.putFloat(track.getLoudness()).putFloat(track.getPeak());
+            buffer.putLong(track.getFingerprint());
+            for (byte[] string : strings) {
+                buffer.putShort((short) string.length).put(string);
+            }
+            buffer.putInt(track.getTrackNumber());
+            buffer.put((byte) track.getIntegrity().ordinal());
+        }
+        buffer.flip();
+
+        try {
+            PersistenceWorker.writeAtomically(file, buffer);
+            LOGGER.debug("Каталог треков сохранён: {} записей, {} КБ", tracks.size(), size / 1024);
+        } catch (IOException e) {
+            LOGGER.error("Ошибка при сохранении каталога треков: {}", file, e);
+        }
+    }
+
+    private static byte[] encode(String value) {
+        if (value == null) {
+            return new byte[0];
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return bytes.length <= 0xFFFF ? bytes : new byte[0];
+    }
+
+    private static int entrySize(byte[] path, byte[][] strings) {
+        int size = Short.BYTES + path.length + Long.BYTES * 4 + 1 + Float.BYTES * 2 + Integer.BYTES + 1;
+        for (byte[] string : strings) {
+            size += Short.BYTES + string.length;
+        }
+        return size;
+    }
+}
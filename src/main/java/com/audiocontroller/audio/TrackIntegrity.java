@@ -0,0 +1,13 @@
+package com.audiocontroller.audio;
+
+/**
+ * Результат проверки целостности файла трека (см. IntegrityValidator)
+ */
+public enum TrackIntegrity {
+    /** Файл ещё не проверялся */
+    UNKNOWN,
+    /** Заголовки Vorbis и контрольные суммы всех страниц в порядке */
+    OK,
+    /** Файл повреждён или обрезан, воспроизведение пропускает такой трек */
+    CORRUPT
+}
@@ -0,0 +1,236 @@
+package com.audiocontroller.audio;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Инвертированный индекс для поиска треков по началу слов в имени файла и тегах.
+ * Индекс неизменяемый и состоит из сегментов: снимок после изменения библиотеки получает
+ * индекс прежнего снимка с новым сегментом для добавленных и изменённых треков (см. with()),
+ * поэтому индекс строится в потоке загрузчика вместе со снимком, а не при первом поиске.
+ * Записи удалённых и изменённых треков остаются в старых сегментах, пока те не сольются,
+ * и отбрасываются при поиске проверкой по снимку. Соседние сегменты сливаются, когда новый
+ * догоняет по размеру предыдущий, поэтому сегментов O(log n) и каждая запись переиндексируется
+ * O(log n) раз.
+ * В сегменте слова хранятся в отсортированном массиве, поэтому все слова с заданным префиксом
+ * находятся двоичным поиском как непрерывный диапазон. Для каждого слова хранится
+ * возрастающий список номеров записей сегмента, записи упорядочены по порядку сканирования
+ */
+final class TrackSearchIndex {
+    static final TrackSearchIndex EMPTY = new TrackSearchIndex(new Segment[0]);
+
+    private static final Comparator<LibrarySnapshot.Entry> BY_ORDER = Comparator.comparingLong(entry -> entry.order);
+    private static final int MIN_GARBAGE = 1024; // Меньше мёртвых записей не стоит полной перестройки
+
+    private final Segment[] segments; // От старых к новым, размеры убывают
+    private final int entryCount; // Вместе с записями удалённых треков
+
+    private TrackSearchIndex(Segment[] segments) {
+        this.segments = segments;
+        int count = 0;
+        for (Segment segment : segments) {
+            count += segment.entries.length;
+        }
+        this.entryCount = count;
+    }
+
+    /**
+     * Индекс с новыми записями треков.
+     * @param fresh записи добавленных и изменённых треков в любом порядке
+     * @param live проверяет, что запись принадлежит новому снимку
+     * @param liveCount число треков в новом снимке
+     */
+    TrackSearchIndex with(List<LibrarySnapshot.Entry> fresh, Predicate<LibrarySnapshot.Entry> live, int liveCount) {
+        List<Segment> next = new ArrayList<>(Arrays.asList(segments));
+        Segment added = Segment.of(fresh, live);
+        if (added != null) {
+            next.add(added);
+        }
+        while (next.size() > 1
+                && next.get(next.size() - 1).entries.length * 2 >= next.get(next.size() - 2).entries.length) {
+            Segment last = next.remove(next.size() - 1);
+            Segment previous = next.remove(next.size() - 1);
+            Segment merged = Segment.merge(List.of(previous, last), live);
+            if (merged != null) {
+                next.add(merged);
+            }
+        }
+
+        int count = 0;
+        for (Segment segment : next) {
+            count += segment.entries.length;
+        }
+        if (count - liveCount > Math.max(liveCount, MIN_GARBAGE)) {
+            // Мёртвых записей больше, чем живых: все сегменты собираются в один
+            Segment merged = Segment.merge(next, live);
+            next.clear();
+            if (merged != null) {
+                next.add(merged);
+            }
+        }
+        return added == null && next.size() == segments.length && count == entryCount
+            ? this : new TrackSearchIndex(next.toArray(new Segment[0]));
+    }
+
+    /**
+     * Треки, у которых для каждого слова запроса есть слово, начинающееся с него, в порядке сканирования.
+     * Поиск останавливается, как только найдено limit записей, прошедших проверку accept
+     */
+    List<CustomMusicTrack> search(List<String> queryWords, Predicate<LibrarySnapshot.Entry> accept, int limit) {
+        BitSet[] matches = new BitSet[segments.length];
+        int[] cursors = new int[segments.length];
+        for (int s = 0; s < segments.length; s++) {
+            matches[s] = segments[s].match(queryWords);
+            cursors[s] = matches[s] != null ? matches[s].nextSetBit(0) : -1;
+        }
+
+        // Слияние сегментов по порядку сканирования: каждый раз берётся запись с наименьшим порядком
+        List<CustomMusicTrack> found = new ArrayList<>();
+        while (found.size() < limit) {
+            int best = -1;
+            for (int s = 0; s < segments.length; s++) {
+                if (cursors[s] >= 0 && (best < 0
+                        || segments[s].entries[cursors[s]].order < segments[best].entries[cursors[best]].order)) {
+                    best = s;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            LibrarySnapshot.Entry entry = segments[best].entries[cursors[best]];
+            cursors[best] = matches[best].nextSetBit(cursors[best] + 1);
+            if (accept.test(entry)) {
+                found.add(entry.track);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Разбивает текст на слова из букв и цифр в нижнем регистре (ё приводится к е)
+     */
+    static void tokenize(String text, List<String> out) {
+        if (text == null) {
+            return;
+        }
+        String normalized = text.toLowerCase(Locale.ROOT).replace('ё', 'е');
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean wordChar = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                out.add(normalized.substring(start, i));
+                start = -1;
+            }
+        }
+    }
+
+    private static final class Segment {
+        final LibrarySnapshot.Entry[] entries;
+        final String[] words;
+        final int[][] postings;
+
+        /**
+         * @return сегмент из живых записей или null, если таких нет
+         */
+        static Segment of(List<LibrarySnapshot.Entry> entries, Predicate<LibrarySnapshot.Entry> live) {
+            List<LibrarySnapshot.Entry> kept = new ArrayList<>(entries.size());
+            for (LibrarySnapshot.Entry entry : entries) {
+                if (live.test(entry)) {
+                    kept.add(entry);
+                }
+            }
+            if (kept.isEmpty()) {
+                return null;
+            }
+            kept.sort(BY_ORDER);
+            return new Segment(kept.toArray(new LibrarySnapshot.Entry[0]));
+        }
+
+        static Segment merge(List<Segment> segments, Predicate<LibrarySnapshot.Entry> live) {
+            List<LibrarySnapshot.Entry> entries = new ArrayList<>();
+            for (Segment segment : segments) {
+                entries.addAll(Arrays.asList(segment.entries));
+            }
+            return of(entries, live);
+        }
+
+        private Segment(LibrarySnapshot.Entry[] entries) {
+            this.entries = entries;
+            Map<String, int[]> index = new HashMap<>();
+            Map<String, Integer> sizes = new HashMap<>();
+            List<String> trackWords = new ArrayList<>();
+            for (int i = 0; i < entries.length; i++) {
+                CustomMusicTrack track = entries[i].track;
+                trackWords.clear();
+                tokenize(track.getName(), trackWords);
+                TrackTags tags = track.getTags();
+                tokenize(tags.getTitle(), trackWords);
+                tokenize(tags.getArtist(), trackWords);
+                tokenize(tags.getAlbum(), trackWords);
+                tokenize(tags.getGenre(), trackWords);
+                for (String word : trackWords) {
+                    int[] list = index.get(word);
+                    int size = sizes.getOrDefault(word, 0);
+                    if (size > 0 && list[size - 1] == i) {
+                        continue; // Слово уже встречалось у этого трека
+                    }
+                    if (list == null) {
+                        list = new int[2];
+                    } else if (size == list.length) {
+                        list = Arrays.copyOf(list, size * 2);
+                    }
+                    list[size] = i;
+                    index.put(word, list);
+                    sizes.put(word, size + 1);
+                }
+            }
+
+            this.words = index.keySet().toArray(new String[0]);
+            Arrays.sort(this.words);
+            this.postings = new int[words.length][];
+            for (int i = 0; i < words.length; i++) {
+                postings[i] = Arrays.copyOf(index.get(words[i]), sizes.get(words[i]));
+            }
+        }
+
+        /**
+         * @return номера записей, подходящих под все слова запроса, или null, если таких нет
+         */
+        BitSet match(List<String> queryWords) {
+            BitSet result = null;
+            for (String prefix : queryWords) {
+                BitSet matches = new BitSet(entries.length);
+                int from = lowerBound(prefix);
+                int to = lowerBound(prefix + Character.MAX_VALUE);
+                for (int i = from; i < to; i++) {
+                    for (int entry : postings[i]) {
+                        matches.set(entry);
+                    }
+                }
+                if (result == null) {
+                    result = matches;
+                } else {
+                    result.and(matches);
+                }
+                if (result.isEmpty()) {
+                    return null;
+                }
+            }
+            return result;
+        }
+
+        private int lowerBound(String key) {
+            int index = Arrays.binarySearch(words, key);
+            return index >= 0 ? index : -index - 1;
+        }
+    }
+}
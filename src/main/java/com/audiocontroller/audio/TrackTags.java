@@ -0,0 +1,47 @@
+package com.audiocontroller.audio;
+
+/**
+ * Теги трека из комментариев Vorbis (TITLE, ARTIST, ALBUM, TRACKNUMBER, GENRE).
+ * Отсутствующий тег - null, неизвестный номер трека - 0
+ */
+public final class TrackTags {
+    public static final TrackTags EMPTY = new TrackTags(null, null, null, 0, null);
+
+    private final String title;
+    private final String artist;
+    private final String album;
+    private final int trackNumber;
+    private final String genre;
+
+    TrackTags(String title, String artist, String album, int trackNumber, String genre) {
+        this.title = title;
+        this.artist = artist;
+        this.album = album;
+        this.trackNumber = trackNumber;
+        this.genre = genre;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getArtist() {
+        return artist;
+    }
+
+    public String getAlbum() {
+        return album;
+    }
+
+    public int getTrackNumber() {
+        return trackNumber;
+    }
+
+    public String getGenre() {
+        return genre;
+    }
+
+    public boolean isEmpty() {
+        return title == null && artist == null && album == null && trackNumber == 0 && genre == null;
+    }
+}
@@ -0,0 +1,155 @@
+package com.audiocontroller.audio;
+
+import com.mojang.logging.LogUtils;
+import org.lwjgl.stb.STBVorbis;
+import org.lwjgl.stb.STBVorbisInfo;
+import org.lwjgl.system.MemoryStack;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.file.Path;
+
+/**
+ * Потоковый декодер OGG Vorbis на базе STB Vorbis.
+ * В отличие от stb_vorbis_decode_filename не декодирует файл целиком,
+ * а отдаёт PCM порциями по запросу.
+ * Данные читаются из отображённого в память файла через stb_vorbis_open_memory
+ */
+class VorbisStream implements PcmStream {
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    private final Path file;
+    private final long handle;
+    private final MappedFile mapping; // Отображение файла, из которого декодирует STB, или null
+    private final int channels;
+    private final int sampleRate;
+    private final long lengthFrames;
+    private long framesRead = 0;
+    private boolean closed = false;
+
+    private VorbisStream(Path file, long handle, MappedFile mapping, int channels, int sampleRate) {
+        this.file = file;
+        this.handle = handle;
+        this.mapping = mapping;
+        this.channels = channels;
+        this.sampleRate = sampleRate;
+        int length = STBVorbis.stb_vorbis_stream_length_in_samples(handle);
+        this.lengthFrames = length == -1 ? 0 : Integer.toUnsignedLong(length); // -1 = длина неизвестна
+    }
+
+    /**
+     * Открывает OGG файл для потокового декодирования.
+     * Файл отображается в память (общее отображение для одновременных потоков одного файла),
+     * при неудаче STB читает его самостоятельно
+     * @param filePath путь к OGG файлу
+     * @return поток или null, если файл не удалось открыть
+     */
+    static VorbisStream open(Path filePath) {
+        MappedFile mapped;
+        try {
+            mapped = MappedFile.acquire(filePath);
+        } catch (IOException e) {
+            LOGGER.debug("Не удалось отобразить файл в память, читаем через STB: {}", filePath, e);
+            return openFile(filePath);
+        }
+
+        VorbisStream stream = open(mapped.getBuffer(), filePath, mapped);
+        if (stream == null) {
+            mapped.release();
+        }
+        return stream;
+    }
+
+    /**
+     * Открывает OGG данные, уже находящиеся в памяти (например, из архива или сети).
+     * Буфер должен оставаться неизменным до закрытия потока
+     * @param data содержимое OGG файла в direct буфере
+     * @param name путь или имя источника для логов
+     * @return поток или null, если данные не удалось открыть
+     */
+    static VorbisStream open(ByteBuffer data, Path name) {
+        if (!data.isDirect()) {
+            throw new IllegalArgumentException("STB Vorbis требует direct буфер");
+        }
+        return open(data, name, null);
+    }
+
+    private static VorbisStream open(ByteBuffer data, Path name, MappedFile mapped) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer error = stack.mallocInt(1);
+            long handle = STBVorbis.stb_vorbis_open_memory(data, error, null);
+            if (handle == 0) {
+                LOGGER.error("Не удалось открыть OGG файл: {} (код ошибки STB: {})", name, error.get(0));
+                return null;
+            }
+            return create(stack, name, handle, mapped);
+        }
+    }
+
+    private static VorbisStream openFile(Path filePath) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer error = stack.mallocInt(1);
+            long handle = STBVorbis.stb_vorbis_open_filename(filePath.toAbsolutePath().toString(), error, null);
+            if (handle == 0) {
+                LOGGER.error("Не удалось открыть OGG файл: {} (код ошибки STB: {})", filePath, error.get(0));
+                return null;
+            }
+            return create(stack, filePath, handle, null);
+        }
+    }
+
+    private static VorbisStream create(MemoryStack stack, Path file, long handle, MappedFile mapped) {
+        // Структура на стеке освобождается вместе с кадром stackPush(), close() для неё вызывать нельзя
+        STBVorbisInfo info = STBVorbisInfo.malloc(stack);
+        STBVorbis.stb_vorbis_get_info(handle, info);
+        return new VorbisStream(file, handle, mapped, info.channels(), info.sample_rate());
+    }
+
+    @Override
+    public int read(ShortBuffer pcm) {
+        pcm.clear();
+        int frames = STBVorbis.stb_vorbis_get_samples_short_interleaved(handle, channels, pcm);
+        pcm.limit(frames * channels);
+        framesRead += frames;
+        return frames;
+    }
+
+    @Override
+    public int getChannels() {
+        return channels;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public long getLengthFrames() {
+        return lengthFrames;
+    }
+
+    @Override
+    public long getFramesRead() {
+        return framesRead;
+    }
+
+    @Override
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            STBVorbis.stb_vorbis_close(handle);
+            if (mapping != null) {
+                mapping.release();
+            }
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.audiocontroller.audio;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Взвешенный случайный выбор треков плейлиста по истории прослушивания: реже игравшие треки
+ * выпадают чаще, недавно звучавшие - реже. Веса хранятся в дереве Фенвика, поэтому выбор
+ * и обновление веса сыгранного трека занимают O(log n). Веса зависят от времени, поэтому
+ * дерево перестраивается за O(n) раз в REBUILD_MS или при изменении списка треков
+ */
+final class WeightedShuffle {
+    private static final long RECENT_WINDOW_MS = TimeUnit.HOURS.toMillis(6); // Через столько трек снова получает полный вес
+    private static final double MIN_RECENCY = 0.02; // Вес только что сыгранного трека относительно остальных
+    private static final long REBUILD_MS = TimeUnit.MINUTES.toMillis(10);
+    private static final double WEIGHT_SCALE = 1L << 40; // Вес 1.0 в целых единицах дерева; сумма 8 млн треков помещается в long
+
+    private final List<CustomMusicTrack> tracks;
+    private final Map<CustomMusicTrack, Integer> indexes;
+    private final PlayHistory history;
+    private final FenwickTree weights;
+    private final long builtAt;
+
+    WeightedShuffle(List<CustomMusicTrack> tracks, PlayHistory history, long now) {
+        this.tracks = tracks;
+        this.history = history;
+        this.builtAt = now;
+        this.indexes = new HashMap<>(tracks.size() * 2);
+        long[] initial = new long[tracks.size()];
+        for (int i = 0; i < initial.length; i++) {
+            CustomMusicTrack track = tracks.get(i);
+            indexes.putIfAbsent(track, i);
+            initial[i] = weight(track, now);
+        }
+        this.weights = new FenwickTree(initial);
+    }
+
+    /**
+     * Подходит ли дерево для текущего списка треков плейлиста.
+     * Список сравнивается по ссылке: плейлист заменяет его целиком при изменении
+     */
+    boolean isValidFor(List<CustomMusicTrack> list, long now) {
+        return list == tracks && now - builtAt < REBUILD_MS;
+    }
+
+    /**
+     * @param exclude трек, который не нужно выбирать (играющий сейчас), если есть другие
+     * @return выбранный трек или null, если у всех треков нулевой вес
+     */
+    CustomMusicTrack pick(Random random, CustomMusicTrack exclude) {
+        Integer excluded = exclude != null ? indexes.get(exclude) : null;
+        long excludedWeight = 0;
+        if (excluded != null) {
+            excludedWeight = weights.get(excluded);
+            weights.set(excluded, 0);
+        }
+        try {
+            long total = weights.total();
+            if (total <= 0) {
+                return excluded != null && excludedWeight > 0 ? exclude : null;
+            }
+            // Суммы целые и точные, поэтому find() попадает на ненулевой вес;
+            // ближайший ненулевой элемент - страховка, а не обычный путь
+            int index = weights.nearestNonZero(Math.min(weights.find(random.nextLong(total)), weights.size() - 1));
+            return index >= 0 ? tracks.get(index) : null;
+        } finally {
+            if (excluded != null) {
+                weights.set(excluded, excludedWeight);
+            }
+        }
+    }
+
+    /**
+     * Пересчитывает вес трека после того, как он начал играть
+     */
+    void onPlayed(CustomMusicTrack track, long now) {
+        Integer index = indexes.get(track);
+        if (index != null) {
+            weights.set(index, weight(track, now));
+        }
+    }
+
+    private long weight(CustomMusicTrack track, long now) {
+        if (track.isCorrupt()) {
+            return 0;
+        }
+        PlayHistory.TrackStats stats = history.getStats(track);
+        double weight = 1.0 / (1 + stats.getPlays());
+        long lastPlayed = stats.getLastPlayed();
+        if (lastPlayed > 0) {
+            double age = (double) (now - lastPlayed) / RECENT_WINDOW_MS;
+            weight *= Math.max(MIN_RECENCY, Math.min(1.0, age));
+        }
+        return Math.max(1L, Math.round(weight * WEIGHT_SCALE));
+    }
+}
@@ -0,0 +1,88 @@
+package com.audiocontroller.audio;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Некриптографическая хеш-функция xxHash64 (XXH64).
+ * Используется для отпечатка содержимого файла (см. OggProbe)
+ */
+final class XxHash64 {
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+    private XxHash64() {
+    }
+
+    /**
+     * Хеширует байты буфера от offset до offset + length (позиция буфера не меняется)
+     */
+    static long hash(ByteBuffer buffer, int offset, int length, long seed) {
+        ByteBuffer data = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int position = offset;
+        int end = offset + length;
+        long h;
+
+        if (length >= 32) {
+            long v1 = seed + PRIME1 + PRIME2;
+            long v2 = seed + PRIME2;
+            long v3 = seed;
+            long v4 = seed - PRIME1;
+            int limit = end - 32;
+            do {
+                v1 = round(v1, data.getLong(position));
+                v2 = round(v2, data.getLong(position + 8));
+                v3 = round(v3, data.getLong(position + 16));
+                v4 = round(v4, data.getLong(position + 24));
+                position += 32;
+            } while (position <= limit);
+
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = mergeRound(h, v1);
+            h = mergeRound(h, v2);
+            h = mergeRound(h, v3);
+            h = mergeRound(h, v4);
+        } else {
+            h = seed + PRIME5;
+        }
+
+        h += length;
+
+        while (position + 8 <= end) {
+            h ^= round(0, data.getLong(position));
+            h = Long.rotateLeft(h, 27) * PRIME1 + PRIME4;
+            position += 8;
+        }
+        if (position + 4 <= end) {
+            h ^= (data.getInt(position) & 0xFFFFFFFFL) * PRIME1;
+            h = Long.rotateLeft(h, 23) * PRIME2 + PRIME3;
+            position += 4;
+        }
+        while (position < end) {
+            h ^= (data.get(position) & 0xFF) * PRIME5;
+            h = Long.rotateLeft(h, 11) * PRIME1;
+            position++;
+        }
+
+        h ^= h >>> 33;
+        h *= PRIME2;
+        h ^= h >>> 29;
+        h *= PRIME3;
+        h ^= h >>> 32;
+        return h;
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * PRIME2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * PRIME1;
+    }
+
+    private static long mergeRound(long acc, long value) {
+        acc ^= round(0, value);
+        return acc * PRIME1 + PRIME4;
+    }
+}
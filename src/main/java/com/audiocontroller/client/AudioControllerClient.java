@@ -1,6 +1,7 @@
 package com.audiocontroller.client;
 
 import com.audiocontroller.audio.AudioManager;
+import com.audiocontroller.audio.MusicLoader;
 import com.audiocontroller.client.events.ClientMusicEvents;
 import net.minecraftforge.api.distmarker.Dist;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
@@ -8,6 +9,8 @@ import net.minecraftforge.fml.common.Mod;
 import net.minecraftforge.fml.event.lifecycle.FMLClientSetupEvent;
 import com.audiocontroller.AudioController;
 
+import java.util.concurrent.CompletableFuture;
+
 @Mod.EventBusSubscriber(modid = AudioController.MODID, bus = Mod.EventBusSubscriber.Bus.MOD, value = Dist.CLIENT)
 public class AudioControllerClient {
     
@@ -17,11 +20,17 @@ public class AudioControllerClient {
             // Инициализация клиентской части
             AudioManager manager = AudioManager.getInstance();
             
-            // Сканируем музыку
-            manager.getMusicLoader().scanMusicFiles().thenRun(() -> {
-                // Загружаем плейлисты и активный плейлист
-                manager.getPlaylistManager().loadPlaylists().thenRun(() -> {
-                    manager.loadActivePlaylist();
+            // Библиотека сразу восстанавливается из каталога, сканирование проверяет её в фоне
+            MusicLoader musicLoader = manager.getMusicLoader();
+            musicLoader.loadCatalog().thenRun(() -> {
+                CompletableFuture<Void> scan = musicLoader.scanMusicFiles().getFuture();
+                // Без каталога (первый запуск) плейлистам нужны результаты сканирования
+                CompletableFuture<Void> ready = musicLoader.getTracks().isEmpty() ? scan : CompletableFuture.completedFuture(null);
+                ready.thenRun(() -> {
+                    // Загружаем плейлисты и активный плейлист
+                    manager.getPlaylistManager().loadPlaylists().thenRun(() -> {
+                        manager.loadActivePlaylist();
+                    });
                 });
             });
             ClientMusicEvents.register();
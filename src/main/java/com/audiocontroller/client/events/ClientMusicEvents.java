@@ -15,6 +15,7 @@ import com.audiocontroller.AudioController;
 @Mod.EventBusSubscriber(modid = AudioController.MODID, value = Dist.CLIENT)
 public class ClientMusicEvents {
     private static final Logger LOGGER = LogUtils.getLogger();
+    private static boolean wasGamePaused = false;
     
     public static void register() {
         // Регистрация событий
@@ -41,21 +42,24 @@ public class ClientMusicEvents {
         
         // Если мы не в мире (главное меню), останавливаем музыку
         if (mc.level == null) {
+            wasGamePaused = false;
             if (manager.isPlaying()) {
                 manager.stop();
             }
             return;
         }
         
-        // Обрабатываем паузу игры
-        if (mc.isPaused()) {
-            // Если игра на паузе, ставим музыку на паузу
-            if (manager.isPlaying()) {
+        // Обрабатываем паузу игры только в момент её включения или выключения
+        boolean gamePaused = mc.isPaused();
+        if (gamePaused != wasGamePaused) {
+            wasGamePaused = gamePaused;
+            if (gamePaused) {
+                // Игра поставлена на паузу - ставим музыку на паузу
                 manager.pause();
+            } else {
+                // Игра снята с паузы - возобновляем музыку, если она была на паузе
+                manager.resume();
             }
-        } else {
-            // Если игра не на паузе, возобновляем музыку если она была на паузе
-            manager.resume();
         }
         
         // Если конфигурация загружена и включена замена музыки
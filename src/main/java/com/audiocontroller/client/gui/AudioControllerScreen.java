@@ -3,6 +3,7 @@ package com.audiocontroller.client.gui;
 import com.audiocontroller.audio.AudioManager;
 import com.audiocontroller.audio.CustomMusicTrack;
 import com.audiocontroller.audio.Playlist;
+import com.audiocontroller.audio.ScanHandle;
 import net.minecraft.client.gui.GuiGraphics;
 import net.minecraft.client.gui.components.Button;
 import net.minecraft.client.gui.screens.Screen;
@@ -53,7 +54,7 @@ public class AudioControllerScreen extends Screen {
         this.refreshButton = this.addRenderableWidget(Button.builder(
             Component.literal("🔄"),
             button -> {
-                audioManager.getMusicLoader().scanMusicFiles().thenRun(() -> {
+                audioManager.getMusicLoader().scanMusicFiles().getFuture().thenRun(() -> {
                     // Обновляем плейлисты после сканирования
                     audioManager.getPlaylistManager().loadPlaylists();
                 });
@@ -92,6 +93,10 @@ public class AudioControllerScreen extends Screen {
         // Информация о текущем треке
         audioManager.getCurrentTrack().ifPresent(track -> {
             String trackInfo = Component.translatable("audiocontroller.gui.tracks").getString() + ": " + track.getName();
+            if (track.getDuration() != null) {
+                long seconds = track.getDuration().getSeconds();
+                trackInfo += String.format(" (%d:%02d)", seconds / 60, seconds % 60);
+            }
             // Обрезаем текст, если он слишком длинный
             int maxWidth = this.width - 40;
             if (this.font.width(trackInfo) > maxWidth) {
@@ -116,6 +121,19 @@ public class AudioControllerScreen extends Screen {
         // Статус воспроизведения
         String status = audioManager.isPlaying() ? "▶ Воспроизведение" : "⏹ Остановлено";
         guiGraphics.drawCenteredString(this.font, status, centerX, infoY[0], 0xAAAAAA);
+        infoY[0] += lineHeight;
+        
+        // Прогресс сканирования папки с музыкой
+        ScanHandle scan = audioManager.getMusicLoader().getCurrentScan();
+        if (scan != null && !scan.isDone()) {
+            long eta = scan.getEtaMillis();
+            Component progress = eta >= 0
+                ? Component.translatable("audiocontroller.gui.scanning_eta", scan.getFilesVisited(),
+                    scan.getExpectedFiles(), scan.getBytesVisited() / (1024 * 1024), (eta + 999) / 1000)
+                : Component.translatable("audiocontroller.gui.scanning", scan.getFilesVisited(),
+                    scan.getBytesVisited() / (1024 * 1024));
+            guiGraphics.drawCenteredString(this.font, progress, centerX, infoY[0], 0x888888);
+        }
         
         // Инструкция (внизу экрана, если есть место)
         int instructionY = Math.min(this.height - 30, this.height / 2 + 60);
@@ -5,14 +5,18 @@ import com.audiocontroller.audio.CustomMusicTrack;
 import com.audiocontroller.audio.MusicLoader;
 import com.audiocontroller.audio.Playlist;
 import com.audiocontroller.audio.PlaylistManager;
+import net.minecraft.ChatFormatting;
 import net.minecraft.client.gui.GuiGraphics;
 import net.minecraft.client.gui.components.Button;
+import net.minecraft.client.gui.components.EditBox;
 import net.minecraft.client.gui.screens.Screen;
 import net.minecraft.network.chat.Component;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Set;
 
 public class EditPlaylistScreen extends Screen {
     private final Screen parent;
@@ -23,6 +27,9 @@ public class EditPlaylistScreen extends Screen {
     private final List<Button> availableTrackButtons = new ArrayList<>();
     private int selectedPlaylistTrackIndex = -1;
     private int selectedAvailableTrackIndex = -1;
+    private EditBox searchBox;
+    private String searchQuery = "";
+    private int maxAvailableTracks = Integer.MAX_VALUE;
 
     public EditPlaylistScreen(Screen parent, Playlist playlist) {
         super(Component.translatable("audiocontroller.gui.edit_playlist"));
@@ -51,6 +58,24 @@ public class EditPlaylistScreen extends Screen {
         // Заголовки
         int headerY = topY + 10;
         
+        // Поиск по доступным трекам (справа от заголовка списка)
+        int searchWidth = listWidth / 2;
+        this.searchBox = new EditBox(this.font, rightListX + listWidth - searchWidth, headerY - 4, searchWidth, 16,
+            Component.translatable("audiocontroller.gui.search_tracks"));
+        this.searchBox.setMaxLength(64);
+        this.searchBox.setHint(Component.translatable("audiocontroller.gui.search_tracks"));
+        this.searchBox.setValue(searchQuery);
+        this.searchBox.setResponder(query -> {
+            searchQuery = query;
+            selectedAvailableTrackIndex = -1;
+            createAvailableTrackButtons(rightListX, listTopY, listWidth, buttonHeight, buttonSpacing);
+            updateButtonStyles();
+        });
+        this.addRenderableWidget(this.searchBox);
+        
+        // Показываем только те доступные треки, что помещаются на экран
+        maxAvailableTracks = Math.max(1, listHeight / (buttonHeight + buttonSpacing));
+        
         // Список треков в плейлисте (слева)
         createPlaylistTrackButtons(leftListX, listTopY, listWidth, buttonHeight, buttonSpacing);
         
@@ -118,7 +143,7 @@ public class EditPlaylistScreen extends Screen {
             final int index = i;
             
             Button button = Button.builder(
-                Component.literal(track.getName()),
+                trackLabel(track),
                 (btn) -> {
                     selectedPlaylistTrackIndex = index;
                     updateButtonStyles();
@@ -142,12 +167,13 @@ public class EditPlaylistScreen extends Screen {
         }
         
         int buttonY = y;
-        for (int i = 0; i < availableTracks.size(); i++) {
+        int count = Math.min(availableTracks.size(), maxAvailableTracks);
+        for (int i = 0; i < count; i++) {
             CustomMusicTrack track = availableTracks.get(i);
             final int index = i;
             
             Button button = Button.builder(
-                Component.literal(track.getName()),
+                trackLabel(track),
                 (btn) -> {
                     selectedAvailableTrackIndex = index;
                     updateButtonStyles();
@@ -160,15 +186,35 @@ public class EditPlaylistScreen extends Screen {
         }
     }
     
+    /**
+     * Имя трека; повреждённые файлы отмечаются красным, при воспроизведении они пропускаются
+     */
+    private static Component trackLabel(CustomMusicTrack track) {
+        if (track.isCorrupt()) {
+            return Component.literal("⚠ " + track.getName()).withStyle(ChatFormatting.RED);
+        }
+        return Component.literal(track.getName());
+    }
+    
     private List<CustomMusicTrack> getAvailableTracks() {
-        List<CustomMusicTrack> allTracks = musicLoader.getTracks();
-        List<String> playlistTrackNames = playlist.getTracks().stream()
-            .map(CustomMusicTrack::getName)
-            .collect(Collectors.toList());
+        // Треки плейлиста исключаются по идентификатору содержимого, а пока отпечатка нет - по пути:
+        // одноимённые файлы из других папок остаются доступными
+        Set<String> playlistIds = new HashSet<>();
+        Set<Path> playlistPaths = new HashSet<>();
+        for (CustomMusicTrack track : playlist.getTracks()) {
+            String id = track.getId();
+            if (id != null) {
+                playlistIds.add(id);
+            } else {
+                playlistPaths.add(track.getFilePath());
+            }
+        }
         
-        return allTracks.stream()
-            .filter(track -> !playlistTrackNames.contains(track.getName()))
-            .collect(Collectors.toList());
+        // Поиск по индексу снимка библиотеки останавливается, когда найдено столько треков, сколько помещается на экране
+        return musicLoader.getSnapshot().search(searchQuery, track -> {
+            String id = track.getId();
+            return id != null ? !playlistIds.contains(id) : !playlistPaths.contains(track.getFilePath());
+        }, maxAvailableTracks);
     }
     
     private void addTrackToPlaylist(CustomMusicTrack track) {
@@ -250,11 +296,9 @@ public class EditPlaylistScreen extends Screen {
     }
     
     private void savePlaylist() {
-        try {
-            playlistManager.savePlaylist(playlist).get();
-        } catch (Exception e) {
-            com.mojang.logging.LogUtils.getLogger().error("Ошибка при сохранении плейлиста", e);
-        }
+        // Экран редактирует копию плейлиста: сохранение публикует её как новую версию,
+        // выход без сохранения изменения отбрасывает. Запись выполняется в фоне, экран не ждёт диск
+        playlistManager.savePlaylist(playlist.copy());
     }
     
     @Override
@@ -3,7 +3,9 @@ package com.audiocontroller.client.gui;
 import com.audiocontroller.audio.AudioManager;
 import com.audiocontroller.audio.CustomMusicTrack;
 import com.audiocontroller.audio.Playlist;
+import com.audiocontroller.audio.PlaylistListener;
 import com.audiocontroller.audio.PlaylistManager;
+import net.minecraft.client.Minecraft;
 import net.minecraft.client.gui.GuiGraphics;
 import net.minecraft.client.gui.components.Button;
 import net.minecraft.client.gui.components.EditBox;
@@ -12,6 +14,7 @@ import net.minecraft.network.chat.Component;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
 public class PlaylistScreen extends Screen {
     private final Screen parent;
@@ -23,8 +26,10 @@ public class PlaylistScreen extends Screen {
     private Button editButton;
     private Button shuffleButton;
     private Button repeatButton;
-    private int selectedPlaylistIndex = -1;
+    private String selectedPlaylistName; // Выбор по имени: список может обновиться в фоне
     private final List<Button> playlistButtons = new ArrayList<>();
+    // Новая версия списка плейлистов перестраивает кнопки в клиентском потоке
+    private final PlaylistListener playlistListener = state -> Minecraft.getInstance().execute(this::refreshPlaylistList);
 
     public PlaylistScreen(Screen parent) {
         super(Component.translatable("audiocontroller.gui.playlists"));
@@ -37,11 +42,12 @@ public class PlaylistScreen extends Screen {
     protected void init() {
         super.init();
         
-        // Загружаем плейлисты синхронно перед инициализацией GUI
-        try {
-            playlistManager.loadPlaylists().get(); // Блокирующее ожидание
-        } catch (Exception e) {
-            com.mojang.logging.LogUtils.getLogger().error("Ошибка при загрузке плейлистов", e);
+        // Список обновляется по событиям PlaylistManager; если плейлисты ещё не загружены,
+        // кнопки появятся, когда загрузка опубликует их
+        playlistManager.removeListener(playlistListener);
+        playlistManager.addListener(playlistListener);
+        if (!playlistManager.isLoaded()) {
+            playlistManager.loadPlaylists();
         }
         
         // Адаптивные размеры и позиции
@@ -68,15 +74,9 @@ public class PlaylistScreen extends Screen {
             button -> {
                 String name = playlistNameBox.getValue().trim();
                 if (!name.isEmpty()) {
-                    Playlist playlist = playlistManager.createPlaylist(name);
-                    try {
-                        // Дождаться завершения сохранения
-                        playlistManager.savePlaylist(playlist).get();
-                        refreshPlaylistList();
-                        playlistNameBox.setValue("");
-                    } catch (Exception e) {
-                        com.mojang.logging.LogUtils.getLogger().error("Ошибка при сохранении плейлиста", e);
-                    }
+                    // Плейлист сразу появляется в списке (через событие), файл записывается в фоне
+                    playlistManager.createPlaylist(name);
+                    playlistNameBox.setValue("");
                 }
             }
         ).bounds(centerX - buttonWidth / 2, createButtonY, buttonWidth, buttonHeight).build());
@@ -98,15 +98,11 @@ public class PlaylistScreen extends Screen {
         this.addRenderableWidget(Button.builder(
             Component.translatable("audiocontroller.gui.select_playlist"),
             button -> {
-                if (selectedPlaylistIndex >= 0) {
-                    List<Playlist> playlists = playlistManager.getPlaylists();
-                    if (selectedPlaylistIndex < playlists.size()) {
-                        Playlist playlist = playlists.get(selectedPlaylistIndex);
-                        audioManager.setActivePlaylist(playlist);
-                        // Закрываем экран после выбора
-                        this.minecraft.setScreen(this.parent);
-                    }
-                }
+                getSelectedPlaylist().ifPresent(playlist -> {
+                    audioManager.setActivePlaylist(playlist);
+                    // Закрываем экран после выбора
+                    this.minecraft.setScreen(this.parent);
+                });
             }
         ).bounds(centerX - buttonWidth / 2, buttonsY, buttonWidth, buttonHeight).build());
         
@@ -115,35 +111,22 @@ public class PlaylistScreen extends Screen {
         this.editButton = this.addRenderableWidget(Button.builder(
             Component.translatable("audiocontroller.gui.edit_playlist"),
             button -> {
-                if (selectedPlaylistIndex >= 0) {
-                    List<Playlist> playlists = playlistManager.getPlaylists();
-                    if (selectedPlaylistIndex < playlists.size()) {
-                        Playlist playlist = playlists.get(selectedPlaylistIndex);
-                        // Загружаем треки в плейлист перед открытием экрана редактирования
-                        loadPlaylistTracks(playlist);
-                        this.minecraft.setScreen(new EditPlaylistScreen(this, playlist));
-                    }
-                }
+                getSelectedPlaylist().ifPresent(playlist -> {
+                    // Редактор работает с копией и публикует её как новую версию при сохранении
+                    Playlist draft = playlist.copy();
+                    loadPlaylistTracks(draft);
+                    this.minecraft.setScreen(new EditPlaylistScreen(this, draft));
+                });
             }
         ).bounds(centerX - buttonWidth / 2, controlButtonsY, smallButtonWidth, buttonHeight).build());
         
         this.deleteButton = this.addRenderableWidget(Button.builder(
             Component.translatable("audiocontroller.gui.delete_playlist"),
             button -> {
-                if (selectedPlaylistIndex >= 0) {
-                    List<Playlist> playlists = playlistManager.getPlaylists();
-                    if (selectedPlaylistIndex < playlists.size()) {
-                        Playlist playlist = playlists.get(selectedPlaylistIndex);
-                        try {
-                            // Дождаться завершения удаления
-                            playlistManager.deletePlaylist(playlist.getName()).get();
-                            refreshPlaylistList();
-                            selectedPlaylistIndex = -1;
-                        } catch (Exception e) {
-                            com.mojang.logging.LogUtils.getLogger().error("Ошибка при удалении плейлиста", e);
-                        }
-                    }
-                }
+                getSelectedPlaylist().ifPresent(playlist -> {
+                    selectedPlaylistName = null;
+                    playlistManager.deletePlaylist(playlist.getName());
+                });
             }
         ).bounds(centerX - buttonWidth / 2 + smallButtonWidth + controlButtonSpacing, controlButtonsY, smallButtonWidth, buttonHeight).build());
         
@@ -152,40 +135,16 @@ public class PlaylistScreen extends Screen {
         this.shuffleButton = this.addRenderableWidget(Button.builder(
             Component.translatable("audiocontroller.gui.shuffle"),
             button -> {
-                if (selectedPlaylistIndex >= 0) {
-                    List<Playlist> playlists = playlistManager.getPlaylists();
-                    if (selectedPlaylistIndex < playlists.size()) {
-                        Playlist playlist = playlists.get(selectedPlaylistIndex);
-                        playlist.setShuffle(!playlist.isShuffle());
-                        try {
-                            // Дождаться завершения сохранения
-                            playlistManager.savePlaylist(playlist).get();
-                            updateShuffleButton();
-                        } catch (Exception e) {
-                            com.mojang.logging.LogUtils.getLogger().error("Ошибка при сохранении плейлиста", e);
-                        }
-                    }
-                }
+                getSelectedPlaylist().ifPresent(playlist ->
+                    playlistManager.update(playlist.getName(), draft -> draft.setShuffle(!draft.isShuffle())));
             }
         ).bounds(centerX - buttonWidth / 2, settingsButtonsY, smallButtonWidth, buttonHeight).build());
         
         this.repeatButton = this.addRenderableWidget(Button.builder(
             Component.translatable("audiocontroller.gui.repeat"),
             button -> {
-                if (selectedPlaylistIndex >= 0) {
-                    List<Playlist> playlists = playlistManager.getPlaylists();
-                    if (selectedPlaylistIndex < playlists.size()) {
-                        Playlist playlist = playlists.get(selectedPlaylistIndex);
-                        playlist.setRepeat(!playlist.isRepeat());
-                        try {
-                            // Дождаться завершения сохранения
-                            playlistManager.savePlaylist(playlist).get();
-                            updateRepeatButton();
-                        } catch (Exception e) {
-                            com.mojang.logging.LogUtils.getLogger().error("Ошибка при сохранении плейлиста", e);
-                        }
-                    }
-                }
+                getSelectedPlaylist().ifPresent(playlist ->
+                    playlistManager.update(playlist.getName(), draft -> draft.setRepeat(!draft.isRepeat())));
             }
         ).bounds(centerX - buttonWidth / 2 + smallButtonWidth + controlButtonSpacing, settingsButtonsY, smallButtonWidth, buttonHeight).build());
         
@@ -202,23 +161,29 @@ public class PlaylistScreen extends Screen {
     private void loadPlaylistTracks(Playlist playlist) {
         // Загружаем треки из имен, если они еще не загружены
         if (playlist.getTracks().isEmpty() && !playlist.getTrackNames().isEmpty()) {
-            List<CustomMusicTrack> tracks = new ArrayList<>();
-            for (String trackName : playlist.getTrackNames()) {
-                audioManager.getMusicLoader().getTrackByName(trackName).ifPresent(tracks::add);
-            }
-            playlist.setTracks(tracks);
+            playlist.resolveTracks(audioManager.getMusicLoader().getSnapshot());
         }
     }
     
     private void refreshPlaylistList() {
-        try {
-            // Блокирующее ожидание завершения загрузки
-            playlistManager.loadPlaylists().get();
-            createPlaylistButtons();
-            updateButtons();
-        } catch (Exception e) {
-            com.mojang.logging.LogUtils.getLogger().error("Ошибка при обновлении списка плейлистов", e);
+        if (this.minecraft == null || this.minecraft.screen != this) {
+            return; // Экран уже закрыт
+        }
+        if (selectedPlaylistName != null && playlistManager.getPlaylist(selectedPlaylistName).isEmpty()) {
+            selectedPlaylistName = null;
         }
+        createPlaylistButtons();
+        updateButtons();
+    }
+
+    private Optional<Playlist> getSelectedPlaylist() {
+        return selectedPlaylistName == null ? Optional.empty() : playlistManager.getPlaylist(selectedPlaylistName);
+    }
+
+    @Override
+    public void removed() {
+        playlistManager.removeListener(playlistListener);
+        super.removed();
     }
     
     private void createPlaylistButtons() {
@@ -243,13 +208,13 @@ public class PlaylistScreen extends Screen {
         // Создаем кнопку для каждого плейлиста
         for (int i = 0; i < playlists.size(); i++) {
             Playlist playlist = playlists.get(i);
-            final int index = i;
             
-            String displayText = playlist.getName() + " (" + playlist.getTracks().size() + " треков)";
+            // Умные плейлисты собираются по правилам и отмечаются звёздочкой
+            String displayText = (playlist.isSmart() ? "★ " : "") + playlist.getName() + " (" + playlist.getTrackCount() + " треков)";
             Button button = Button.builder(
                 Component.literal(displayText),
                 (btn) -> {
-                    selectedPlaylistIndex = index;
+                    selectedPlaylistName = playlist.getName();
                     updateButtonStyles();
                     updateButtons();
                 }
@@ -264,9 +229,10 @@ public class PlaylistScreen extends Screen {
     }
     
     private void updateButtonStyles() {
+        List<Playlist> playlists = playlistManager.getPlaylists();
         for (int i = 0; i < playlistButtons.size(); i++) {
             Button button = playlistButtons.get(i);
-            if (i == selectedPlaylistIndex) {
+            if (i < playlists.size() && playlists.get(i).getName().equals(selectedPlaylistName)) {
                 // Выбранная кнопка - белый текст
                 button.setFGColor(0xFFFFFF);
             } else {
@@ -277,10 +243,10 @@ public class PlaylistScreen extends Screen {
     }
 
     private void updateButtons() {
-        boolean hasSelection = selectedPlaylistIndex >= 0 && 
-                              selectedPlaylistIndex < playlistManager.getPlaylists().size();
+        boolean hasSelection = getSelectedPlaylist().isPresent();
         // Кнопка выбора активного плейлиста всегда активна, если выбран плейлист
-        this.editButton.active = hasSelection;
+        // Треки умного плейлиста задаются правилами в его файле, а не вручную
+        this.editButton.active = hasSelection && !getSelectedPlaylist().get().isSmart();
         this.deleteButton.active = hasSelection;
         this.shuffleButton.active = hasSelection;
         this.repeatButton.active = hasSelection;
@@ -289,25 +255,15 @@ public class PlaylistScreen extends Screen {
     }
 
     private void updateShuffleButton() {
-        if (selectedPlaylistIndex >= 0) {
-            List<Playlist> playlists = playlistManager.getPlaylists();
-            if (selectedPlaylistIndex < playlists.size()) {
-                Playlist playlist = playlists.get(selectedPlaylistIndex);
-                this.shuffleButton.setMessage(Component.translatable("audiocontroller.gui.shuffle")
-                    .append(": " + (playlist.isShuffle() ? "✓" : "✗")));
-            }
-        }
+        getSelectedPlaylist().ifPresent(playlist ->
+            this.shuffleButton.setMessage(Component.translatable("audiocontroller.gui.shuffle")
+                .append(": " + (playlist.isShuffle() ? "✓" : "✗"))));
     }
 
     private void updateRepeatButton() {
-        if (selectedPlaylistIndex >= 0) {
-            List<Playlist> playlists = playlistManager.getPlaylists();
-            if (selectedPlaylistIndex < playlists.size()) {
-                Playlist playlist = playlists.get(selectedPlaylistIndex);
-                this.repeatButton.setMessage(Component.translatable("audiocontroller.gui.repeat")
-                    .append(": " + (playlist.isRepeat() ? "✓" : "✗")));
-            }
-        }
+        getSelectedPlaylist().ifPresent(playlist ->
+            this.repeatButton.setMessage(Component.translatable("audiocontroller.gui.repeat")
+                .append(": " + (playlist.isRepeat() ? "✓" : "✗"))));
     }
 
     @Override
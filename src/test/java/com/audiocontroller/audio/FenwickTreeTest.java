@@ -0,0 +1,87 @@
+package com.audiocontroller.audio;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FenwickTreeTest {
+    @Test
+    void prefixSumsMatchNaiveAfterUpdates() {
+        Random random = new Random(1);
+        long[] weights = new long[1000];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = random.nextInt(1000);
+        }
+        FenwickTree tree = new FenwickTree(weights);
+
+        for (int step = 0; step < 5000; step++) {
+            int index = random.nextInt(weights.length);
+            weights[index] = random.nextBoolean() ? 0 : random.nextLong(1L << 40);
+            tree.set(index, weights[index]);
+            int count = random.nextInt(weights.length + 1);
+            assertEquals(naivePrefix(weights, count), tree.prefixSum(count));
+            assertEquals(weights[index], tree.get(index));
+        }
+        assertEquals(naivePrefix(weights, weights.length), tree.total());
+    }
+
+    @Test
+    void findReturnsElementCoveringTarget() {
+        long[] weights = {3, 0, 0, 5, 1, 0, 2};
+        FenwickTree tree = new FenwickTree(weights);
+        int[] expected = {0, 0, 0, 3, 3, 3, 3, 3, 4, 6, 6};
+
+        for (int target = 0; target < expected.length; target++) {
+            assertEquals(expected[target], tree.find(target), "target " + target);
+        }
+        assertEquals(weights.length, tree.find(tree.total())); // За пределами суммы - позиция после последнего
+    }
+
+    @Test
+    void findNeverSelectsZeroWeight() {
+        Random random = new Random(2);
+        long[] weights = new long[777];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = random.nextInt(3) == 0 ? 0 : 1 + random.nextInt(100);
+        }
+        FenwickTree tree = new FenwickTree(weights);
+        for (int i = 0; i < 10_000; i++) {
+            int index = tree.find(random.nextLong(tree.total()));
+            assertTrue(weights[index] > 0, "индекс " + index);
+        }
+    }
+
+    @Test
+    void nearestNonZeroPrefersRightThenLeft() {
+        FenwickTree tree = new FenwickTree(new long[] {0, 4, 0, 0, 7, 0, 0});
+
+        assertEquals(1, tree.nearestNonZero(1));
+        assertEquals(1, tree.nearestNonZero(0));
+        assertEquals(4, tree.nearestNonZero(2));
+        assertEquals(4, tree.nearestNonZero(6)); // Справа ничего нет - последний ненулевой слева
+
+        tree.set(1, 0);
+        tree.set(4, 0);
+        assertEquals(-1, tree.nearestNonZero(3));
+    }
+
+    @Test
+    void emptyTree() {
+        FenwickTree tree = new FenwickTree(new long[0]);
+
+        assertEquals(0, tree.size());
+        assertEquals(0, tree.total());
+        assertEquals(0, tree.find(0));
+    }
+
+    private static long naivePrefix(long[] weights, int count) {
+        long sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += weights[i];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,120 @@
+package com.audiocontroller.audio;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IntegrityValidatorTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void referenceCrcMatchesOggPolynomial() {
+        // CRC-32/CKSUM без финальной инверсии: ~0x765E7680
+        assertEquals(0x89A1897F, OggTestFiles.crc("123456789".getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Test
+    void acceptsValidFile() throws IOException {
+        byte[] data = OggTestFiles.vorbis(new OggTestFiles.Spec().cover(100_000));
+
+        assertNull(check(data));
+        assertNull(IntegrityValidator.checkPages(Files.write(dir.resolve("valid.ogg"), data)));
+    }
+
+    @Test
+    void acceptsTrailingDataAfterEndOfStream() {
+        byte[] data = OggTestFiles.vorbis(new OggTestFiles.Spec());
+        byte[] tagged = Arrays.copyOf(data, data.length + 128);
+        System.arraycopy("TAG".getBytes(StandardCharsets.US_ASCII), 0, tagged, data.length, 3);
+
+        assertNull(check(tagged));
+    }
+
+    @Test
+    void detectsFlippedByteInEveryPage() {
+        byte[] data = OggTestFiles.vorbis(new OggTestFiles.Spec());
+        for (int[] page : pages(data)) {
+            byte[] corrupted = data.clone();
+            int offset = page[0] + page[1] - 1; // Последний байт тела страницы
+            corrupted[offset] ^= 0x10;
+
+            String error = check(corrupted);
+            assertNotNull(error, "страница на смещении " + page[0]);
+            assertTrue(error.startsWith("неверная контрольная сумма"), error);
+        }
+    }
+
+    @Test
+    void detectsTruncatedFile() {
+        byte[] data = OggTestFiles.vorbis(new OggTestFiles.Spec());
+        List<int[]> pages = pages(data);
+        int[] last = pages.get(pages.size() - 1);
+        for (int length : new int[] {last[0] + 10, last[0] + 27, last[0] + last[1] - 1}) {
+            assertEquals("файл обрезан", check(Arrays.copyOf(data, length)), "длина " + length);
+        }
+    }
+
+    @Test
+    void detectsMissingPage() {
+        byte[] data = OggTestFiles.vorbis(new OggTestFiles.Spec());
+        int[] page = pages(data).get(3);
+        byte[] gap = new byte[data.length - page[1]];
+        System.arraycopy(data, 0, gap, 0, page[0]);
+        System.arraycopy(data, page[0] + page[1], gap, page[0], data.length - page[0] - page[1]);
+
+        assertEquals("пропущена страница 3", check(gap));
+    }
+
+    @Test
+    void detectsGarbageBetweenPages() {
+        byte[] data = OggTestFiles.vorbis(new OggTestFiles.Spec());
+        int[] page = pages(data).get(2);
+        byte[] garbage = new byte[data.length + 5];
+        System.arraycopy(data, 0, garbage, 0, page[0]);
+        System.arraycopy(data, page[0], garbage, page[0] + 5, data.length - page[0]);
+
+        assertEquals("потеряна синхронизация на смещении " + page[0], check(garbage));
+    }
+
+    @Test
+    void rejectsEmptyFile() {
+        assertEquals("нет ни одной страницы", check(new byte[0]));
+    }
+
+    private static String check(byte[] data) {
+        return IntegrityValidator.checkPages(ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN));
+    }
+
+    /**
+     * Смещение и размер каждой страницы файла
+     */
+    private static List<int[]> pages(byte[] data) {
+        List<int[]> pages = new ArrayList<>();
+        int position = 0;
+        while (position < data.length) {
+            int segments = data[position + 26] & 0xFF;
+            int size = 27 + segments;
+            for (int i = 0; i < segments; i++) {
+                size += data[position + 27 + i] & 0xFF;
+            }
+            pages.add(new int[] {position, size});
+            position += size;
+        }
+        return pages;
+    }
+}
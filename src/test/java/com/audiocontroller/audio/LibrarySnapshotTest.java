@@ -0,0 +1,157 @@
+package com.audiocontroller.audio;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LibrarySnapshotTest {
+    @Test
+    void applyMatchesFullRebuild() {
+        Random random = new Random(1);
+        Map<Path, CustomMusicTrack> library = new LinkedHashMap<>();
+        LibrarySnapshot snapshot = LibrarySnapshot.EMPTY;
+        int created = 0;
+
+        for (int step = 0; step < 200; step++) {
+            List<CustomMusicTrack> added = new ArrayList<>();
+            List<CustomMusicTrack> removed = new ArrayList<>();
+            List<CustomMusicTrack> modified = new ArrayList<>();
+            for (int i = random.nextInt(50); i > 0; i--) {
+                // Имена и отпечатки повторяются, чтобы проверить совпадения в индексах
+                CustomMusicTrack track = track("artist" + created % 7 + "/track" + created, "t" + created % 40,
+                    1 + random.nextInt(60));
+                created++;
+                library.put(track.getFilePath(), track);
+                added.add(track);
+            }
+            List<CustomMusicTrack> current = new ArrayList<>(library.values());
+            for (int i = random.nextInt(4); i > 0 && !current.isEmpty(); i--) {
+                CustomMusicTrack track = current.remove(random.nextInt(current.size()));
+                library.remove(track.getFilePath());
+                removed.add(track);
+            }
+            for (int i = random.nextInt(4); i > 0 && !current.isEmpty(); i--) {
+                CustomMusicTrack track = current.get(random.nextInt(current.size()));
+                track.setFingerprint(random.nextInt(3) == 0 ? 0L : 1 + random.nextInt(60));
+                modified.add(track);
+            }
+
+            snapshot = snapshot.apply(snapshot.getVersion() + 1, new LibraryChange(added, removed, modified, false));
+            assertSameContent(new LibrarySnapshot(0, library.values()), snapshot);
+            for (CustomMusicTrack track : removed) {
+                assertFalse(snapshot.getTrackByPath(track.getFilePath()).isPresent());
+            }
+        }
+    }
+
+    @Test
+    void fileAddedAndRemovedInOneChangeIsSkipped() {
+        CustomMusicTrack kept = track("a", "a", 1);
+        CustomMusicTrack vanished = track("b", "b", 2);
+        LibrarySnapshot snapshot = LibrarySnapshot.EMPTY.apply(1,
+            new LibraryChange(List.of(kept, vanished), List.of(vanished), List.of(), false));
+
+        assertEquals(List.of(kept), snapshot.getTracks());
+        assertTrue(snapshot.getTrackById(vanished.getId()).isEmpty());
+    }
+
+    @Test
+    void nameOfRemovedTrackPassesToNextTrackWithSameName() {
+        CustomMusicTrack first = track("one/song", "song", 1);
+        CustomMusicTrack second = track("two/song", "song", 2);
+        LibrarySnapshot snapshot = LibrarySnapshot.EMPTY.apply(1,
+            new LibraryChange(List.of(first, second), List.of(), List.of(), false));
+        assertSame(first, snapshot.getTrackByName("song").orElseThrow());
+
+        snapshot = snapshot.apply(2, new LibraryChange(List.of(), List.of(first), List.of(), false));
+        assertSame(second, snapshot.getTrackByName("song").orElseThrow());
+    }
+
+    @Test
+    void modifiedFingerprintIsNotFoundByOldId() {
+        CustomMusicTrack track = track("a", "a", 5);
+        String oldId = track.getId();
+        LibrarySnapshot snapshot = LibrarySnapshot.EMPTY.apply(1, new LibraryChange(List.of(track), List.of(), List.of(), false));
+
+        track.setFingerprint(6);
+        snapshot = snapshot.apply(2, new LibraryChange(List.of(), List.of(), List.of(track), false));
+
+        assertTrue(snapshot.getTrackById(oldId).isEmpty());
+        assertSame(track, snapshot.getTrackById(track.getId()).orElseThrow());
+    }
+
+    @Test
+    void searchStopsAtLimitAndSkipsFilteredTracks() {
+        List<CustomMusicTrack> tracks = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            tracks.add(track("dir" + i + "/song", "song", i + 1)); // Одноимённые файлы в разных папках
+        }
+        LibrarySnapshot snapshot = LibrarySnapshot.EMPTY.apply(1, new LibraryChange(tracks, List.of(), List.of(), false));
+        CustomMusicTrack excluded = tracks.get(1);
+
+        assertEquals(List.of(tracks.get(0), tracks.get(2), tracks.get(3)),
+            snapshot.search("so", track -> track != excluded, 3));
+        assertEquals(List.of(tracks.get(0), tracks.get(2)), snapshot.search("", track -> track != excluded, 2));
+        assertEquals(List.of(), snapshot.search("song other", track -> true, 3));
+    }
+
+    @Test
+    void searchFindsRetaggedTrackByNewTagsOnly() {
+        CustomMusicTrack track = track("a", "a", 1);
+        LibrarySnapshot snapshot = LibrarySnapshot.EMPTY.apply(1, new LibraryChange(List.of(track), List.of(), List.of(), false));
+        track.setTags(new TrackTags("Title", "Old Band", null, 0, null));
+        snapshot = snapshot.apply(2, new LibraryChange(List.of(), List.of(), List.of(track), false));
+        track.setTags(new TrackTags("Title", "New Band", null, 0, null));
+        snapshot = snapshot.apply(3, new LibraryChange(List.of(), List.of(), List.of(track), false));
+
+        assertEquals(List.of(track), snapshot.search("new band", t -> true, 10));
+        assertEquals(List.of(), snapshot.search("old", t -> true, 10));
+        assertEquals(List.of(track), snapshot.search("title", t -> true, 10)); // Без повтора из старого сегмента
+    }
+
+    private static void assertSameContent(LibrarySnapshot expected, LibrarySnapshot actual) {
+        assertEquals(expected.getTracks(), actual.getTracks());
+        for (CustomMusicTrack track : expected.getTracks()) {
+            assertSame(expected.getTrackByName(track.getName()).orElseThrow(),
+                actual.getTrackByName(track.getName()).orElseThrow());
+            assertSame(track, actual.getTrackByPath(track.getFilePath()).orElseThrow());
+            if (track.getFingerprint() != 0L) {
+                // Из нескольких копий может вернуться любая, но с тем же содержимым и из библиотеки
+                CustomMusicTrack copy = actual.getTrackById(track.getId()).orElseThrow();
+                assertEquals(track.getFingerprint(), copy.getFingerprint());
+                assertSame(copy, expected.getTrackByPath(copy.getFilePath()).orElseThrow());
+            }
+        }
+        assertEquals(groups(expected), groups(actual));
+        for (String query : new String[] {"t1", "T3", "track2", "nothing"}) {
+            assertEquals(expected.search(query, track -> true, Integer.MAX_VALUE),
+                actual.search(query, track -> true, Integer.MAX_VALUE), query);
+        }
+    }
+
+    private static Set<Set<CustomMusicTrack>> groups(LibrarySnapshot snapshot) {
+        Set<Set<CustomMusicTrack>> groups = new HashSet<>();
+        for (List<CustomMusicTrack> group : snapshot.getDuplicates()) {
+            groups.add(new HashSet<>(group));
+        }
+        return groups;
+    }
+
+    private static CustomMusicTrack track(String path, String name, long fingerprint) {
+        CustomMusicTrack track = new CustomMusicTrack(name, Path.of("music", path + ".ogg"), 1, 1);
+        track.setFingerprint(fingerprint);
+        return track;
+    }
+}
@@ -0,0 +1,174 @@
+package com.audiocontroller.audio;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LogPlaylistStoreTest {
+    @TempDir
+    Path dir;
+
+    private Path file;
+    private Path importDirectory;
+    private PersistenceWorker persistence;
+
+    @BeforeEach
+    void setUp() {
+        file = dir.resolve("playlists.log");
+        importDirectory = dir.resolve("playlists");
+        persistence = new PersistenceWorker();
+    }
+
+    @AfterEach
+    void tearDown() {
+        persistence.shutdown();
+    }
+
+    @Test
+    void replayKeepsLatestVersions() throws IOException {
+        LogPlaylistStore store = open();
+        put(store, playlist("a", "1", "2"));
+        put(store, playlist("b", "3"));
+        put(store, playlist("a", "4"));
+        put(store, playlist("c"));
+        await(store.remove("c"));
+        store.close();
+
+        Map<String, Playlist> loaded = byName(open().loadAll(false));
+        assertEquals(Set.of("a", "b"), loaded.keySet());
+        assertEquals(List.of("4"), loaded.get("a").getTrackNames());
+        assertEquals(List.of("3"), loaded.get("b").getTrackNames());
+    }
+
+    @Test
+    void headerOnlyLoadReadsTracksOnDemand() throws IOException {
+        LogPlaylistStore store = open();
+        put(store, playlist("a", "1", "2", "3"));
+        store.close();
+
+        Playlist loaded = open().loadAll(true).get(0);
+        assertEquals(3, loaded.getTrackCount());
+        assertEquals(List.of("1", "2", "3"), loaded.getTrackNames());
+    }
+
+    @Test
+    void tornRecordIsTruncatedAtEveryLength() throws IOException {
+        LogPlaylistStore store = open();
+        put(store, playlist("a", "1"));
+        store.close();
+        long good = Files.size(file);
+        store = open();
+        store.loadAll(false);
+        put(store, playlist("b", "2"));
+        store.close();
+        byte[] full = Files.readAllBytes(file);
+
+        for (int length = (int) good; length < full.length; length++) {
+            Files.write(file, Arrays.copyOf(full, length));
+            LogPlaylistStore reopened = open();
+            assertEquals(Set.of("a"), byName(reopened.loadAll(false)).keySet(), "длина " + length);
+            assertEquals(good, Files.size(file), "оборванная запись отрезана, длина " + length);
+
+            // После обрезки журнал снова пригоден для записи
+            put(reopened, playlist("c"));
+            reopened.close();
+            assertEquals(Set.of("a", "c"), byName(open().loadAll(false)).keySet());
+        }
+    }
+
+    @Test
+    void corruptedRecordDropsItAndEverythingAfter() throws IOException {
+        LogPlaylistStore store = open();
+        put(store, playlist("a", "1"));
+        store.close();
+        long good = Files.size(file);
+        store = open();
+        store.loadAll(false);
+        put(store, playlist("b", "2"));
+        put(store, playlist("c", "3"));
+        store.close();
+
+        byte[] data = Files.readAllBytes(file);
+        data[(int) good + 12] ^= 0x01; // Внутри тела записи "b": CRC не совпадёт
+        Files.write(file, data);
+
+        assertEquals(Set.of("a"), byName(open().loadAll(false)).keySet());
+        assertEquals(good, Files.size(file));
+    }
+
+    @Test
+    void foreignFileIsMovedAsideAndJsonImported() throws IOException {
+        Files.createDirectories(importDirectory);
+        Files.writeString(importDirectory.resolve("old.json"), playlist("old", "x").toJson().toString());
+        Files.writeString(file, "garbage");
+
+        Map<String, Playlist> loaded = byName(open().loadAll(false));
+        assertEquals(List.of("x"), loaded.get("old").getTrackNames());
+        assertEquals("garbage", Files.readString(dir.resolve("playlists.log.bad")));
+    }
+
+    @Test
+    void compactionKeepsLogSmall() throws IOException {
+        LogPlaylistStore store = open();
+        String[] tracks = new String[200];
+        Arrays.fill(tracks, "track with a fairly long file name");
+        for (int i = 0; i < 100; i++) {
+            put(store, playlist("big", tracks));
+            put(store, playlist("small" + (i % 3), Integer.toString(i)));
+        }
+        store.close();
+
+        long single = playlist("big", tracks).toJson().toString().length();
+        // Без сжатия журнал вырос бы до ~100 версий большого плейлиста
+        assertTrue(Files.size(file) < 64 * 1024 + single * 3, "журнал не сжат: " + Files.size(file));
+        Map<String, Playlist> loaded = byName(open().loadAll(false));
+        assertEquals(Set.of("big", "small0", "small1", "small2"), loaded.keySet());
+        assertEquals(List.of("99"), loaded.get("small0").getTrackNames());
+    }
+
+    private LogPlaylistStore open() throws IOException {
+        LogPlaylistStore store = new LogPlaylistStore(file, importDirectory, persistence);
+        if (!Files.exists(file)) {
+            store.loadAll(false); // Создаёт пустой журнал
+        }
+        return store;
+    }
+
+    private void put(LogPlaylistStore store, Playlist playlist) {
+        await(store.put(playlist.getName(), playlist.toJson()));
+    }
+
+    /**
+     * Записывает изменение сразу, не дожидаясь интервала объединения
+     */
+    private void await(CompletableFuture<Void> write) {
+        persistence.flush().join();
+        write.join();
+    }
+
+    private static Playlist playlist(String name, String... tracks) {
+        Playlist playlist = new Playlist(name);
+        playlist.setTrackNames(new ArrayList<>(List.of(tracks)));
+        return playlist;
+    }
+
+    private static Map<String, Playlist> byName(List<Playlist> playlists) {
+        return playlists.stream().collect(Collectors.toMap(Playlist::getName, Function.identity()));
+    }
+}
@@ -0,0 +1,91 @@
+package com.audiocontroller.audio;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ShortBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Проверка по тестовым сигналам EBU Tech 3341: стерео синус 1 кГц с заданным уровнем в dBFS
+ */
+class LoudnessMeterTest {
+    private static final double TOLERANCE_LU = 0.1; // Допуск EBU Tech 3341
+
+    @Test
+    void sineAtMinus23DbfsMeasuresMinus23Lufs() {
+        for (int sampleRate : new int[] {44100, 48000}) {
+            LoudnessMeter meter = new LoudnessMeter(2, sampleRate);
+            meter.accept(sine(sampleRate, -23.0, 20));
+
+            assertEquals(-23.0, meter.getIntegratedLoudness(), TOLERANCE_LU, "частота " + sampleRate);
+        }
+    }
+
+    @Test
+    void sineAtMinus33DbfsMeasuresMinus33Lufs() {
+        LoudnessMeter meter = new LoudnessMeter(2, 48000);
+        meter.accept(sine(48000, -33.0, 20));
+
+        assertEquals(-33.0, meter.getIntegratedLoudness(), TOLERANCE_LU);
+    }
+
+    @Test
+    void relativeGateIgnoresQuietParts() {
+        // EBU Tech 3341, случай 3: 10 с при -36 dBFS, 60 с при -23 dBFS, 10 с при -36 dBFS
+        LoudnessMeter meter = new LoudnessMeter(2, 48000);
+        meter.accept(sine(48000, -36.0, 10));
+        meter.accept(sine(48000, -23.0, 60));
+        meter.accept(sine(48000, -36.0, 10));
+
+        assertEquals(-23.0, meter.getIntegratedLoudness(), TOLERANCE_LU);
+    }
+
+    @Test
+    void resultDoesNotDependOnChunkSize() {
+        ShortBuffer pcm = sine(44100, -20.0, 5);
+        LoudnessMeter whole = new LoudnessMeter(2, 44100);
+        whole.accept(pcm.duplicate());
+
+        LoudnessMeter chunked = new LoudnessMeter(2, 44100);
+        for (int position = 0; position < pcm.limit(); position += 2 * 1000) {
+            ShortBuffer chunk = pcm.duplicate();
+            chunk.position(position).limit(Math.min(pcm.limit(), position + 2 * 1000));
+            chunked.accept(chunk);
+        }
+
+        assertEquals(whole.getIntegratedLoudness(), chunked.getIntegratedLoudness(), 1e-9);
+        assertEquals(whole.getPeak(), chunked.getPeak());
+    }
+
+    @Test
+    void silenceIsBelowAbsoluteGate() {
+        LoudnessMeter meter = new LoudnessMeter(2, 48000);
+        meter.accept(ShortBuffer.allocate(48000 * 2 * 3));
+
+        assertEquals(Double.NEGATIVE_INFINITY, meter.getIntegratedLoudness());
+        assertEquals(0.0, meter.getPeak());
+    }
+
+    @Test
+    void peakIsLargestSample() {
+        LoudnessMeter meter = new LoudnessMeter(2, 48000);
+        meter.accept(sine(48000, -6.0, 1));
+
+        assertEquals(Math.pow(10.0, -6.0 / 20.0), meter.getPeak(), 1e-3);
+    }
+
+    /**
+     * Одинаковый синус 1 кГц в обоих каналах, амплитуда в dBFS относительно полной шкалы
+     */
+    private static ShortBuffer sine(int sampleRate, double dbfs, int seconds) {
+        double amplitude = Math.pow(10.0, dbfs / 20.0) * 32767.0;
+        int frames = sampleRate * seconds;
+        ShortBuffer pcm = ShortBuffer.allocate(frames * 2);
+        for (int i = 0; i < frames; i++) {
+            short sample = (short) Math.round(amplitude * Math.sin(2.0 * Math.PI * 1000.0 * i / sampleRate));
+            pcm.put(sample).put(sample);
+        }
+        return pcm.flip();
+    }
+}
@@ -0,0 +1,85 @@
+package com.audiocontroller.audio;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class OggProbeTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsFormatLengthAndTags() throws IOException {
+        OggTestFiles.Spec spec = new OggTestFiles.Spec().audioPackets(300).tags("Song", "Band");
+        OggProbe.Info info = OggProbe.probe(write("track.ogg", OggTestFiles.vorbis(spec)));
+
+        assertEquals(OggTestFiles.CHANNELS, info.channels);
+        assertEquals(OggTestFiles.SAMPLE_RATE, info.sampleRate);
+        assertEquals(spec.lengthFrames(), info.lengthFrames);
+        assertEquals(spec.lengthFrames() * 1000 / OggTestFiles.SAMPLE_RATE, info.getDurationMillis());
+        assertEquals("Song", info.tags.getTitle());
+        assertEquals("Band", info.tags.getArtist());
+    }
+
+    @Test
+    void readsLengthOfFileLargerThanProbeWindows() throws IOException {
+        OggTestFiles.Spec spec = new OggTestFiles.Spec().audioPackets(5000); // ~2 МБ
+        OggProbe.Info info = OggProbe.probe(write("long.ogg", OggTestFiles.vorbis(spec)));
+
+        assertEquals(spec.lengthFrames(), info.lengthFrames);
+    }
+
+    @Test
+    void rejectsFileThatIsNotOgg() throws IOException {
+        Path file = write("fake.ogg", "ID3 not an ogg file at all".getBytes());
+
+        assertThrows(IOException.class, () -> OggProbe.probe(file));
+    }
+
+    @Test
+    void rejectsFileTruncatedInsidePageHeader() throws IOException {
+        byte[] data = OggTestFiles.vorbis(new OggTestFiles.Spec());
+        for (int length : new int[] {4, 10, 26, 27, 28, 40}) {
+            Path file = write("cut" + length + ".ogg", Arrays.copyOf(data, length));
+            assertThrows(IOException.class, () -> OggProbe.probe(file), "длина " + length);
+        }
+    }
+
+    @Test
+    void fingerprintIgnoresTagsAndCover() throws IOException {
+        OggTestFiles.Spec spec = new OggTestFiles.Spec().seed(5).audioPackets(400);
+        long original = OggProbe.probe(write("a.ogg", OggTestFiles.vorbis(spec))).fingerprint;
+
+        spec.tags("Другое название", "Другой исполнитель");
+        long retagged = OggProbe.probe(write("b.ogg", OggTestFiles.vorbis(spec))).fingerprint;
+        spec.cover(200_000); // Комментарии растягиваются на десятки страниц, звук сдвигается в файле
+        long withCover = OggProbe.probe(write("c.ogg", OggTestFiles.vorbis(spec))).fingerprint;
+
+        assertNotEquals(0L, original);
+        assertEquals(original, retagged);
+        assertEquals(original, withCover);
+    }
+
+    @Test
+    void fingerprintDependsOnAudio() throws IOException {
+        long base = OggProbe.probe(write("a.ogg", OggTestFiles.vorbis(new OggTestFiles.Spec().seed(1)))).fingerprint;
+        long otherAudio = OggProbe.probe(write("b.ogg", OggTestFiles.vorbis(new OggTestFiles.Spec().seed(2)))).fingerprint;
+        long longer = OggProbe.probe(write("c.ogg",
+            OggTestFiles.vorbis(new OggTestFiles.Spec().seed(1).audioPackets(201)))).fingerprint;
+
+        assertNotEquals(base, otherAudio);
+        assertNotEquals(base, longer);
+    }
+
+    private Path write(String name, byte[] data) throws IOException {
+        return Files.write(dir.resolve(name), data);
+    }
+}
@@ -0,0 +1,207 @@
+package com.audiocontroller.audio;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Синтетические OGG Vorbis файлы для тестов: настоящая раскладка страниц Ogg (lacing, флаги,
+ * номера страниц, CRC), заголовки Vorbis и случайные "звуковые" пакеты. Звук не декодируется,
+ * но для разбора контейнера (OggProbe, IntegrityValidator) этого достаточно
+ */
+final class OggTestFiles {
+    static final int SERIAL = 0x1234ABCD;
+    static final int SAMPLE_RATE = 44100;
+    static final int CHANNELS = 2;
+    static final int FRAMES_PER_PACKET = 1024;
+
+    private OggTestFiles() {
+    }
+
+    /**
+     * Параметры файла. Одинаковые seed и audioPackets дают одинаковый звук при любых тегах
+     */
+    static final class Spec {
+        long seed = 1;
+        int audioPackets = 200;
+        int maxPageBody = 4096;
+        String title = "Title";
+        String artist = "Artist";
+        int coverBytes = 0; // Размер "обложки" в комментариях
+
+        Spec seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        Spec audioPackets(int audioPackets) {
+            this.audioPackets = audioPackets;
+            return this;
+        }
+
+        Spec tags(String title, String artist) {
+            this.title = title;
+            this.artist = artist;
+            return this;
+        }
+
+        Spec cover(int coverBytes) {
+            this.coverBytes = coverBytes;
+            return this;
+        }
+
+        long lengthFrames() {
+            return (long) audioPackets * FRAMES_PER_PACKET;
+        }
+    }
+
+    static byte[] vorbis(Spec spec) {
+        Writer writer = new Writer(SERIAL, spec.maxPageBody);
+        writer.packet(identificationHeader(), 0);
+        writer.flushPage(); // Заголовок идентификации - единственный пакет первой страницы
+        writer.packet(commentHeader(spec), 0);
+        writer.packet(setupHeader(spec.seed), 0);
+        writer.flushPage(); // Звук начинается с новой страницы
+
+        Random random = new Random(spec.seed);
+        for (int i = 1; i <= spec.audioPackets; i++) {
+            byte[] packet = new byte[100 + random.nextInt(600)];
+            random.nextBytes(packet);
+            writer.packet(packet, (long) i * FRAMES_PER_PACKET);
+        }
+        return writer.finish();
+    }
+
+    private static byte[] identificationHeader() {
+        ByteBuffer buffer = ByteBuffer.allocate(30).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put((byte) 1).put("vorbis".getBytes(StandardCharsets.US_ASCII));
+        buffer.putInt(0).put((byte) CHANNELS).putInt(SAMPLE_RATE);
+        buffer.putInt(0).putInt(128000).putInt(0);
+        buffer.put((byte) 0xB8).put((byte) 1);
+        return buffer.array();
+    }
+
+    private static byte[] commentHeader(Spec spec) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(3);
+        out.writeBytes("vorbis".getBytes(StandardCharsets.US_ASCII));
+        writeString(out, "test vendor");
+        int count = 2 + (spec.coverBytes > 0 ? 1 : 0);
+        writeInt(out, count);
+        writeString(out, "TITLE=" + spec.title);
+        writeString(out, "ARTIST=" + spec.artist);
+        if (spec.coverBytes > 0) {
+            byte[] cover = new byte[spec.coverBytes];
+            new Random(spec.coverBytes).nextBytes(cover);
+            byte[] key = "METADATA_BLOCK_PICTURE=".getBytes(StandardCharsets.US_ASCII);
+            writeInt(out, key.length + cover.length);
+            out.writeBytes(key);
+            out.writeBytes(cover);
+        }
+        out.write(1);
+        return out.toByteArray();
+    }
+
+    private static byte[] setupHeader(long seed) {
+        byte[] packet = new byte[3000];
+        new Random(seed * 31).nextBytes(packet);
+        packet[0] = 5;
+        System.arraycopy("vorbis".getBytes(StandardCharsets.US_ASCII), 0, packet, 1, 6);
+        return packet;
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeInt(out, bytes.length);
+        out.writeBytes(bytes);
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value);
+        out.write(value >>> 8);
+        out.write(value >>> 16);
+        out.write(value >>> 24);
+    }
+
+    /**
+     * CRC-32 страницы Ogg, посчитанный побитно (независимо от таблицы IntegrityValidator)
+     */
+    static int crc(byte[] page) {
+        int crc = 0;
+        for (int i = 0; i < page.length; i++) {
+            int value = i >= 22 && i < 26 ? 0 : page[i] & 0xFF;
+            crc ^= value << 24;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x80000000) != 0 ? (crc << 1) ^ 0x04C11DB7 : crc << 1;
+            }
+        }
+        return crc;
+    }
+
+    /**
+     * Раскладывает пакеты по страницам Ogg
+     */
+    static final class Writer {
+        private final int serial;
+        private final int maxPageBody;
+        private final ByteArrayOutputStream file = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream lacing = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private int sequence;
+        private long granule = -1;
+        private boolean continued;
+
+        Writer(int serial, int maxPageBody) {
+            this.serial = serial;
+            this.maxPageBody = maxPageBody;
+        }
+
+        void packet(byte[] packet, long packetGranule) {
+            int offset = 0;
+            while (true) {
+                if (lacing.size() == 255 || body.size() >= maxPageBody) {
+                    writePage(false);
+                    continued = offset > 0; // Страница начинается с продолжения пакета
+                }
+                int length = Math.min(255, packet.length - offset);
+                lacing.write(length);
+                body.write(packet, offset, length);
+                offset += length;
+                if (length < 255) {
+                    granule = packetGranule;
+                    return;
+                }
+            }
+        }
+
+        void flushPage() {
+            if (lacing.size() > 0) {
+                writePage(false);
+            }
+        }
+
+        byte[] finish() {
+            writePage(true);
+            return file.toByteArray();
+        }
+
+        private void writePage(boolean last) {
+            byte[] segments = lacing.toByteArray();
+            byte[] data = body.toByteArray();
+            ByteBuffer page = ByteBuffer.allocate(27 + segments.length + data.length).order(ByteOrder.LITTLE_ENDIAN);
+            int flags = (continued ? 1 : 0) | (sequence == 0 ? 2 : 0) | (last ? 4 : 0);
+            page.put("OggS".getBytes(StandardCharsets.US_ASCII)).put((byte) 0).put((byte) flags);
+            page.putLong(granule).putInt(serial).putInt(sequence++).putInt(0);
+            page.put((byte) segments.length).put(segments).put(data);
+            byte[] bytes = page.array();
+            ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(22, crc(bytes));
+            file.writeBytes(bytes);
+            lacing.reset();
+            body.reset();
+            granule = -1;
+            continued = false;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.audiocontroller.audio;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class PersistentHashMapTest {
+    @Test
+    void matchesHashMapUnderRandomUpdates() {
+        Random random = new Random(1);
+        Map<Integer, Integer> expected = new HashMap<>();
+        PersistentHashMap<Integer, Integer> map = PersistentHashMap.empty();
+
+        for (int step = 0; step < 50_000; step++) {
+            int key = random.nextInt(5000);
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.remove(key);
+            } else {
+                expected.put(key, step);
+                map = map.put(key, step);
+            }
+            assertEquals(expected.size(), map.size());
+            int probe = random.nextInt(5000);
+            assertEquals(expected.get(probe), map.get(probe));
+        }
+        assertEquals(expected, contents(map));
+    }
+
+    @Test
+    void previousVersionIsUnchanged() {
+        PersistentHashMap<String, Integer> before = PersistentHashMap.<String, Integer>empty().put("a", 1).put("b", 2);
+        PersistentHashMap<String, Integer> after = before.put("a", 3).remove("b").put("c", 4);
+
+        assertEquals(Map.of("a", 1, "b", 2), contents(before));
+        assertEquals(Map.of("a", 3, "c", 4), contents(after));
+    }
+
+    @Test
+    void unchangedOperationsReturnSameMap() {
+        Integer value = 1000;
+        PersistentHashMap<String, Integer> map = PersistentHashMap.<String, Integer>empty().put("a", value);
+
+        assertSame(map, map.put("a", value));
+        assertSame(map, map.remove("missing"));
+    }
+
+    @Test
+    void keysWithEqualHashesAreKeptApart() {
+        PersistentHashMap<Collider, Integer> map = PersistentHashMap.empty();
+        for (int i = 0; i < 10; i++) {
+            map = map.put(new Collider(i, i % 2), i);
+        }
+        map = map.put(new Collider(100, 7), 100); // Другой хэш рядом с узлом совпадений
+
+        assertEquals(11, map.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, map.get(new Collider(i, i % 2)));
+        }
+        for (int i = 0; i < 10; i++) {
+            map = map.remove(new Collider(i, i % 2));
+        }
+        assertEquals(1, map.size());
+        assertNull(map.get(new Collider(0, 0)));
+        assertEquals(100, map.get(new Collider(100, 7)));
+    }
+
+    private static <K, V> Map<K, V> contents(PersistentHashMap<K, V> map) {
+        Map<K, V> result = new HashMap<>();
+        map.forEach(result::put);
+        return result;
+    }
+
+    private record Collider(int id, int hash) {
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.audiocontroller.audio;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PersistentSequenceTest {
+    @Test
+    void matchesSortedMapUnderRandomUpdates() {
+        Random random = new Random(1);
+        TreeMap<Long, Integer> expected = new TreeMap<>();
+        PersistentSequence<Integer> sequence = PersistentSequence.empty();
+
+        for (int step = 0; step < 20_000; step++) {
+            long key = random.nextInt(3000);
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                sequence = sequence.remove(key);
+            } else {
+                expected.put(key, step);
+                sequence = sequence.put(key, step);
+            }
+            assertEquals(expected.size(), sequence.size());
+            if (!expected.isEmpty()) {
+                int index = random.nextInt(expected.size());
+                assertEquals(new ArrayList<>(expected.values()).get(index), sequence.get(index));
+            }
+        }
+        assertEquals(new ArrayList<>(expected.values()), sequence.asList());
+    }
+
+    @Test
+    void appendingKeepsTreeBalanced() {
+        PersistentSequence<Integer> sequence = PersistentSequence.empty();
+        for (int i = 0; i < 100_000; i++) {
+            sequence = sequence.put(i, i);
+        }
+        for (int i = 0; i < 100_000; i += 2) {
+            sequence = sequence.remove(i);
+        }
+
+        assertEquals(50_000, sequence.size());
+        assertEquals(1, sequence.get(0));
+        assertEquals(99_999, sequence.get(49_999));
+        assertEquals(25_001, sequence.asList().indexOf(50_003));
+    }
+
+    @Test
+    void previousVersionIsUnchanged() {
+        PersistentSequence<String> before = PersistentSequence.<String>empty().put(1, "a").put(2, "b").put(3, "c");
+        PersistentSequence<String> after = before.remove(2).put(4, "d");
+        List<String> view = before.asList();
+
+        assertEquals(List.of("a", "b", "c"), view);
+        assertEquals(List.of("a", "c", "d"), after.asList());
+        assertSame(after, after.remove(2));
+        assertThrows(UnsupportedOperationException.class, () -> view.add("x"));
+        assertThrows(IndexOutOfBoundsException.class, () -> view.get(3));
+    }
+}
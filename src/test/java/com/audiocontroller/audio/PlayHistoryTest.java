@@ -0,0 +1,227 @@
+package com.audiocontroller.audio;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PlayHistoryTest {
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 17;
+
+    @TempDir
+    Path dir;
+
+    private final CustomMusicTrack first = track("first", 0x1111L);
+    private final CustomMusicTrack second = track("second", 0x2222L);
+
+    @Test
+    void countersSurviveRestart() {
+        PlayHistory history = open();
+        long before = System.currentTimeMillis();
+        history.record(first, PlayHistory.Event.PLAY);
+        history.record(first, PlayHistory.Event.COMPLETE);
+        history.record(first, PlayHistory.Event.PLAY);
+        history.record(second, PlayHistory.Event.PLAY);
+        history.record(second, PlayHistory.Event.SKIP);
+        history.shutdown();
+
+        history = open();
+        PlayHistory.TrackStats stats = history.getStats(first);
+        assertEquals(2, stats.getPlays());
+        assertEquals(1, stats.getCompletions());
+        assertEquals(0, stats.getSkips());
+        assertTrue(stats.getLastPlayed() >= before);
+        assertEquals(1, history.getStats(second).getSkips());
+        assertEquals(0, history.getPlays(track("unknown", 0x3333L)));
+        history.shutdown();
+    }
+
+    @Test
+    void tornRecordIsDroppedAtEveryLength() throws IOException {
+        PlayHistory history = open();
+        for (int i = 0; i < 3; i++) {
+            history.record(first, PlayHistory.Event.PLAY);
+        }
+        history.shutdown();
+        byte[] full = Files.readAllBytes(log());
+        assertEquals(HEADER_SIZE + 3 * RECORD_SIZE, full.length);
+
+        for (int cut = 1; cut < RECORD_SIZE; cut++) {
+            Files.write(log(), Arrays.copyOf(full, full.length - cut));
+            history = open();
+            assertEquals(2, history.getPlays(first), "отрезано " + cut);
+            history.shutdown();
+            assertEquals(HEADER_SIZE + 2 * RECORD_SIZE, Files.size(log()));
+        }
+    }
+
+    @Test
+    void compactionFoldsLogIntoStats() throws IOException {
+        PlayHistory history = open();
+        int plays = 16_001; // Больше порога сжатия журнала (256 КБ)
+        for (int i = 0; i < plays; i++) {
+            history.record(i % 2 == 0 ? first : second, PlayHistory.Event.PLAY);
+        }
+        history.shutdown();
+
+        assertTrue(Files.exists(stats()));
+        assertTrue(Files.size(log()) < 256 * 1024, "журнал не свёрнут: " + Files.size(log()));
+        history = open();
+        assertEquals(8001, history.getPlays(first));
+        assertEquals(8000, history.getPlays(second));
+        history.shutdown();
+    }
+
+    @Test
+    void logOfOlderGenerationIsIgnored() throws IOException {
+        PlayHistory history = open();
+        for (int i = 0; i < 16_000; i++) {
+            history.record(first, PlayHistory.Event.PLAY);
+        }
+        history.shutdown();
+        int folded = foldedPlays(0x1111L); // События после сжатия в журнале нового поколения теряются вместе с ним
+        assertTrue(folded > 0);
+
+        // Сбой между записью счётчиков и заменой журнала: на диске остался журнал поколения 0
+        ByteBuffer stale = ByteBuffer.allocate(HEADER_SIZE + RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        stale.put("APHL".getBytes(StandardCharsets.US_ASCII)).putInt(1).putLong(0);
+        stale.putLong(0x1111L).put((byte) 1).putLong(System.currentTimeMillis());
+        Files.write(log(), stale.array());
+
+        history = open();
+        assertEquals(folded, history.getPlays(first));
+        history.shutdown();
+    }
+
+    @Test
+    void corruptedFilesStartEmptyHistory() throws IOException {
+        Files.writeString(log(), "garbage that is long enough");
+        Files.writeString(stats(), "more garbage, also long enough");
+
+        PlayHistory history = open();
+        assertEquals(0, history.getPlays(first));
+        history.record(first, PlayHistory.Event.PLAY);
+        history.shutdown();
+
+        history = open();
+        assertEquals(1, history.getPlays(first));
+        history.shutdown();
+    }
+
+    @Test
+    void unfinishedRecordAfterRestartIsAppendedCleanly() throws IOException {
+        PlayHistory history = open();
+        history.record(first, PlayHistory.Event.PLAY);
+        history.shutdown();
+        Files.write(log(), new byte[] {1, 2, 3}, StandardOpenOption.APPEND);
+
+        history = open();
+        history.record(first, PlayHistory.Event.PLAY);
+        history.shutdown();
+
+        history = open();
+        assertEquals(2, history.getPlays(first));
+        history.shutdown();
+    }
+
+    @Test
+    void eventsBeforeFingerprintMoveToItOnResolve() {
+        CustomMusicTrack unprobed = track("song", 0L);
+        CustomMusicTrack sameName = track("song", 0L); // Тот же файл в другой папке
+        PlayHistory history = open();
+        history.record(unprobed, PlayHistory.Event.PLAY);
+        history.record(unprobed, PlayHistory.Event.SKIP);
+
+        assertEquals(1, history.getPlays(unprobed));
+        assertEquals(0, history.getPlays(sameName));
+        history.resolvePending();
+        assertEquals(1, history.getPlays(unprobed)); // Отпечатка ещё нет - события ждут
+
+        unprobed.setFingerprint(0x1111L);
+        history.record(first, PlayHistory.Event.PLAY);
+        history.resolvePending();
+        PlayHistory.TrackStats stats = history.getStats(unprobed);
+        assertEquals(2, stats.getPlays());
+        assertEquals(1, stats.getSkips());
+        history.shutdown();
+
+        history = open();
+        assertEquals(2, history.getPlays(first));
+        assertEquals(1, history.getStats(first).getSkips());
+        history.shutdown();
+    }
+
+    @Test
+    void failedCompactionKeepsWriterAlive() throws IOException {
+        PlayHistory history = open();
+        Files.createDirectories(dir.resolve("history.log.tmp")); // Замена журнала не удастся
+        for (int i = 0; i < 16_000; i++) {
+            history.record(first, PlayHistory.Event.PLAY);
+        }
+        awaitLogSize(HEADER_SIZE + 16_000L * RECORD_SIZE);
+        Files.delete(dir.resolve("history.log.tmp"));
+        history.record(first, PlayHistory.Event.PLAY);
+        history.shutdown();
+
+        history = open();
+        assertEquals(16_001, history.getPlays(first));
+        history.shutdown();
+    }
+
+    /**
+     * Количество воспроизведений трека в файле счётчиков
+     */
+    private int foldedPlays(long key) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(stats())).order(ByteOrder.LITTLE_ENDIAN);
+        int count = data.getInt(HEADER_SIZE);
+        for (int i = 0; i < count; i++) {
+            int offset = HEADER_SIZE + 4 + i * 28;
+            if (data.getLong(offset) == key) {
+                return data.getInt(offset + 8);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Ждёт, пока поток записи допишет журнал до нужного размера
+     */
+    private void awaitLogSize(long size) throws IOException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (Files.size(log()) < size) {
+            assertTrue(System.currentTimeMillis() < deadline, "журнал не дописан: " + Files.size(log()));
+            Thread.onSpinWait();
+        }
+    }
+
+    private PlayHistory open() {
+        PlayHistory history = new PlayHistory(log(), stats());
+        history.getLoaded().join();
+        return history;
+    }
+
+    private Path log() {
+        return dir.resolve("history.log");
+    }
+
+    private Path stats() {
+        return dir.resolve("history.stats");
+    }
+
+    private static CustomMusicTrack track(String name, long fingerprint) {
+        CustomMusicTrack track = MusicLoader.createTrack(Path.of("music", name + ".ogg"), 1, 1);
+        track.setFingerprint(fingerprint);
+        return track;
+    }
+}
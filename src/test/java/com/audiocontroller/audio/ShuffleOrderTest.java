@@ -0,0 +1,110 @@
+package com.audiocontroller.audio;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShuffleOrderTest {
+    @Test
+    void everyCycleIsPermutation() {
+        for (int size : new int[] {1, 2, 3, 10, 257}) {
+            ShuffleOrder order = new ShuffleOrder(size, size);
+            for (int cycle = 0; cycle < 5; cycle++) {
+                assertEquals(size, new HashSet<>(cycle(order)).size(), "размер " + size);
+            }
+        }
+    }
+
+    @Test
+    void newCycleDoesNotRepeatLastTrack() {
+        for (long seed = 0; seed < 200; seed++) {
+            ShuffleOrder order = new ShuffleOrder(5, seed);
+            List<Integer> previous = cycle(order);
+            for (int cycle = 0; cycle < 10; cycle++) {
+                List<Integer> current = cycle(order);
+                assertNotEquals(previous.get(previous.size() - 1), current.get(0), "seed " + seed);
+                previous = current;
+            }
+        }
+    }
+
+    @Test
+    void startAtPlayingTrackSkipsItInFirstCycle() {
+        ShuffleOrder order = new ShuffleOrder(8, 42);
+        order.startAt(5);
+        Set<Integer> rest = new HashSet<>();
+        for (int i = 0; i < 7; i++) {
+            rest.add(order.next(true));
+        }
+
+        assertEquals(7, rest.size());
+        assertFalse(rest.contains(5));
+    }
+
+    @Test
+    void sameSeedGivesSameOrder() {
+        assertEquals(sequence(new ShuffleOrder(50, 7), 200), sequence(new ShuffleOrder(50, 7), 200));
+        assertNotEquals(sequence(new ShuffleOrder(50, 7), 200), sequence(new ShuffleOrder(50, 8), 200));
+    }
+
+    @Test
+    void previousAndNextRetraceHistory() {
+        ShuffleOrder order = new ShuffleOrder(10, 3);
+        List<Integer> played = sequence(order, 6);
+
+        for (int i = 4; i >= 0; i--) {
+            assertEquals(played.get(i), order.previous());
+        }
+        assertEquals(-1, order.previous()); // Первый трек круга
+        for (int i = 1; i < 6; i++) {
+            assertEquals(played.get(i), order.next(true));
+        }
+        Set<Integer> all = new HashSet<>(played);
+        for (int i = 6; i < 10; i++) {
+            all.add(order.next(true)); // Дальше - новые треки того же круга
+        }
+        assertEquals(10, all.size());
+    }
+
+    @Test
+    void stopsAtEndWithoutRepeat() {
+        ShuffleOrder order = new ShuffleOrder(3, 1);
+        sequence(order, 3);
+
+        assertEquals(-1, order.next(false));
+        assertEquals(-1, new ShuffleOrder(0, 1).next(true));
+    }
+
+    @Test
+    void firstTrackIsUniform() {
+        int size = 4;
+        int runs = 40_000;
+        int[] counts = new int[size];
+        for (int seed = 0; seed < runs; seed++) {
+            counts[new ShuffleOrder(size, seed).next(true)]++;
+        }
+        for (int count : counts) {
+            assertEquals(runs / size, count, runs / size * 0.05);
+        }
+    }
+
+    private static List<Integer> cycle(ShuffleOrder order) {
+        return sequence(order, order.size());
+    }
+
+    private static List<Integer> sequence(ShuffleOrder order, int count) {
+        List<Integer> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(order.next(true));
+        }
+        return result;
+    }
+}
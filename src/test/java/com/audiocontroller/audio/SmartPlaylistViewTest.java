@@ -0,0 +1,62 @@
+package com.audiocontroller.audio;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SmartPlaylistViewTest {
+    private static final SmartRules BOSS_FOLDER = new SmartRules("boss", -1, -1, List.of(), false);
+
+    private final SmartPlaylistView view = new SmartPlaylistView(BOSS_FOLDER, Path.of("music"), track -> false);
+
+    @Test
+    void publishedVersionDoesNotChange() {
+        CustomMusicTrack first = track("boss/first");
+        CustomMusicTrack second = track("boss/second");
+        CustomMusicTrack third = track("boss/third");
+        view.apply(added(first, second, track("other/skipped"), third));
+        SmartPlaylistView.Matches before = view.getMatches();
+
+        view.apply(new LibraryChange(List.of(track("boss/fourth")), List.of(first), List.of(), false));
+        SmartPlaylistView.Matches after = view.getMatches();
+
+        assertEquals(List.of(first, second, third), before.tracks);
+        assertEquals(List.of(second, third, after.tracks.get(2)), after.tracks); // Порядок остальных сохраняется
+        assertTrue(after.version > before.version);
+    }
+
+    @Test
+    void publishedPlaylistKeepsItsTracks() {
+        CustomMusicTrack first = track("boss/first");
+        view.apply(added(first));
+        Playlist published = new Playlist("boss");
+        published.setRules(BOSS_FOLDER);
+        published.setSmartView(view);
+
+        CustomMusicTrack second = track("boss/second");
+        view.apply(added(second));
+
+        assertEquals(List.of(first), published.getTracks());
+        assertEquals(1, published.getTrackCount());
+        assertTrue(published.isSmartViewChanged());
+
+        Playlist next = published.copy();
+        next.setSmartView(view);
+        assertEquals(List.of(first, second), next.getTracks());
+        assertFalse(next.isSmartViewChanged());
+        assertEquals(List.of(first), published.getTracks());
+    }
+
+    private static LibraryChange added(CustomMusicTrack... tracks) {
+        return new LibraryChange(List.of(tracks), List.of(), List.of(), false);
+    }
+
+    private static CustomMusicTrack track(String path) {
+        return MusicLoader.createTrack(Path.of("music", path + ".ogg"), 1, 1);
+    }
+}
@@ -0,0 +1,125 @@
+package com.audiocontroller.audio;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TrackCatalogTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTripKeepsAllFields() {
+        Path musicDir = dir.resolve("music");
+        CustomMusicTrack full = MusicLoader.createTrack(musicDir.resolve("Группа/Альбом/01 - песня.ogg"), 123456, 1700000000000L);
+        full.setDuration(Duration.ofMillis(215300));
+        full.setLoaded(true);
+        full.setLoudness(-14.5f, 0.98f);
+        full.setFingerprint(0x8000_0000_1234_5678L);
+        full.setTags(new TrackTags("Песня", "Группа", "Альбом", 7, "Rock"));
+        full.setIntegrity(TrackIntegrity.CORRUPT);
+        CustomMusicTrack bare = MusicLoader.createTrack(musicDir.resolve("new.ogg"), 42, 1);
+
+        Path file = dir.resolve("catalog.bin");
+        TrackCatalog.save(file, musicDir, List.of(full, bare));
+        List<CustomMusicTrack> loaded = TrackCatalog.load(file, musicDir);
+
+        assertEquals(2, loaded.size());
+        CustomMusicTrack track = loaded.get(0);
+        assertEquals(full.getFilePath(), track.getFilePath());
+        assertEquals("01 - песня", track.getName());
+        assertEquals(123456, track.getFileSize());
+        assertEquals(1700000000000L, track.getLastModified());
+        assertTrue(track.isLoaded());
+        assertEquals(Duration.ofMillis(215300), track.getDuration());
+        assertEquals(-14.5f, track.getLoudness());
+        assertEquals(0.98f, track.getPeak());
+        assertEquals(full.getFingerprint(), track.getFingerprint());
+        assertEquals("Песня", track.getTitle());
+        assertEquals("Группа", track.getArtist());
+        assertEquals("Альбом", track.getAlbum());
+        assertEquals("Rock", track.getGenre());
+        assertEquals(7, track.getTrackNumber());
+        assertEquals(TrackIntegrity.CORRUPT, track.getIntegrity());
+
+        CustomMusicTrack empty = loaded.get(1);
+        assertFalse(empty.isLoaded()); // Файл будет прочитан заново
+        assertFalse(empty.hasLoudness());
+        assertEquals(0L, empty.getFingerprint());
+        assertNull(empty.getTags().getTitle());
+        assertEquals(TrackIntegrity.UNKNOWN, empty.getIntegrity());
+    }
+
+    @Test
+    void missingOrForeignFileGivesEmptyLibrary() throws IOException {
+        Path musicDir = dir.resolve("music");
+        assertTrue(TrackCatalog.load(dir.resolve("absent.bin"), musicDir).isEmpty());
+
+        Path foreign = Files.write(dir.resolve("foreign.bin"), "not a catalog at all".getBytes());
+        assertTrue(TrackCatalog.load(foreign, musicDir).isEmpty());
+
+        Path newer = dir.resolve("newer.bin");
+        TrackCatalog.save(newer, musicDir, List.of(MusicLoader.createTrack(musicDir.resolve("a.ogg"), 1, 1)));
+        byte[] data = Files.readAllBytes(newer);
+        ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN).putInt(4, 1000);
+        Files.write(newer, data);
+        assertTrue(TrackCatalog.load(newer, musicDir).isEmpty());
+    }
+
+    @Test
+    void truncatedCatalogIsDiscarded() throws IOException {
+        Path musicDir = dir.resolve("music");
+        Path source = dir.resolve("catalog.bin");
+        TrackCatalog.save(source, musicDir, tracks(musicDir, 20));
+        byte[] data = Files.readAllBytes(source);
+
+        for (int length = 0; length < data.length; length++) {
+            Path file = Files.write(dir.resolve("cut" + length + ".bin"), Arrays.copyOf(data, length));
+            assertTrue(TrackCatalog.load(file, musicDir).isEmpty(), "длина " + length);
+        }
+    }
+
+    @Test
+    void corruptedBytesNeverThrow() throws IOException {
+        Path musicDir = dir.resolve("music");
+        Path source = dir.resolve("catalog.bin");
+        TrackCatalog.save(source, musicDir, tracks(musicDir, 20));
+        byte[] data = Files.readAllBytes(source);
+
+        Random random = new Random(7);
+        for (int i = 0; i < 300; i++) {
+            byte[] corrupted = data.clone();
+            for (int j = 0; j < 1 + random.nextInt(4); j++) {
+                corrupted[random.nextInt(corrupted.length)] = (byte) random.nextInt(256);
+            }
+            Path file = Files.write(dir.resolve("bad" + i + ".bin"), corrupted);
+            // Повреждение внутри записи может дать неверные поля, но не исключение и не огромный список
+            assertTrue(TrackCatalog.load(file, musicDir).size() <= 20);
+        }
+    }
+
+    private static List<CustomMusicTrack> tracks(Path musicDir, int count) {
+        CustomMusicTrack[] tracks = new CustomMusicTrack[count];
+        for (int i = 0; i < count; i++) {
+            tracks[i] = MusicLoader.createTrack(musicDir.resolve("artist/track" + i + ".ogg"), 1000 + i, i);
+            tracks[i].setLoudness(-10.0f - i, 0.5f);
+            tracks[i].setFingerprint(i + 1);
+            tracks[i].setTags(new TrackTags("Title " + i, "Artist", null, i, null));
+        }
+        return List.of(tracks);
+    }
+}